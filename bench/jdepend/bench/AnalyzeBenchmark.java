@@ -0,0 +1,67 @@
+package jdepend.bench;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import jdepend.framework.JDepend;
+import jdependFast.framework.JDepend_T;
+
+/**
+ * Analyzes the corpus from scratch: walking, parsing, and linking the
+ * classes into packages.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyzeBenchmark {
+
+    private String path;
+
+    @Setup
+    public void setUp() throws IOException {
+        path = new Corpus().createDirectory().getPath();
+    }
+
+    @Benchmark
+    public Collection jdepend() throws IOException {
+        JDepend jdepend = new JDepend();
+        jdepend.addDirectory(path);
+        return jdepend.analyze();
+    }
+
+    @Benchmark
+    public Collection jdependFast() throws IOException {
+        return analyze(new JDepend_T());
+    }
+
+    @Benchmark
+    public Collection jdependFastStreaming() throws IOException {
+        JDepend_T jdepend = new JDepend_T();
+        jdepend.setRetainClasses(false);
+        return analyze(jdepend);
+    }
+
+    @Benchmark
+    public Collection jdependFastPipeline() throws IOException {
+        JDepend_T jdepend = new JDepend_T();
+        jdepend.setPipeline(1, Runtime.getRuntime().availableProcessors());
+        return analyze(jdepend);
+    }
+
+    private Collection analyze(JDepend_T jdepend) throws IOException {
+        try {
+            jdepend.addDirectory(path);
+            return jdepend.analyze();
+        } finally {
+            // each engine starts its own fork/join pool
+            jdepend.shutdown();
+        }
+    }
+}
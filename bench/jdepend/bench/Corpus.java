@@ -0,0 +1,133 @@
+package jdepend.bench;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import jdepend.framework.ClassFileParser;
+
+/**
+ * The <code>Corpus</code> class locates the class files the benchmarks
+ * analyze.
+ * <p>
+ * The corpus is the directory named by the <code>jdepend.bench.corpus</code>
+ * system property, by default the <code>build</code> directory holding
+ * the compiled JDepend classes.
+ * <p>
+ * Only the class files both engines can parse are kept, since the
+ * original parser rejects the constant pool entries of newer class 
+ * file versions and would otherwise stop early.  Benchmarks read them
+ * from a temporary copy of the corpus, as a directory or as a jar.
+ */
+
+public class Corpus {
+
+    public static final String CORPUS_PROPERTY = "jdepend.bench.corpus";
+
+    private File directory;
+    private List<File> classFiles;
+
+
+    public Corpus() throws IOException {
+        directory = new File(System.getProperty(CORPUS_PROPERTY, "build"));
+        if (!directory.isDirectory()) {
+            throw new IOException("Invalid benchmark corpus: " + directory
+                + " (set -D" + CORPUS_PROPERTY + ")");
+        }
+        classFiles = new ArrayList<File>();
+        collect(directory, classFiles);
+        Collections.sort(classFiles);
+
+        ClassFileParser parser = new ClassFileParser();
+        for (Iterator<File> i = classFiles.iterator(); i.hasNext();) {
+            try {
+                parser.parse(i.next());
+            } catch (IOException ioe) {
+                i.remove();
+            }
+        }
+    }
+
+    public List<File> getClassFiles() {
+        return classFiles;
+    }
+
+    /**
+     * @return The contents of every class file of the corpus.
+     */
+    public byte[][] readClassFiles() throws IOException {
+        byte[][] classes = new byte[classFiles.size()][];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = Files.readAllBytes(classFiles.get(i).toPath());
+        }
+        return classes;
+    }
+
+    /**
+     * Copies the class files of the corpus to a temporary directory,
+     * deleted when the virtual machine exits.
+     *
+     * @return Directory.
+     */
+    public File createDirectory() throws IOException {
+        File copy = Files.createTempDirectory("jdepend-bench").toFile();
+        copy.deleteOnExit();
+
+        for (File file : classFiles) {
+            File target = new File(copy, relativeName(file));
+            List<File> created = new ArrayList<File>();
+            for (File parent = target.getParentFile(); !parent.exists();
+                    parent = parent.getParentFile()) {
+                created.add(0, parent);
+            }
+            for (File parent : created) {
+                parent.mkdir();
+                parent.deleteOnExit();
+            }
+            Files.copy(file.toPath(), target.toPath());
+            target.deleteOnExit();
+        }
+        return copy;
+    }
+
+    /**
+     * Writes the class files of the corpus to a temporary jar file,
+     * deleted when the virtual machine exits.
+     *
+     * @return Jar file.
+     */
+    public File createJar() throws IOException {
+        File jar = File.createTempFile("jdepend-bench", ".jar");
+        jar.deleteOnExit();
+
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            for (File file : classFiles) {
+                String name = relativeName(file).replace(File.separatorChar, '/');
+                out.putNextEntry(new JarEntry(name));
+                out.write(Files.readAllBytes(file.toPath()));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return jar;
+    }
+
+    private String relativeName(File file) {
+        return file.getPath().substring(directory.getPath().length() + 1);
+    }
+
+    private static void collect(File file, List<File> classFiles) {
+        if (file.isDirectory()) {
+            String[] names = file.list();
+            for (int i = 0; i < names.length; i++) {
+                collect(new File(file, names[i]), classFiles);
+            }
+        } else if (file.getName().endsWith(".class")) {
+            classFiles.add(file);
+        }
+    }
+}
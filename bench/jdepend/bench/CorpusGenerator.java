@@ -0,0 +1,304 @@
+package jdepend.bench;
+
+import java.io.*;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * The <code>CorpusGenerator</code> class writes a synthetic corpus of
+ * valid class files, as a directory tree or as jar files, to exercise
+ * the engines at the scale of large code bases.
+ * <p>
+ * Packages are ordered, and every class depends on <code>fanOut</code>
+ * classes of other packages.  A dependency normally points to a later
+ * package, which keeps the package graph acyclic; with probability
+ * <code>cycleDensity</code> it points to an earlier package instead,
+ * closing a dependency cycle.  The same options and seed always produce
+ * the same bytes.
+ * <p>
+ * The class files have the version of Java 8, so that both engines can
+ * parse them, and hold a constant pool, a super class, and a
+ * <code>SourceFile</code> attribute, without fields or methods.
+ */
+
+public class CorpusGenerator {
+
+    private int packages = 100;
+    private int classes = 2000;
+    private int fanOut = 5;
+    private double abstractRatio = 0.2;
+    private double cycleDensity = 0.01;
+    private int depth = 3;
+    private int jars = 0;
+    private long seed = 1;
+
+    private String[] packageNames;
+    private Random random;
+
+
+    public void setPackages(int packages) {
+        this.packages = packages;
+    }
+
+    public void setClasses(int classes) {
+        this.classes = classes;
+    }
+
+    /**
+     * @param fanOut Number of classes of other packages each class
+     *        depends upon.
+     */
+    public void setFanOut(int fanOut) {
+        this.fanOut = fanOut;
+    }
+
+    /**
+     * @param abstractRatio Fraction (0-1) of abstract classes and
+     *        interfaces.
+     */
+    public void setAbstractRatio(double abstractRatio) {
+        this.abstractRatio = abstractRatio;
+    }
+
+    /**
+     * @param cycleDensity Fraction (0-1) of dependencies pointing to an
+     *        earlier package.
+     */
+    public void setCycleDensity(double cycleDensity) {
+        this.cycleDensity = cycleDensity;
+    }
+
+    /**
+     * @param depth Number of segments of each package name.
+     */
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * @param jars Number of jar files to spread the packages over, or 0
+     *        to write a directory tree of class files.
+     */
+    public void setJars(int jars) {
+        this.jars = jars;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Writes the corpus to the specified directory.
+     *
+     * @param directory Output directory.
+     * @throws IOException If a file cannot be written.
+     */
+    public void generate(File directory) throws IOException {
+
+        if (packages < 1 || classes < packages) {
+            throw new IllegalArgumentException(
+                "Need at least one package and one class per package");
+        }
+
+        random = new Random(seed);
+        packageNames = new String[packages];
+        for (int p = 0; p < packages; p++) {
+            packageNames[p] = packageName(p);
+        }
+
+        directory.mkdirs();
+        JarOutputStream[] out = new JarOutputStream[jars];
+        for (int j = 0; j < jars; j++) {
+            out[j] = new JarOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(directory, "corpus" + j + ".jar"))));
+        }
+
+        try {
+            for (int c = 0; c < classes; c++) {
+                int p = c % packages;
+                String name = className(p, c / packages);
+                byte[] bytes = classFile(name, p);
+
+                if (jars == 0) {
+                    File file = new File(directory, name + ".class");
+                    file.getParentFile().mkdirs();
+                    OutputStream os = new FileOutputStream(file);
+                    try {
+                        os.write(bytes);
+                    } finally {
+                        os.close();
+                    }
+                } else {
+                    JarOutputStream jar = out[p % jars];
+                    jar.putNextEntry(new JarEntry(name + ".class"));
+                    jar.write(bytes);
+                    jar.closeEntry();
+                }
+            }
+        } finally {
+            for (int j = 0; j < jars; j++) {
+                out[j].close();
+            }
+        }
+    }
+
+    /**
+     * Names package <code>p</code> with <code>depth</code> segments,
+     * the first of which group neighbouring packages together.
+     */
+    private String packageName(int p) {
+        StringBuffer name = new StringBuffer("gen");
+        for (int level = depth - 1; level > 0; level--) {
+            name.append("/s").append((p >> (2 * level)) & 3);
+        }
+        name.append("/p").append(p);
+        return name.toString();
+    }
+
+    private String className(int p, int index) {
+        return packageNames[p] + "/C" + index;
+    }
+
+    private int classesIn(int p) {
+        return classes / packages + (p < classes % packages ? 1 : 0);
+    }
+
+    /**
+     * Returns the package of the next dependency of package
+     * <code>p</code>, or -1 if it has none.  The last package only
+     * depends on earlier packages.
+     */
+    private int dependency(int p) {
+        if (p > 0 && random.nextDouble() < cycleDensity) {
+            return random.nextInt(p);
+        }
+        if (p == packages - 1) {
+            return -1;
+        }
+        return p + 1 + random.nextInt(packages - p - 1);
+    }
+
+    private byte[] classFile(String name, int p) throws IOException {
+
+        boolean isAbstract = random.nextDouble() < abstractRatio;
+        boolean isInterface = isAbstract && random.nextBoolean();
+
+        Set dependencies = new LinkedHashSet();
+        for (int i = 0; i < fanOut && packages > 1; i++) {
+            int target = dependency(p);
+            if (target >= 0) {
+                dependencies.add(className(target, random.nextInt(classesIn(target))));
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(52);
+
+        out.writeShort(7 + 2 * dependencies.size());
+        utf8(out, name);                                    // 1
+        classRef(out, 1);                                   // 2
+        utf8(out, "java/lang/Object");                      // 3
+        classRef(out, 3);                                   // 4
+        utf8(out, "SourceFile");                            // 5
+        utf8(out, name.substring(name.lastIndexOf('/') + 1) + ".java"); // 6
+        int index = 7;
+        for (Iterator i = dependencies.iterator(); i.hasNext();) {
+            utf8(out, (String) i.next());
+            classRef(out, index);
+            index += 2;
+        }
+
+        int flags = 0x0001;
+        if (isInterface) {
+            flags |= 0x0200 | 0x0400;
+        } else {
+            flags |= 0x0020;
+            if (isAbstract) {
+                flags |= 0x0400;
+            }
+        }
+        out.writeShort(flags);
+        out.writeShort(2);
+        out.writeShort(4);
+        out.writeShort(0);      // interfaces
+        out.writeShort(0);      // fields
+        out.writeShort(0);      // methods
+
+        out.writeShort(1);
+        out.writeShort(5);
+        out.writeInt(2);
+        out.writeShort(6);
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void utf8(DataOutputStream out, String value) throws IOException {
+        out.writeByte(1);
+        out.writeUTF(value);
+    }
+
+    private static void classRef(DataOutputStream out, int nameIndex) throws IOException {
+        out.writeByte(7);
+        out.writeShort(nameIndex);
+    }
+
+    private static void usage(String message) {
+        if (message != null) {
+            System.err.println("\n" + message);
+        }
+        System.err.println("");
+        System.err.println("usage: ");
+        System.err.println("\nCorpusGenerator [-packages <n>] [-classes <n>]" +
+            " [-fanout <n>] [-abstract <ratio>] [-cycles <density>]" +
+            " [-depth <n>] [-jars <n>] [-seed <n>] <output directory>");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        CorpusGenerator generator = new CorpusGenerator();
+        File directory = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (!args[i].startsWith("-")) {
+                    directory = new File(args[i]);
+                } else if (i + 1 >= args.length) {
+                    usage("Value not specified: " + args[i]);
+                } else if (args[i].equals("-packages")) {
+                    generator.setPackages(Integer.parseInt(args[++i]));
+                } else if (args[i].equals("-classes")) {
+                    generator.setClasses(Integer.parseInt(args[++i]));
+                } else if (args[i].equals("-fanout")) {
+                    generator.setFanOut(Integer.parseInt(args[++i]));
+                } else if (args[i].equals("-abstract")) {
+                    generator.setAbstractRatio(Double.parseDouble(args[++i]));
+                } else if (args[i].equals("-cycles")) {
+                    generator.setCycleDensity(Double.parseDouble(args[++i]));
+                } else if (args[i].equals("-depth")) {
+                    generator.setDepth(Integer.parseInt(args[++i]));
+                } else if (args[i].equals("-jars")) {
+                    generator.setJars(Integer.parseInt(args[++i]));
+                } else if (args[i].equals("-seed")) {
+                    generator.setSeed(Long.parseLong(args[++i]));
+                } else {
+                    usage("Invalid argument: " + args[i]);
+                }
+            }
+        } catch (NumberFormatException nfe) {
+            usage("Invalid number: " + nfe.getMessage());
+        }
+
+        if (directory == null) {
+            usage("Must specify an output directory.");
+        }
+
+        generator.generate(directory);
+    }
+}
@@ -0,0 +1,89 @@
+package jdepend.bench;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import jdepend.framework.JDepend;
+import jdepend.framework.JavaPackage;
+import jdependFast.framework.JDepend_T;
+import jdependFast.framework.JavaPackage_T;
+import jdependFast.framework.PackageGraph;
+
+/**
+ * Detects the dependency cycles of the analyzed corpus: whether each
+ * package contains a cycle, and the cycle path reported for it.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CycleBenchmark {
+
+    private Collection packages;
+    private Collection fastPackages;
+
+    @Setup
+    public void setUp() throws IOException {
+        String path = new Corpus().createDirectory().getPath();
+
+        JDepend jdepend = new JDepend();
+        jdepend.addDirectory(path);
+        packages = jdepend.analyze();
+
+        JDepend_T fastEngine = new JDepend_T();
+        fastEngine.addDirectory(path);
+        fastPackages = fastEngine.analyze();
+        fastEngine.shutdown();
+    }
+
+    @Benchmark
+    public int jdependContainsCycle() {
+        int count = 0;
+        for (Iterator i = packages.iterator(); i.hasNext();) {
+            if (((JavaPackage) i.next()).containsCycle()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int jdependFastContainsCycle() {
+        PackageGraph graph = new PackageGraph(fastPackages);
+        int count = 0;
+        for (int id = 0; id < graph.size(); id++) {
+            if (graph.containsCycle(id)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int jdependCollectCycle() {
+        int length = 0;
+        for (Iterator i = packages.iterator(); i.hasNext();) {
+            List cycle = new ArrayList();
+            ((JavaPackage) i.next()).collectCycle(cycle);
+            length += cycle.size();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int jdependFastCollectCycle() {
+        int length = 0;
+        for (Iterator i = fastPackages.iterator(); i.hasNext();) {
+            List cycle = new ArrayList();
+            ((JavaPackage_T) i.next()).collectCycle(cycle);
+            length += cycle.size();
+        }
+        return length;
+    }
+}
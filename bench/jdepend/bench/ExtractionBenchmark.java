@@ -0,0 +1,53 @@
+package jdepend.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import jdepend.framework.FileManager;
+import jdepend.framework.JavaClassBuilder;
+import jdependFast.framework.FileManager_T;
+
+/**
+ * Walks the corpus, as a directory or as a jar file, and builds its
+ * classes, without linking them into packages.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractionBenchmark {
+
+    @Param({"directory", "jar"})
+    public String source;
+
+    private String path;
+
+    @Setup
+    public void setUp() throws IOException {
+        Corpus corpus = new Corpus();
+        File file = source.equals("jar")
+            ? corpus.createJar() : corpus.createDirectory();
+        path = file.getPath();
+    }
+
+    @Benchmark
+    public Collection jdepend() throws IOException {
+        FileManager fileManager = new FileManager();
+        fileManager.addDirectory(path);
+        return new JavaClassBuilder(fileManager).build();
+    }
+
+    @Benchmark
+    public Collection jdependFast() throws Exception {
+        FileManager_T fileManager = new FileManager_T();
+        fileManager.addDirectory(path);
+        return fileManager.extractFiles();
+    }
+}
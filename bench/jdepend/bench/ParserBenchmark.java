@@ -0,0 +1,61 @@
+package jdepend.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import jdepend.framework.ClassFileParser;
+import jdepend.framework.JavaClass;
+import jdependFast.framework.ClassFileParser_T;
+import jdependFast.framework.JavaClass_T;
+
+/**
+ * Parses the class files of the corpus one at a time, from memory, so
+ * that the score is the time to parse one class.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    private byte[][] classes;
+    private int next;
+
+    private ClassFileParser parser;
+    private ClassFileParser_T fastParser;
+
+    @Setup
+    public void setUp() throws IOException {
+        classes = new Corpus().readClassFiles();
+        parser = new ClassFileParser();
+        fastParser = new ClassFileParser_T();
+    }
+
+    private byte[] nextClass() {
+        byte[] bytes = classes[next];
+        next = (next + 1) % classes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public JavaClass jdepend() throws IOException {
+        return parser.parse(new ByteArrayInputStream(nextClass()));
+    }
+
+    @Benchmark
+    public JavaClass_T jdependFast() throws IOException {
+        return fastParser.parse(ByteBuffer.wrap(nextClass()));
+    }
+
+    @Benchmark
+    public JavaClass_T jdependFastStream() throws IOException {
+        return fastParser.parse(new ByteArrayInputStream(nextClass()));
+    }
+}
@@ -0,0 +1,118 @@
+package jdepend.bench;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import jdepend.framework.JDepend;
+import jdepend.framework.PackageComparator;
+import jdependFast.framework.JDepend_T;
+import jdependFast.framework.PackageComparator_T;
+
+/**
+ * Writes the text and XML reports of the analyzed corpus to a writer
+ * that discards them, so that only report generation is measured.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReportBenchmark {
+
+    private List packages;
+    private List fastPackages;
+
+    private TextReport textReport;
+    private XMLReport xmlReport;
+    private FastTextReport fastTextReport;
+
+    @Setup
+    public void setUp() throws IOException {
+        String path = new Corpus().createDirectory().getPath();
+
+        JDepend jdepend = new JDepend();
+        jdepend.addDirectory(path);
+        packages = new ArrayList(jdepend.analyze());
+        Collections.sort(packages, new PackageComparator(PackageComparator.byName()));
+
+        JDepend_T fastEngine = new JDepend_T();
+        fastEngine.addDirectory(path);
+        fastPackages = new ArrayList(fastEngine.analyze());
+        Collections.sort(fastPackages,
+            new PackageComparator_T(PackageComparator_T.byName()));
+        fastEngine.shutdown();
+
+        PrintWriter discard = new PrintWriter(Writer.nullWriter());
+        textReport = new TextReport(discard);
+        xmlReport = new XMLReport(discard);
+        fastTextReport = new FastTextReport(discard);
+    }
+
+    @Benchmark
+    public void jdependText() {
+        textReport.report(packages);
+    }
+
+    @Benchmark
+    public void jdependXML() {
+        xmlReport.report(packages);
+    }
+
+    @Benchmark
+    public void jdependFastText() {
+        fastTextReport.report(fastPackages);
+    }
+
+    static class TextReport extends jdepend.textui.JDepend {
+
+        TextReport(PrintWriter writer) {
+            super(writer);
+        }
+
+        void report(Collection packages) {
+            printHeader();
+            printPackages(packages);
+            printCycles(packages);
+            printSummary(packages);
+            printFooter();
+            getWriter().flush();
+        }
+    }
+
+    static class XMLReport extends jdepend.xmlui.JDepend {
+
+        XMLReport(PrintWriter writer) {
+            super(writer);
+        }
+
+        void report(Collection packages) {
+            printHeader();
+            printPackages(packages);
+            printCycles(packages);
+            printSummary(packages);
+            printFooter();
+            getWriter().flush();
+        }
+    }
+
+    static class FastTextReport extends jdependFast.textui.JDepend_T {
+
+        FastTextReport(PrintWriter writer) {
+            super(writer);
+        }
+
+        void report(Collection packages) {
+            printHeader();
+            printPackages(packages);
+            printCycles(packages);
+            printSummary(packages);
+            printFooter();
+            getWriter().flush();
+        }
+    }
+}
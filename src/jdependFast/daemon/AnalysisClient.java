@@ -0,0 +1,168 @@
+package jdependFast.daemon;
+
+import java.io.*;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.*;
+
+/**
+ * The <code>AnalysisClient</code> class sends the arguments of the text
+ * user interface to a running <code>AnalysisDaemon</code> and copies
+ * the report it streams back to standard output, or to the file named
+ * by <code>-file</code>.
+ * <p>
+ * <code>-port &lt;port&gt;</code> selects the daemon, <code>-token</code>
+ * names its token file if it is not the default one, <code>-xml</code>
+ * asks for the XML report, and <code>-stop</code> alone stops the
+ * daemon.  The client exits with the daemon's exit status, or with 2
+ * if no daemon is listening or the connection is lost.
+ */
+
+public class AnalysisClient {
+
+    private int port;
+    private File tokenFile;
+
+    /**
+     * Constructs an <code>AnalysisClient</code> instance for the daemon
+     * listening on the specified loopback port, with its token in the
+     * default token file of that port.
+     *
+     * @param port Port.
+     */
+    public AnalysisClient(int port) {
+        this(port, null);
+    }
+
+    /**
+     * Constructs an <code>AnalysisClient</code> instance for the daemon
+     * listening on the specified loopback port, with its token in the
+     * specified file.
+     *
+     * @param port Port.
+     * @param tokenFile Token file, or <code>null</code> for the default
+     *        token file of the port.
+     */
+    public AnalysisClient(int port, File tokenFile) {
+        this.port = port;
+        this.tokenFile = tokenFile != null 
+            ? tokenFile : AnalysisDaemon.getDefaultTokenFile(port);
+    }
+
+    /**
+     * Requests an analysis with the specified arguments, resolving
+     * relative directories against the specified working directory.
+     *
+     * @param directory Working directory.
+     * @param args Arguments of the text user interface.
+     * @param out Stream the report is copied to.
+     * @param err Stream error messages are copied to.
+     * @return Exit status of the analysis.
+     * @throws IOException If the token file cannot be read or the 
+     *         daemon cannot be reached.
+     */
+    public int analyze(File directory, String[] args, OutputStream out,
+        OutputStream err) throws IOException {
+
+        byte[] token = Files.readAllBytes(tokenFile.toPath());
+        if (token.length != AnalysisDaemon.TOKEN_LENGTH) {
+            throw new IOException("Invalid daemon token file: " + tokenFile);
+        }
+
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        try {
+            DataOutputStream request = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+            request.write(token);
+            request.writeUTF(directory.getAbsolutePath());
+            request.writeInt(args.length);
+            for (int i = 0; i < args.length; i++) {
+                request.writeUTF(args[i]);
+            }
+            request.flush();
+
+            DataInputStream response = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+            byte[] buffer = new byte[8192];
+            while (true) {
+                int type = response.readByte();
+                if (type == AnalysisDaemon.EXIT) {
+                    out.flush();
+                    err.flush();
+                    return response.readInt();
+                }
+                OutputStream target = type == AnalysisDaemon.ERR ? err : out;
+                int length = response.readInt();
+                while (length > 0) {
+                    int n = response.read(buffer, 0, Math.min(length, buffer.length));
+                    if (n < 0) {
+                        throw new EOFException("Daemon closed the connection");
+                    }
+                    target.write(buffer, 0, n);
+                    length -= n;
+                }
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    public static void main(String args[]) {
+
+        int port = AnalysisDaemon.DEFAULT_PORT;
+        File tokenFile = null;
+        String file = null;
+        List forwarded = new ArrayList();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("-port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equalsIgnoreCase("-token") && i + 1 < args.length) {
+                tokenFile = new File(args[++i]);
+            } else if (args[i].equalsIgnoreCase("-file") && i + 1 < args.length) {
+                file = args[++i];
+            } else {
+                forwarded.add(args[i]);
+            }
+        }
+
+        OutputStream out = System.out;
+        if (file != null) {
+            try {
+                out = new FileOutputStream(file);
+            } catch (IOException ioe) {
+                System.err.println(ioe.getMessage());
+                System.exit(1);
+            }
+        }
+
+        int status;
+        try {
+            status = new AnalysisClient(port, tokenFile).analyze(
+                new File(System.getProperty("user.dir")),
+                (String[]) forwarded.toArray(new String[forwarded.size()]),
+                out, System.err);
+        } catch (NoSuchFileException nsfe) {
+            System.err.println("No JDepend daemon token: " + nsfe.getMessage());
+            status = 2;
+        } catch (ConnectException ce) {
+            System.err.println("No JDepend daemon on port " + port + ": "
+                + ce.getMessage());
+            status = 2;
+        } catch (IOException ioe) {
+            System.err.println("Lost the JDepend daemon on port " + port + ": "
+                + ioe);
+            status = 2;
+        }
+        if (file != null) {
+            try {
+                out.close();
+            } catch (IOException ioe) {
+                System.err.println(ioe.getMessage());
+            }
+        }
+        System.exit(status);
+    }
+}
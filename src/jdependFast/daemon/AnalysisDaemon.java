@@ -0,0 +1,486 @@
+package jdependFast.daemon;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import jdependFast.framework.PackageFilter_T;
+import jdependFast.framework.ParseCache;
+
+/**
+ * The <code>AnalysisDaemon</code> class runs analyses requested over a
+ * local socket by <code>AnalysisClient</code>, in a JVM that stays
+ * warm from one request to the next.
+ * <p>
+ * Every analysis runs on the same fork/join pool and looks up classes
+ * in the same in-memory <code>ParseCache</code>, so that only class
+ * files and jar entries that changed since an earlier request are
+ * parsed again.  Each request carries the arguments of the text user
+ * interface, plus <code>-xml</code> for the XML report, and the
+ * client's working directory, against which relative directories are
+ * resolved.  The report is streamed back as it is written, and the 
+ * client, not the daemon, writes it to the file named by 
+ * <code>-file</code>.  Class and jar files skipped because they cannot
+ * be read or parsed are reported back to the client as well, just as
+ * a direct run reports them on its standard error stream.
+ * <p>
+ * The daemon only listens on the loopback address, and only serves
+ * requests that carry the random token it writes on startup to a file
+ * readable by its owner alone, <code>.jdepend/daemon-&lt;port&gt;.token</code>
+ * in the user's home directory by default.  Other local users can 
+ * therefore neither stop the daemon nor have it read or write files.
+ * <p>
+ * Example use:
+ * <blockquote>
+ * <pre>
+ * java jdependFast.daemon.AnalysisDaemon [-port &lt;port&gt;] [-token &lt;token file&gt;]
+ * java jdependFast.daemon.AnalysisClient [-port &lt;port&gt;] [-token &lt;token file&gt;] [-xml] &lt;directory&gt;
+ * </pre>
+ * </blockquote>
+ */
+
+public class AnalysisDaemon {
+
+    public static final int DEFAULT_PORT = 7869;
+
+    /**
+     * Frame types of the response stream.  Each frame is a type byte,
+     * followed by an <code>int</code> length and that many bytes for
+     * output frames, or by the <code>int</code> exit status for the
+     * final frame.
+     */
+    static final int OUT = 1;
+    static final int ERR = 2;
+    static final int EXIT = 3;
+
+    /**
+     * Argument asking the daemon to stop, in place of an analysis.
+     */
+    static final String STOP = "-stop";
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static final int TOKEN_LENGTH = 32;
+
+    private static final int TOKEN_TIMEOUT = 10000;
+
+    private static final Set PATH_OPTIONS = new HashSet(Arrays.asList(
+        new String[] { "-cache", "-summaries", "-snapshot", "-load" }));
+
+    private static final Set VALUE_OPTIONS = new HashSet(Arrays.asList(
+        new String[] { "-components", "-pipeline", "-duplicates" }));
+
+    private ServerSocket server;
+    private File tokenFile;
+    private byte[] token;
+    private ForkJoinPool executor;
+    private ExecutorService connections;
+    private PackageFilter_T filter;
+    private ParseCache cache;
+    private volatile boolean stopped;
+
+
+    /**
+     * Constructs an <code>AnalysisDaemon</code> instance listening on
+     * the specified loopback port, with its token in the default token
+     * file of that port.
+     *
+     * @param port Port, or 0 for any free port.
+     * @throws IOException If the port cannot be bound or the token 
+     *         file cannot be written.
+     */
+    public AnalysisDaemon(int port) throws IOException {
+        this(port, null);
+    }
+
+    /**
+     * Constructs an <code>AnalysisDaemon</code> instance listening on
+     * the specified loopback port, with its token in the specified 
+     * file.
+     *
+     * @param port Port, or 0 for any free port.
+     * @param tokenFile Token file, or <code>null</code> for the default
+     *        token file of the port.
+     * @throws IOException If the port cannot be bound or the token 
+     *         file cannot be written.
+     */
+    public AnalysisDaemon(int port, File tokenFile) throws IOException {
+        server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        try {
+            this.tokenFile = tokenFile != null 
+                ? tokenFile : getDefaultTokenFile(getPort());
+            token = new byte[TOKEN_LENGTH];
+            new SecureRandom().nextBytes(token);
+            writeToken(this.tokenFile, token);
+        } catch (IOException ioe) {
+            server.close();
+            throw ioe;
+        }
+        executor = new ForkJoinPool();
+        connections = Executors.newCachedThreadPool();
+        filter = new PackageFilter_T();
+        cache = new ParseCache(filter);
+    }
+
+    /**
+     * @return The port the daemon listens on.
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * @return The file holding the token requests must carry.
+     */
+    public File getTokenFile() {
+        return tokenFile;
+    }
+
+    /**
+     * @return The default token file of the daemon listening on the
+     *         specified port.
+     */
+    public static File getDefaultTokenFile(int port) {
+        return new File(System.getProperty("user.home"), ".jdepend" 
+            + File.separator + "daemon-" + port + ".token");
+    }
+
+    /**
+     * Writes the token to a new file that only its owner may read or
+     * write, replacing any token file a previous daemon left behind.
+     */
+    private static void writeToken(File file, byte[] token) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory: " + directory);
+        }
+        Files.deleteIfExists(file.toPath());
+        try {
+            Files.createFile(file.toPath(), PosixFilePermissions.asFileAttribute(
+                PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException notPosix) {
+            Files.createFile(file.toPath());
+            file.setReadable(false, false);
+            file.setWritable(false, false);
+            file.setReadable(true, true);
+            file.setWritable(true, true);
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(token);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return The parse cache shared by every analysis.
+     */
+    public ParseCache getParseCache() {
+        return cache;
+    }
+
+    /**
+     * Accepts and serves requests, each on a thread of its own, until
+     * the daemon is stopped.
+     */
+    public void run() {
+        try {
+            while (!stopped) {
+                final Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketException se) {
+                    break;
+                }
+                connections.execute(new Runnable() {
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+            }
+        } catch (IOException ioe) {
+            if (!stopped) {
+                System.err.println("\n" + ioe.getMessage());
+            }
+        } finally {
+            stop();
+        }
+    }
+
+    /**
+     * Stops accepting requests and shuts down the shared pool once the
+     * requests being served complete.
+     */
+    public synchronized void stop() {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        try {
+            server.close();
+        } catch (IOException ignore) {
+        }
+        connections.shutdown();
+        executor.shutdown();
+        tokenFile.delete();
+    }
+
+    private void serve(Socket socket) {
+        try {
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+            try {
+                socket.setSoTimeout(TOKEN_TIMEOUT);
+                byte[] received = new byte[TOKEN_LENGTH];
+                in.readFully(received);
+                socket.setSoTimeout(0);
+                if (!MessageDigest.isEqual(token, received)) {
+                    error(out, "Invalid daemon token.");
+                    synchronized (out) {
+                        out.writeByte(EXIT);
+                        out.writeInt(1);
+                        out.flush();
+                    }
+                    return;
+                }
+
+                String directory = in.readUTF();
+                String[] args = new String[in.readInt()];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = in.readUTF();
+                }
+
+                int status = analyze(new File(directory), args, out);
+                synchronized (out) {
+                    out.writeByte(EXIT);
+                    out.writeInt(status);
+                    out.flush();
+                }
+                if (args.length == 1 && args[0].equals(STOP)) {
+                    stop();
+                }
+            } finally {
+                socket.close();
+            }
+        } catch (IOException ioe) {
+            System.err.println("\n" + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Runs one analysis, writing its report to the specified stream.
+     *
+     * @return Exit status: 0 on success, 1 if the arguments are invalid
+     *         or the analysis failed.
+     */
+    private int analyze(File directory, String[] args, DataOutputStream out) {
+
+        if (args.length == 1 && args[0].equals(STOP)) {
+            return 0;
+        }
+
+        boolean xml = false;
+        List resolved = new ArrayList();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("-file")) {
+                error(out, "The report is written to -file by the client.");
+                return 1;
+            } else if (args[i].equalsIgnoreCase("-xml")) {
+                xml = true;
+            } else if (PATH_OPTIONS.contains(args[i].toLowerCase())
+                    && i + 1 < args.length) {
+                resolved.add(args[i]);
+                resolved.add(resolve(directory, args[++i]));
+            } else if (VALUE_OPTIONS.contains(args[i].toLowerCase())
+                    && i + 1 < args.length) {
+                resolved.add(args[i]);
+                resolved.add(args[++i]);
+            } else if (args[i].startsWith("-")) {
+                resolved.add(args[i]);
+            } else {
+                resolved.add(resolve(directory, args[i]));
+            }
+        }
+
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+            new FrameOutputStream(out, OUT), UTF_8));
+        Report report = xml ? new XmlReport(writer) : new TextReport(writer);
+        report.setErrorWriter(errorWriter(out));
+        report.setFilter(filter);
+        report.setExecutor(executor);
+        report.setParseCache(cache);
+        try {
+            report.run((String[]) resolved.toArray(new String[resolved.size()]));
+            writer.flush();
+            return 0;
+        } catch (RequestException re) {
+            return fail(writer, out, re.getMessage());
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return fail(writer, out, e.toString());
+        }
+    }
+
+    private int fail(PrintWriter writer, DataOutputStream out, String message) {
+        writer.flush();
+        error(out, message);
+        return 1;
+    }
+
+    private static void error(DataOutputStream out, String message) {
+        PrintWriter err = errorWriter(out);
+        err.println();
+        err.println(message);
+        err.flush();
+    }
+
+    /**
+     * @return Writer sending what is written to it to the client's 
+     *         standard error stream.
+     */
+    private static PrintWriter errorWriter(DataOutputStream out) {
+        return new PrintWriter(new OutputStreamWriter(
+            new FrameOutputStream(out, ERR), UTF_8));
+    }
+
+    /**
+     * Resolves the specified path against the client's working 
+     * directory.  Modules of the <code>jrt:/</code> runtime image are
+     * left as they are.
+     */
+    private static String resolve(File directory, String name) {
+        File file = new File(name);
+        return file.isAbsolute() || name.startsWith("jrt:") 
+            ? name : new File(directory, name).getPath();
+    }
+
+    /**
+     * Output stream that writes each chunk as a frame of the specified
+     * type.
+     */
+    private static class FrameOutputStream extends OutputStream {
+
+        private DataOutputStream out;
+        private int type;
+
+        FrameOutputStream(DataOutputStream out, int type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (out) {
+                out.writeByte(type);
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+        }
+
+        public void flush() throws IOException {
+            synchronized (out) {
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Invalid arguments or failed analysis of one request, reported to
+     * its client only.
+     */
+    private static class RequestException extends RuntimeException {
+        RequestException(String message) {
+            super(message);
+        }
+    }
+
+    private interface Report {
+        void setErrorWriter(PrintWriter errors);
+        void setFilter(PackageFilter_T filter);
+        void setExecutor(ForkJoinPool executor);
+        void setParseCache(ParseCache cache);
+        void run(String[] args);
+    }
+
+    private static class TextReport extends jdependFast.textui.JDepend_T
+        implements Report {
+
+        TextReport(PrintWriter writer) {
+            super(writer);
+        }
+
+        public void run(String[] args) {
+            instanceMain(args);
+        }
+
+        protected void usage(String message) {
+            throw new RequestException(message == null ? "Invalid arguments." : message);
+        }
+
+        protected void fail(String message) {
+            throw new RequestException(message);
+        }
+    }
+
+    private static class XmlReport extends jdependFast.xmlui.JDepend_T
+        implements Report {
+
+        XmlReport(PrintWriter writer) {
+            super(writer);
+        }
+
+        public void run(String[] args) {
+            instanceMain(args);
+        }
+
+        protected void usage(String message) {
+            throw new RequestException(message == null ? "Invalid arguments." : message);
+        }
+
+        protected void fail(String message) {
+            throw new RequestException(message);
+        }
+    }
+
+    public static void main(String args[]) {
+
+        int port = DEFAULT_PORT;
+        File tokenFile = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("-port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equalsIgnoreCase("-token") && i + 1 < args.length) {
+                tokenFile = new File(args[++i]);
+            } else {
+                System.err.println("usage: AnalysisDaemon [-port <port>] [-token <token file>]");
+                System.exit(1);
+            }
+        }
+
+        try {
+            AnalysisDaemon daemon = new AnalysisDaemon(port, tokenFile);
+            System.out.println("JDepend daemon listening on port " + daemon.getPort());
+            daemon.run();
+        } catch (IOException ioe) {
+            System.err.println(ioe.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package jdependFast.framework;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The <code>AnalysisEvents</code> class holds the Java Flight Recorder
+ * events emitted by the analysis.
+ * <p>
+ * The events are disabled by default.  While disabled, emitting one
+ * costs an allocation the compiler usually removes, and a check.  A
+ * recording enables them by name, with
+ * <code>Recording.enable("jdepend.ClassParse")</code> or a settings
+ * file entry such as <code>jdepend.ClassParse#enabled=true</code>.
+ */
+
+public final class AnalysisEvents {
+
+    private AnalysisEvents() {
+    }
+
+    @Name("jdepend.DirectoryScan")
+    @Label("Directory Scan")
+    @Description("Lists a directory for class and jar files")
+    @Category({"JDepend", "Discovery"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class DirectoryScan extends Event {
+
+        @Label("Path")
+        public String path;
+
+        @Label("Files")
+        @Description("Class and jar files found")
+        public int files;
+
+        @Label("Subdirectories")
+        public int subdirectories;
+    }
+
+    @Name("jdepend.JarScan")
+    @Label("Jar Scan")
+    @Description("Opens a jar, war, or zip file and builds its classes")
+    @Category({"JDepend", "Discovery"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class JarScan extends Event {
+
+        @Label("Path")
+        public String path;
+
+        @Label("Classes")
+        public int classes;
+    }
+
+    @Name("jdepend.ClassParse")
+    @Label("Class Parse")
+    @Description("Decodes one class file")
+    @Category({"JDepend", "Parsing"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class ClassParse extends Event {
+
+        @Label("Class Name")
+        public String className;
+
+        @Label("Size")
+        @DataAmount
+        public int bytes;
+    }
+
+    @Name("jdepend.AnalysisPhase")
+    @Label("Analysis Phase")
+    @Description("Runs one phase of JDepend_T.analyze()")
+    @Category({"JDepend"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class Phase extends Event {
+
+        @Label("Phase")
+        public String phase;
+
+        @Label("Packages")
+        public int packages;
+    }
+}
@@ -0,0 +1,347 @@
+package jdependFast.framework;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The <code>AnalysisMetrics</code> class records where the time of an
+ * analysis went, and how much work it did.
+ * <p>
+ * <code>JDepend_T</code> fills in a new instance on each
+ * <code>analyze()</code>:
+ * <ul>
+ * <li>the wall time of each phase: discovery (walking the directories
+ *     into a <code>DiscoveryIndex</code>), extraction (reading and
+ *     parsing), linking, cycle detection, and saving the parse cache,
+ * <li>the directories, class files, jar files and jar entries visited,
+ *     the bytes read, the classes parsed and the parse cache hits,
+ * <li>the time spent walking directories, reading files and inflating
+ *     jar entries, and decoding classes, summed over all threads,
+ * <li>the distribution of the time taken to decode each class,
+ * <li>the depth of the queues feeding each pool, and the fraction of
+ *     its threads' time each pool spent working.
+ * </ul>
+ * <p>
+ * In the streaming and pipeline modes classes are linked while they are
+ * extracted, and the linking phase only covers ordering the dependencies
+ * afterwards.
+ * <p>
+ * All times are in nanoseconds.  Recording is thread-safe.
+ */
+
+public class AnalysisMetrics {
+
+    public static final String DISCOVERY = "discovery";
+    public static final String EXTRACTION = "extraction";
+    public static final String LINKING = "linking";
+    public static final String CYCLES = "cycles";
+    public static final String CACHE = "cache";
+
+    private Map phaseTimes;
+    private Map queues;
+    private Map pools;
+
+    private LongAdder directories;
+    private LongAdder classFiles;
+    private LongAdder jarFiles;
+    private LongAdder jarEntries;
+    private LongAdder bytesRead;
+    private LongAdder cacheHits;
+    private LongAdder summaryHits;
+    private LongAdder discoveryTime;
+    private LongAdder readTime;
+    private LongAdder parseTime;
+    private Histogram parseLatency;
+
+
+    public AnalysisMetrics() {
+        phaseTimes = new LinkedHashMap();
+        queues = new LinkedHashMap();
+        pools = new LinkedHashMap();
+        directories = new LongAdder();
+        classFiles = new LongAdder();
+        jarFiles = new LongAdder();
+        jarEntries = new LongAdder();
+        bytesRead = new LongAdder();
+        cacheHits = new LongAdder();
+        summaryHits = new LongAdder();
+        discoveryTime = new LongAdder();
+        readTime = new LongAdder();
+        parseTime = new LongAdder();
+        parseLatency = new Histogram();
+    }
+
+    synchronized void addPhaseTime(String phase, long nanos) {
+        Long previous = (Long) phaseTimes.get(phase);
+        long total = previous == null ? nanos : previous.longValue() + nanos;
+        phaseTimes.put(phase, Long.valueOf(total));
+    }
+
+    void addDiscovery(long directoryCount, long nanos) {
+        directories.add(directoryCount);
+        discoveryTime.add(nanos);
+    }
+
+    void addClassFile() {
+        classFiles.increment();
+    }
+
+    void addJarFile() {
+        jarFiles.increment();
+    }
+
+    void addJarEntry() {
+        jarEntries.increment();
+    }
+
+    void addCacheHit() {
+        cacheHits.increment();
+    }
+
+    void addSummaryHit() {
+        summaryHits.increment();
+    }
+
+    void addRead(long bytes, long nanos) {
+        bytesRead.add(bytes);
+        readTime.add(nanos);
+    }
+
+    void addParse(long nanos) {
+        parseTime.add(nanos);
+        parseLatency.record(nanos);
+    }
+
+    synchronized void addQueueDepth(String queue, long depth) {
+        long[] stats = (long[]) queues.get(queue);
+        if (stats == null) {
+            stats = new long[3];
+            queues.put(queue, stats);
+        }
+        stats[0] = Math.max(stats[0], depth);
+        stats[1] += depth;
+        stats[2]++;
+    }
+
+    synchronized void addPool(String pool, int threads, long busyNanos) {
+        pools.put(pool, new long[] { threads, busyNanos });
+    }
+
+    /**
+     * @return The phases run, in order, mapped to their wall time.
+     */
+    public synchronized Map getPhaseTimes() {
+        return new LinkedHashMap(phaseTimes);
+    }
+
+    /**
+     * @param phase Phase name.
+     * @return Wall time of the phase, or 0 if it was not run.
+     */
+    public synchronized long getPhaseTime(String phase) {
+        Long nanos = (Long) phaseTimes.get(phase);
+        return nanos == null ? 0 : nanos.longValue();
+    }
+
+    public long getDirectoriesVisited() {
+        return directories.sum();
+    }
+
+    public long getClassFilesVisited() {
+        return classFiles.sum();
+    }
+
+    public long getJarFilesVisited() {
+        return jarFiles.sum();
+    }
+
+    public long getJarEntriesVisited() {
+        return jarEntries.sum();
+    }
+
+    /**
+     * @return Bytes of class files and inflated jar entries read.
+     */
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * @return Classes taken from the parse cache instead of parsed.
+     */
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * @return Jar files merged from the jar summary store instead of 
+     *         read and parsed.
+     */
+    public long getSummaryHits() {
+        return summaryHits.sum();
+    }
+
+    public long getClassesParsed() {
+        return parseLatency.count();
+    }
+
+    /**
+     * @return Time spent listing directories and reading the central
+     *         directories of jar files, summed over all threads.  An
+     *         index built before the analysis, by 
+     *         <code>countClasses()</code>, is reused and still counted.
+     */
+    public long getDiscoveryTime() {
+        return discoveryTime.sum();
+    }
+
+    /**
+     * @return Time spent reading class files and inflating jar entries,
+     *         summed over all threads.
+     */
+    public long getReadTime() {
+        return readTime.sum();
+    }
+
+    /**
+     * @return Time spent decoding classes, summed over all threads.
+     */
+    public long getParseTime() {
+        return parseTime.sum();
+    }
+
+    /**
+     * @return Classes parsed per second of extraction.
+     */
+    public double getClassesPerSecond() {
+        return perSecond(getClassesParsed());
+    }
+
+    /**
+     * @return Bytes read per second of extraction.
+     */
+    public double getBytesPerSecond() {
+        return perSecond(getBytesRead());
+    }
+
+    private double perSecond(long count) {
+        long nanos = getPhaseTime(EXTRACTION);
+        return nanos == 0 ? 0 : count * 1e9 / nanos;
+    }
+
+    /**
+     * Returns the time within which the specified fraction of the
+     * classes were decoded, accurate to within an eighth.
+     *
+     * @param percentile Percentile, from 0 to 100.
+     * @return Decoding time of one class.
+     */
+    public long getParseLatency(double percentile) {
+        return parseLatency.percentile(percentile);
+    }
+
+    /**
+     * @return The queues sampled, in order.
+     */
+    public synchronized Collection getQueues() {
+        return new ArrayList(queues.keySet());
+    }
+
+    public synchronized long getMaxQueueDepth(String queue) {
+        long[] stats = (long[]) queues.get(queue);
+        return stats == null ? 0 : stats[0];
+    }
+
+    public synchronized double getAverageQueueDepth(String queue) {
+        long[] stats = (long[]) queues.get(queue);
+        return stats == null ? 0 : (double) stats[1] / stats[2];
+    }
+
+    /**
+     * @return The thread pools that ran the extraction, in order.
+     */
+    public synchronized Collection getPools() {
+        return new ArrayList(pools.keySet());
+    }
+
+    public synchronized int getPoolThreads(String pool) {
+        long[] stats = (long[]) pools.get(pool);
+        return stats == null ? 0 : (int) stats[0];
+    }
+
+    /**
+     * Returns the fraction of the extraction time the threads of the
+     * specified pool spent working rather than waiting for work.
+     *
+     * @param pool Pool name.
+     * @return Utilization, from 0 to 1.
+     */
+    public synchronized double getThreadUtilization(String pool) {
+        long[] stats = (long[]) pools.get(pool);
+        long nanos = getPhaseTime(EXTRACTION);
+        if (stats == null || stats[0] == 0 || nanos == 0) {
+            return 0;
+        }
+        return Math.min(1.0, (double) stats[1] / (stats[0] * nanos));
+    }
+
+    /**
+     * Counts values in buckets growing by an eighth, so that recording
+     * takes no lock and percentiles are accurate to within an eighth.
+     */
+    private static class Histogram {
+
+        private static final int SUB_BUCKETS = 8;
+        private static final int LINEAR = 2 * SUB_BUCKETS;
+
+        private AtomicLongArray counts = new AtomicLongArray(
+            LINEAR + (64 - 4) * SUB_BUCKETS);
+
+        void record(long value) {
+            counts.incrementAndGet(index(Math.max(0, value)));
+        }
+
+        long count() {
+            long count = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                count += counts.get(i);
+            }
+            return count;
+        }
+
+        long percentile(double percentile) {
+            long total = count();
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * Math.min(100, percentile) / 100);
+            long seen = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                seen += counts.get(i);
+                if (seen >= Math.max(1, rank)) {
+                    return upperBound(i);
+                }
+            }
+            return upperBound(counts.length() - 1);
+        }
+
+        private static int index(long value) {
+            if (value < LINEAR) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+            return LINEAR + (exponent - 4) * SUB_BUCKETS + sub;
+        }
+
+        private static long upperBound(int index) {
+            if (index < LINEAR) {
+                return index;
+            }
+            int exponent = (index - LINEAR) / SUB_BUCKETS + 4;
+            long sub = (index - LINEAR) % SUB_BUCKETS;
+            return ((SUB_BUCKETS + sub + 1) << (exponent - 3)) - 1;
+        }
+    }
+}
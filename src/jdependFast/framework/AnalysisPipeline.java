@@ -0,0 +1,469 @@
+package jdependFast.framework;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+/**
+ * The <code>AnalysisPipeline</code> class builds the classes of the
+ * directories registered with a <code>FileManager_T</code> in four
+ * stages connected by bounded queues:
+ * <ol>
+ * <li>discovery walks the directories into a <code>DiscoveryIndex</code>
+ *     of the file manager, and queues each file as soon as it is 
+ *     indexed, from the threads of the walk,
+ * <li>loading reads class files and jar entries into memory,
+ * <li>parsing builds a <code>JavaClass_T</code> from the bytes, with
+ *     one parser per thread,
+ * <li>linking hands each class to a <code>ParserListener_T</code> on a
+ *     single thread.
+ * </ol>
+ * <p>
+ * Each stage runs on its own <code>ConsumerImpl</code> pool.  A stage
+ * that falls behind fills its queue and blocks the stage feeding it, so
+ * memory use stays bounded however many files are discovered, and
+ * classes are linked while the walk is still in progress.  When the
+ * file manager deduplicates classes, files are only queued once the
+ * walk ends, since the first of several copies is only known then.
+ */
+
+public class AnalysisPipeline {
+
+    private FileManager_T fileManager;
+    private PackageFilter_T filter;
+    private ParseCache cache;
+    private JarSummaryStore summaries;
+    private int loadThreads;
+    private int parseThreads;
+    private int capacity;
+    private boolean retainClasses = true;
+    private AnalysisMetrics metrics;
+
+    private ConsumerImpl loadStage;
+    private ConsumerImpl parseStage;
+    private ConsumerImpl linkStage;
+    private ParserListener_T linker;
+    private Map classesByFile;
+    private ThreadLocal<ClassFileParser_T> parsers;
+    private DiscoveryIndex index;
+
+
+    /**
+     * Constructs an <code>AnalysisPipeline</code> instance.
+     *
+     * @param fileManager Registered directories and file filter.
+     * @param filter Package filter.
+     * @param cache Parse cache, or <code>null</code> to always parse.
+     * @param loadThreads Number of threads reading files.
+     * @param parseThreads Number of threads parsing classes.
+     * @param capacity Capacity of each queue between stages.
+     */
+    public AnalysisPipeline(FileManager_T fileManager, PackageFilter_T filter,
+        ParseCache cache, int loadThreads, int parseThreads, int capacity) {
+        this.fileManager = fileManager;
+        this.filter = filter;
+        this.cache = cache;
+        this.loadThreads = loadThreads;
+        this.parseThreads = parseThreads;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Determines whether <code>run()</code> records the classes built
+     * from each file.  Classes that are not recorded can be discarded
+     * as soon as the linker returns.
+     *
+     * @param b <code>true</code> to record the classes (the default);
+     *          <code>false</code> otherwise.
+     */
+    public void setRetainClasses(boolean b) {
+        retainClasses = b;
+    }
+
+    /**
+     * Sets the store of jar summaries consulted before loading each jar
+     * file with no nested archives.  A jar file whose contents were 
+     * summarized before is linked from its summary; any other is 
+     * summarized once all its classes are parsed.
+     *
+     * @param summaries Jar summary store, or <code>null</code> to 
+     *                  always load jar files.
+     */
+    public void setJarSummaryStore(JarSummaryStore summaries) {
+        this.summaries = summaries;
+    }
+
+    /**
+     * Sets the metrics recording the files visited, the time spent in
+     * each stage, and the depth of the queues between stages.
+     *
+     * @param metrics Analysis metrics, or <code>null</code> to record
+     *                nothing.
+     */
+    public void setMetrics(AnalysisMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Runs the pipeline over the registered directories.
+     *
+     * @param linker Listener notified of each class on the linking thread.
+     * @return Map of each class or jar file to the collection of
+     *         <code>JavaClass_T</code> instances built from it, empty
+     *         if classes are not retained.
+     * @throws IOException If a stage fails unexpectedly.
+     */
+    public Map run(ParserListener_T linker) throws IOException {
+
+        this.linker = linker;
+        this.classesByFile = new LinkedHashMap();
+        this.parsers = new ThreadLocal<ClassFileParser_T>();
+
+        linkStage = new ConsumerImpl(1, capacity);
+        parseStage = new ConsumerImpl(parseThreads, capacity);
+        loadStage = new ConsumerImpl(loadThreads, capacity);
+
+        try {
+            index = fileManager.takeIndex(new DiscoveryIndex.Listener() {
+                public void indexed(File file, String[] names, String[] nested) {
+                    load(file, names, nested);
+                }
+            });
+        } finally {
+            loadStage.finishConsumption();
+            parseStage.finishConsumption();
+            linkStage.finishConsumption();
+        }
+
+        if (metrics != null) {
+            metrics.addPool("load", loadThreads, loadStage.getBusyTime());
+            metrics.addPool("parse", parseThreads, parseStage.getBusyTime());
+            metrics.addPool("link", 1, linkStage.getBusyTime());
+        }
+
+        check(loadStage);
+        check(parseStage);
+        check(linkStage);
+
+        return classesByFile;
+    }
+
+    private void check(ConsumerImpl stage) throws IOException {
+        Throwable failure = stage.getFailure();
+        if (failure != null) {
+            throw new IOException("Analysis pipeline failed", failure);
+        }
+    }
+
+    /**
+     * @return The discovery index of the last run, or <code>null</code>
+     *         if the pipeline has not run.
+     */
+    public DiscoveryIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @param names Names of the class entries of the jar file, or 
+     *        <code>null</code> if the file is a class file.
+     * @param nested Names of the archives nested in the jar file.
+     */
+    private void load(final File file, final String[] names, 
+        final String[] nested) {
+        consume(loadStage, "load", new Item() {
+            public void process() {
+                try {
+                    if (names == null) {
+                        loadClassFile(file);
+                    } else {
+                        loadJarFile(file, names, nested);
+                    }
+                } catch (IOException ioe) {
+                    fileManager.reportError(file.getPath() + ": " + ioe.getMessage());
+                }
+            }
+        });
+    }
+
+    private void loadClassFile(File file) throws IOException {
+        if (metrics != null) {
+            metrics.addClassFile();
+        }
+        if (cache != null) {
+            JavaClass_T jClass = cache.get(file);
+            if (jClass != null) {
+                if (metrics != null) {
+                    metrics.addCacheHit();
+                }
+                link(file, jClass);
+                return;
+            }
+        }
+
+        long start = System.nanoTime();
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        if (metrics != null) {
+            metrics.addRead(bytes.length, System.nanoTime() - start);
+        }
+        parse(file, null, null, bytes, null, 0);
+    }
+
+    private void loadJarFile(File file, String[] names, String[] nested) 
+        throws IOException {
+        if (names.length == 0 && nested.length == 0) {
+            return;
+        }
+        if (metrics != null) {
+            metrics.addJarFile();
+        }
+        Summary summary = null;
+        if (summaries != null && nested.length == 0) {
+            Collection summarized = summaries.get(file, names);
+            if (summarized != null) {
+                if (metrics != null) {
+                    metrics.addSummaryHit();
+                }
+                for (Iterator i = summarized.iterator(); i.hasNext();) {
+                    link(file, (JavaClass_T) i.next());
+                }
+                return;
+            }
+            summary = new Summary(file, names);
+        }
+        if (ModuleImage.isModule(file)) {
+            loadModule(file, names, summary);
+            return;
+        }
+        AnalysisEvents.JarScan event = new AnalysisEvents.JarScan();
+        event.begin();
+        int classes = 0;
+        JarFile jarFile = null;
+        try {
+            jarFile = new JarFile(file);
+            for (int i = 0; i < names.length; i++) {
+                ZipEntry entry = jarFile.getEntry(names[i]);
+                if (entry == null) {
+                    continue;
+                }
+                classes++;
+                if (metrics != null) {
+                    metrics.addJarEntry();
+                }
+                if (cache != null) {
+                    JavaClass_T jClass = cache.get(jarFile, entry);
+                    if (jClass != null) {
+                        if (metrics != null) {
+                            metrics.addCacheHit();
+                        }
+                        if (summary != null) {
+                            summary.add(i, jClass);
+                        }
+                        link(file, jClass);
+                        continue;
+                    }
+                }
+                long start = System.nanoTime();
+                byte[] bytes = read(jarFile, entry);
+                if (metrics != null) {
+                    metrics.addRead(bytes.length, System.nanoTime() - start);
+                }
+                parse(file, jarFile, entry, bytes, summary, i);
+            }
+            for (int i = 0; i < nested.length; i++) {
+                ZipEntry entry = jarFile.getEntry(nested[i]);
+                if (entry != null) {
+                    classes += loadNestedArchive(file, jarFile, entry);
+                }
+            }
+        } finally {
+            if (jarFile != null) {
+                jarFile.close();
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.path = file.getPath();
+                event.classes = classes;
+                event.commit();
+            }
+        }
+    }
+
+    private void loadModule(File file, String[] names, Summary summary) 
+        throws IOException {
+        for (int i = 0; i < names.length; i++) {
+            if (metrics != null) {
+                metrics.addJarEntry();
+            }
+            long start = System.nanoTime();
+            byte[] bytes = ModuleImage.read(file, names[i]);
+            if (metrics != null) {
+                metrics.addRead(bytes.length, System.nanoTime() - start);
+            }
+            parse(file, null, null, bytes, summary, i);
+        }
+    }
+
+    /**
+     * Streams the classes of the archive nested in the specified entry
+     * to the parse stage.  A nested archive that cannot be read is 
+     * reported and skipped.
+     * 
+     * @return Number of classes read.
+     */
+    private int loadNestedArchive(final File file, final JarFile jarFile, 
+        ZipEntry nested) throws IOException {
+
+        final int[] classes = new int[1];
+        InputStream in = jarFile.getInputStream(nested);
+        try {
+            NestedArchive.read(in, fileManager, new NestedArchive.Visitor() {
+                public void visitClass(ZipEntry entry, InputStream is) 
+                    throws IOException {
+                    classes[0]++;
+                    if (metrics != null) {
+                        metrics.addJarEntry();
+                    }
+                    long start = System.nanoTime();
+                    byte[] bytes = is.readAllBytes();
+                    if (metrics != null) {
+                        metrics.addRead(bytes.length, System.nanoTime() - start);
+                    }
+                    parse(file, jarFile, null, bytes, null, 0);
+                }
+            });
+        } catch (IOException ioe) {
+            fileManager.reportError(jarFile.getName() + "!" + nested.getName() 
+                + ": " + ioe.getMessage());
+        } finally {
+            in.close();
+        }
+        return classes[0];
+    }
+
+    private byte[] read(JarFile jarFile, ZipEntry entry) throws IOException {
+        InputStream is = jarFile.getInputStream(entry);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(
+                entry.getSize() > 0 ? (int) entry.getSize() : 8192);
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = is.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * @param summary Summary of the jar file the class is read from, or
+     *                <code>null</code> if it is not being summarized.
+     * @param position Index of the class entry in the summary.
+     */
+    private void parse(final File file, final JarFile jarFile,
+        final ZipEntry entry, final byte[] bytes, final Summary summary, 
+        final int position) {
+        consume(parseStage, "parse", new Item() {
+            public void process() {
+                ClassFileParser_T parser = parsers.get();
+                if (parser == null) {
+                    parser = new ClassFileParser_T(filter);
+                    parser.setMetrics(metrics);
+                    parsers.set(parser);
+                }
+                JavaClass_T jClass = null;
+                try {
+                    jClass = parser.parse(ByteBuffer.wrap(bytes));
+                    if (cache != null) {
+                        if (jarFile != null) {
+                            if (entry != null) {
+                                cache.put(jarFile, entry, jClass);
+                            }
+                        } else if (!ModuleImage.isModule(file)) {
+                            cache.put(file, jClass);
+                        }
+                    }
+                    link(file, jClass);
+                } catch (IOException ioe) {
+                    String source = entry != null 
+                        ? jarFile.getName() + "!" + entry.getName() 
+                        : file.getPath();
+                    fileManager.reportError(source + ": " + ioe.getMessage());
+                } finally {
+                    if (summary != null) {
+                        summary.add(position, jClass);
+                    }
+                }
+            }
+        });
+    }
+
+    private void link(final File file, final JavaClass_T jClass) {
+        consume(linkStage, "link", new Item() {
+            public void process() {
+                if (!retainClasses) {
+                    linker.onParsedJavaClass(jClass);
+                    return;
+                }
+                File key = file.getAbsoluteFile();
+                Collection classes = (Collection) classesByFile.get(key);
+                if (classes == null) {
+                    classes = new ArrayList();
+                    classesByFile.put(key, classes);
+                }
+                classes.add(jClass);
+                linker.onParsedJavaClass(jClass);
+            }
+        });
+    }
+
+    /**
+     * Collects the classes of one jar file from the parse stage, in 
+     * entry order, and stores its summary once every class entry was
+     * parsed.  A jar file with an entry that failed to parse is not 
+     * summarized.
+     */
+    private class Summary {
+
+        private File file;
+        private String[] names;
+        private JavaClass_T[] classes;
+        private AtomicInteger remaining;
+
+        Summary(File file, String[] names) {
+            this.file = file;
+            this.names = names;
+            this.classes = new JavaClass_T[names.length];
+            this.remaining = new AtomicInteger(names.length);
+        }
+
+        void add(int index, JavaClass_T jClass) {
+            classes[index] = jClass;
+            if (remaining.decrementAndGet() > 0) {
+                return;
+            }
+            for (int i = 0; i < classes.length; i++) {
+                if (classes[i] == null) {
+                    return;
+                }
+            }
+            try {
+                summaries.put(file, names, Arrays.asList(classes));
+            } catch (IOException ioe) {
+                fileManager.reportError(file.getPath() + ": " + ioe.getMessage());
+            }
+        }
+    }
+
+    private void consume(ConsumerImpl stage, String name, Item item) {
+        stage.consume(item);
+        if (metrics != null) {
+            metrics.addQueueDepth(name, stage.getQueueSize());
+        }
+    }
+}
@@ -0,0 +1,556 @@
+package jdependFast.framework;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The <code>AnalysisSnapshot</code> class saves the packages of a
+ * completed analysis to a compact binary file, and opens such a file
+ * through a read-only memory mapping, so that the analysis can be
+ * queried, or loaded back into a <code>JDepend_T</code>, without
+ * parsing any class again.
+ * <p>
+ * A snapshot holds, in this order, after a header of counts:
+ * <ul>
+ * <li>the package table, one fixed-size record per package in name
+ *     order, with its name, class and abstract class counts,
+ *     volatility, cycle flags, and the start of its dependencies and
+ *     classes in the tables that follow,
+ * <li>the efferents of every package, in the order they were found,
+ *     and the afferents of every package, as package ids,
+ * <li>optionally, the classes of every package in name order, with
+ *     their source file and whether they are abstract,
+ * <li>the UTF-8 encoded names, each stored once.
+ * </ul>
+ * <p>
+ * Opening a snapshot only maps and checks the file.  Each query reads
+ * the records it needs and decodes the names it returns, so that a
+ * single package of a very large analysis is looked up, by binary
+ * search on its name, without reading the rest.  The records a 
+ * query reads are checked as it reads them, and a query that finds 
+ * one damaged throws an <code>UncheckedIOException</code>.
+ */
+
+public class AnalysisSnapshot {
+
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x4A44534E;
+    static final int HEADER_SIZE = 28;
+    static final int PACKAGE_SIZE = 32;
+    private static final int CLASS_SIZE = 12;
+
+    private static final int WITH_CLASSES = 1;
+    private static final int IN_CYCLE = 1;
+    private static final int REACHES_CYCLE = 2;
+    private static final int ABSTRACT = 1;
+
+    private ByteBuffer buffer;
+    private int packageCount;
+    private int edgeCount;
+    private int classCount;
+    private boolean withClasses;
+    private int efferentTable;
+    private int afferentTable;
+    private int classTable;
+    private int stringTable;
+    private int stringBytes;
+
+
+    private AnalysisSnapshot(ByteBuffer buffer) throws IOException {
+
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an analysis snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported snapshot version: " + buffer.getInt(4));
+        }
+        withClasses = (buffer.getInt(8) & WITH_CLASSES) != 0;
+        packageCount = buffer.getInt(12);
+        edgeCount = buffer.getInt(16);
+        classCount = buffer.getInt(20);
+        stringBytes = buffer.getInt(24);
+
+        long efferents = HEADER_SIZE + (long) packageCount * PACKAGE_SIZE;
+        long afferents = efferents + 4L * edgeCount;
+        long classes = afferents + 4L * edgeCount;
+        long strings = classes + (long) classCount * CLASS_SIZE;
+        if (packageCount < 0 || edgeCount < 0 || classCount < 0
+                || stringBytes < 0 || strings + stringBytes != buffer.capacity()) {
+            throw new IOException("Truncated analysis snapshot");
+        }
+        efferentTable = (int) efferents;
+        afferentTable = (int) afferents;
+        classTable = (int) classes;
+        stringTable = (int) strings;
+    }
+
+    /**
+     * Opens the snapshot in the specified file, mapping it into memory.
+     *
+     * @param file Snapshot file.
+     * @return Analysis snapshot.
+     * @throws IOException If the file cannot be read or is not a
+     *         snapshot of this version.
+     */
+    public static AnalysisSnapshot open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Analysis snapshot too large: " + file);
+            }
+            return new AnalysisSnapshot(
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the specified packages, and of the packages
+     * they depend upon, to the specified file, replacing it only once 
+     * the snapshot is complete.
+     *
+     * @param packages Collection of <code>JavaPackage_T</code> instances.
+     * @param withClasses <code>true</code> to list the classes of each
+     *                    package; <code>false</code> to keep their
+     *                    counts only.
+     * @param file Snapshot file.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(Collection packages, boolean withClasses, File file)
+        throws IOException {
+
+        SortedMap byName = new TreeMap();
+        for (Iterator i = packages.iterator(); i.hasNext();) {
+            JavaPackage_T p = (JavaPackage_T) i.next();
+            byName.put(p.getName(), p);
+            for (Iterator j = p.getEfferents().iterator(); j.hasNext();) {
+                JavaPackage_T efferent = (JavaPackage_T) j.next();
+                if (!byName.containsKey(efferent.getName())) {
+                    byName.put(efferent.getName(), efferent);
+                }
+            }
+        }
+        JavaPackage_T[] nodes = (JavaPackage_T[]) byName.values().toArray(
+            new JavaPackage_T[byName.size()]);
+        Map ids = new HashMap();
+        for (int id = 0; id < nodes.length; id++) {
+            ids.put(nodes[id].getName(), Integer.valueOf(id));
+        }
+
+        List[] afferents = new List[nodes.length];
+        List[] classes = new List[nodes.length];
+        int edges = 0;
+        int classTotal = 0;
+        for (int id = 0; id < nodes.length; id++) {
+            afferents[id] = new ArrayList();
+            classes[id] = new ArrayList();
+            if (withClasses) {
+                classes[id].addAll(nodes[id].getClasses());
+                Collections.sort(classes[id], new JavaClass_T.ClassComparator());
+                classTotal += classes[id].size();
+            }
+        }
+        for (int id = 0; id < nodes.length; id++) {
+            for (Iterator i = nodes[id].getEfferents().iterator(); i.hasNext();) {
+                int target = id((JavaPackage_T) i.next(), ids);
+                afferents[target].add(Integer.valueOf(id));
+                edges++;
+            }
+        }
+
+        Strings strings = new Strings();
+        int[] names = new int[nodes.length];
+        int[][] classNames = new int[nodes.length][];
+        for (int id = 0; id < nodes.length; id++) {
+            names[id] = strings.add(nodes[id].getName());
+            classNames[id] = new int[2 * classes[id].size()];
+            for (int c = 0; c < classes[id].size(); c++) {
+                JavaClass_T jClass = (JavaClass_T) classes[id].get(c);
+                classNames[id][2 * c] = strings.add(jClass.getName());
+                classNames[id][2 * c + 1] = strings.add(jClass.getSourceFile());
+            }
+        }
+
+        File temp = File.createTempFile("jdepend-snapshot", ".tmp",
+            file.getAbsoluteFile().getParentFile());
+        try {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(withClasses ? WITH_CLASSES : 0);
+                out.writeInt(nodes.length);
+                out.writeInt(edges);
+                out.writeInt(classTotal);
+                out.writeInt(strings.bytes.size());
+
+                int efferentStart = 0;
+                int afferentStart = 0;
+                int classStart = 0;
+                for (int id = 0; id < nodes.length; id++) {
+                    JavaPackage_T p = nodes[id];
+                    out.writeInt(names[id]);
+                    out.writeInt(p.getClassCount());
+                    out.writeInt(p.getAbstractClassCount());
+                    out.writeInt(p.getVolatility());
+                    out.writeInt((p.isInCycle() ? IN_CYCLE : 0)
+                        | (p.containsCycle() ? REACHES_CYCLE : 0));
+                    out.writeInt(efferentStart);
+                    out.writeInt(afferentStart);
+                    out.writeInt(classStart);
+                    efferentStart += p.getEfferents().size();
+                    afferentStart += afferents[id].size();
+                    classStart += classes[id].size();
+                }
+
+                for (int id = 0; id < nodes.length; id++) {
+                    for (Iterator i = nodes[id].getEfferents().iterator(); i.hasNext();) {
+                        out.writeInt(id((JavaPackage_T) i.next(), ids));
+                    }
+                }
+                for (int id = 0; id < nodes.length; id++) {
+                    for (Iterator i = afferents[id].iterator(); i.hasNext();) {
+                        out.writeInt(((Integer) i.next()).intValue());
+                    }
+                }
+                for (int id = 0; id < nodes.length; id++) {
+                    for (int c = 0; c < classes[id].size(); c++) {
+                        JavaClass_T jClass = (JavaClass_T) classes[id].get(c);
+                        out.writeInt(classNames[id][2 * c]);
+                        out.writeInt(classNames[id][2 * c + 1]);
+                        out.writeInt(jClass.isAbstract() ? ABSTRACT : 0);
+                    }
+                }
+
+                strings.bytes.writeTo(out);
+            } finally {
+                out.close();
+            }
+            ParseCache.replace(temp, file);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    private static int id(JavaPackage_T jPackage, Map ids) {
+        return ((Integer) ids.get(jPackage.getName())).intValue();
+    }
+
+    /**
+     * @return The number of packages in the snapshot.
+     */
+    public int size() {
+        return packageCount;
+    }
+
+    /**
+     * @return <code>true</code> if the snapshot lists the classes of
+     *         each package.
+     */
+    public boolean hasClasses() {
+        return withClasses;
+    }
+
+    /**
+     * @return The total number of classes of the packages.
+     */
+    public int getClassCount() {
+        int count = 0;
+        for (int id = 0; id < packageCount; id++) {
+            count += getClassCount(id);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the id of the package of the specified name, found by
+     * binary search of the package table.
+     *
+     * @param name Package name.
+     * @return Package id, or -1 if the package is not in the snapshot.
+     */
+    public int getId(String name) {
+        int low = 0;
+        int high = packageCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = getName(middle).compareTo(name);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    public String getName(int id) {
+        return string(packageField(id, 0));
+    }
+
+    public int getClassCount(int id) {
+        return packageField(id, 1);
+    }
+
+    public int getAbstractClassCount(int id) {
+        return packageField(id, 2);
+    }
+
+    public int getVolatility(int id) {
+        return packageField(id, 3);
+    }
+
+    /**
+     * @return The ids of the packages the specified package depends
+     *         upon, in the order they were found.
+     */
+    public int[] getEfferents(int id) {
+        return slice(efferentTable, start(id, 5, edgeCount), efferentCoupling(id));
+    }
+
+    /**
+     * @return The ids of the packages that depend upon the specified
+     *         package, in id order.
+     */
+    public int[] getAfferents(int id) {
+        return slice(afferentTable, start(id, 6, edgeCount), afferentCoupling(id));
+    }
+
+    /**
+     * @return The efferent coupling (Ce) of the specified package.
+     */
+    public int efferentCoupling(int id) {
+        return count(id, 5, edgeCount);
+    }
+
+    /**
+     * @return The afferent coupling (Ca) of the specified package.
+     */
+    public int afferentCoupling(int id) {
+        return count(id, 6, edgeCount);
+    }
+
+    /**
+     * @return Instability (0-1) of the specified package.
+     */
+    public float instability(int id) {
+
+        float totalCoupling = (float) efferentCoupling(id)
+                + (float) afferentCoupling(id);
+
+        if (totalCoupling > 0) {
+            return efferentCoupling(id)/totalCoupling;
+        }
+
+        return 0;
+    }
+
+    /**
+     * @return Abstractness (0-1) of the specified package.
+     */
+    public float abstractness(int id) {
+
+        if (getClassCount(id) > 0) {
+            return (float) getAbstractClassCount(id) / (float) getClassCount(id);
+        }
+
+        return 0;
+    }
+
+    /**
+     * @return Distance from the main sequence (D) of the specified
+     *         package.
+     */
+    public float distance(int id) {
+        float d = Math.abs(abstractness(id) + instability(id) - 1);
+        return d * getVolatility(id);
+    }
+
+    /**
+     * @return <code>true</code> if the specified package participates
+     *         in a dependency cycle.
+     */
+    public boolean isInCycle(int id) {
+        return (packageField(id, 4) & IN_CYCLE) != 0;
+    }
+
+    /**
+     * @return <code>true</code> if a dependency cycle can be reached
+     *         from the specified package.
+     */
+    public boolean containsCycle(int id) {
+        return (packageField(id, 4) & REACHES_CYCLE) != 0;
+    }
+
+    /**
+     * @return The names of the classes of the specified package, in
+     *         name order, empty if the snapshot does not list classes.
+     */
+    public String[] getClassNames(int id) {
+        int from = start(id, 7, classCount);
+        String[] names = new String[count(id, 7, classCount)];
+        for (int c = 0; c < names.length; c++) {
+            names[c] = string(classField(from + c, 0));
+        }
+        return names;
+    }
+
+    /**
+     * Builds the packages of the snapshot, with their dependencies and,
+     * if the snapshot lists them, their classes.  Classes that are not
+     * listed are counted in their packages, as in a streaming analysis.
+     *
+     * @return Collection of <code>JavaPackage_T</code> instances, in
+     *         name order.
+     * @throws IOException If the snapshot is damaged.
+     */
+    public Collection getPackages() throws IOException {
+        try {
+            return buildPackages();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Collection buildPackages() {
+
+        JavaPackage_T[] packages = new JavaPackage_T[packageCount];
+        for (int id = 0; id < packageCount; id++) {
+            String name = getName(id);
+            JavaPackage_T p = new JavaPackage_T(name, getVolatility(id));
+            int abstracts = 0;
+            int from = start(id, 7, classCount);
+            int to = from + count(id, 7, classCount);
+            for (int c = from; c < to; c++) {
+                JavaClass_T jClass = new JavaClass_T(string(classField(c, 0)));
+                jClass.setPackageName(name);
+                jClass.setSourceFile(string(classField(c, 1)));
+                jClass.isAbstract((classField(c, 2) & ABSTRACT) != 0);
+                if (jClass.isAbstract()) {
+                    abstracts++;
+                }
+                p.addClass(jClass);
+            }
+            int classes = getClassCount(id) - (to - from);
+            int abstractClasses = getAbstractClassCount(id) - abstracts;
+            if (classes < 0 || abstractClasses < 0 || abstractClasses > classes) {
+                throw damaged();
+            }
+            p.countClasses(classes, abstractClasses);
+            packages[id] = p;
+        }
+
+        for (int id = 0; id < packageCount; id++) {
+            int[] efferents = getEfferents(id);
+            for (int e = 0; e < efferents.length; e++) {
+                packages[id].dependsUpon(packages[efferents[e]]);
+            }
+        }
+
+        return Arrays.asList(packages);
+    }
+
+    private int packageField(int id, int field) {
+        if (id < 0 || id >= packageCount) {
+            throw new IndexOutOfBoundsException("Package id: " + id);
+        }
+        return buffer.getInt(HEADER_SIZE + id * PACKAGE_SIZE + 4 * field);
+    }
+
+    /**
+     * @return The start of the specified table range of the specified
+     *         package, checked against the size of the table.
+     */
+    private int start(int id, int field, int total) {
+        int start = packageField(id, field);
+        if (start < 0 || start > total) {
+            throw damaged();
+        }
+        return start;
+    }
+
+    /**
+     * @return The length of the specified table range of the specified
+     *         package, which ends where the range of the next package
+     *         starts, or at the end of the table for the last.
+     */
+    private int count(int id, int field, int total) {
+        int end = id + 1 < packageCount ? start(id + 1, field, total) : total;
+        int count = end - start(id, field, total);
+        if (count < 0) {
+            throw damaged();
+        }
+        return count;
+    }
+
+    private int classField(int c, int field) {
+        return buffer.getInt(classTable + c * CLASS_SIZE + 4 * field);
+    }
+
+    /**
+     * @return The package ids of the specified range of the efferent 
+     *         or afferent table.
+     */
+    private int[] slice(int table, int from, int length) {
+        int[] slice = new int[length];
+        for (int i = 0; i < length; i++) {
+            slice[i] = buffer.getInt(table + 4 * (from + i));
+            if (slice[i] < 0 || slice[i] >= packageCount) {
+                throw damaged();
+            }
+        }
+        return slice;
+    }
+
+    private String string(int offset) {
+        if (offset < 0 || offset > stringBytes - 4) {
+            throw damaged();
+        }
+        int position = stringTable + offset;
+        int length = buffer.getInt(position);
+        if (length < 0 || length > stringBytes - offset - 4) {
+            throw damaged();
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + 4);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static UncheckedIOException damaged() {
+        return new UncheckedIOException(
+            new IOException("Damaged analysis snapshot"));
+    }
+
+    /**
+     * Table of length-prefixed UTF-8 strings, each written once.
+     */
+    private static class Strings {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Map offsets = new HashMap();
+
+        int add(String s) {
+            Integer offset = (Integer) offsets.get(s);
+            if (offset == null) {
+                offset = Integer.valueOf(bytes.size());
+                offsets.put(s, offset);
+                byte[] encoded = s.getBytes(StandardCharsets.UTF_8);
+                bytes.write(ByteBuffer.allocate(4).putInt(encoded.length).array(), 0, 4);
+                bytes.write(encoded, 0, encoded.length);
+            }
+            return offset.intValue();
+        }
+    }
+}
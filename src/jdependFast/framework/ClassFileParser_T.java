@@ -1,6 +1,9 @@
 package jdependFast.framework;
 
 import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
 
 /**
@@ -27,9 +30,23 @@ public class ClassFileParser_T extends AbstractParser_T {
     public static final int CONSTANT_METHOD = 10;
     public static final int CONSTANT_INTERFACEMETHOD = 11;
     public static final int CONSTANT_NAMEANDTYPE = 12;
+    public static final int CONSTANT_METHODHANDLE = 15;
+    public static final int CONSTANT_METHODTYPE = 16;
+    public static final int CONSTANT_DYNAMIC = 17;
+    public static final int CONSTANT_INVOKEDYNAMIC = 18;
+    public static final int CONSTANT_MODULE = 19;
+    public static final int CONSTANT_PACKAGE = 20;
     public static final char CLASS_DESCRIPTOR = 'L';
     public static final int ACC_INTERFACE = 0x200;
     public static final int ACC_ABSTRACT = 0x400;
+
+    /**
+     * Class files larger than this are memory mapped rather than 
+     * read into the parser's buffer.
+     */
+    public static final int MAP_THRESHOLD = 256 * 1024;
+
+    private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
     
     private String fileName;
     private String className;
@@ -37,11 +54,17 @@ public class ClassFileParser_T extends AbstractParser_T {
     private String interfaceNames[];
     private boolean isAbstract;
     private JavaClass_T jClass;
-    private Constant[] constantPool;
+    private int constantPoolCount;
+    private byte[] constantTags;
+    private int[] constantOffsets;
+    private String[] constantStrings;
     private FieldOrMethodInfo[] fields;
     private FieldOrMethodInfo[] methods;
     private AttributeInfo[] attributes;
-    private DataInputStream in;
+    private ByteBuffer in;
+    private ByteBuffer buffer;
+    private char[] chars;
+    private AnalysisMetrics metrics;
 
     
     public ClassFileParser_T() {
@@ -50,9 +73,25 @@ public class ClassFileParser_T extends AbstractParser_T {
 
     public ClassFileParser_T(PackageFilter_T filter) {
         super(filter);
+        buffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+        chars = new char[256];
+        constantTags = new byte[256];
+        constantOffsets = new int[256];
+        constantStrings = new String[256];
         reset();
     }
 
+    /**
+     * Sets the metrics recording the bytes read and the time taken to
+     * read and decode each class.
+     * 
+     * @param metrics Analysis metrics, or <code>null</code> to record
+     *                nothing.
+     */
+    public void setMetrics(AnalysisMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     private void reset() {
         className = null;
         superClassName = null;
@@ -60,7 +99,7 @@ public class ClassFileParser_T extends AbstractParser_T {
         isAbstract = false;
 
         jClass = null;
-        constantPool = new Constant[1];
+        constantPoolCount = 1;
         fields = new FieldOrMethodInfo[0];
         methods = new FieldOrMethodInfo[0];
         attributes = new AttributeInfo[0];
@@ -69,113 +108,272 @@ public class ClassFileParser_T extends AbstractParser_T {
     /**
      * Registered parser listeners are informed that the resulting
      * <code>JavaClass</code> was parsed.
+     * <p>
+     * The file is read with a single channel read into this parser's
+     * reusable buffer, or memory mapped if it is larger than 
+     * <code>MAP_THRESHOLD</code>.
      */
     public JavaClass_T parse(File classFile) throws IOException {
 
-        this.fileName = classFile.getCanonicalPath();
+        this.fileName = classFile.getPath();
 
         debug("\nParsing " + fileName + "...");
 
-        InputStream in = null;
+        FileChannel channel = new FileInputStream(classFile).getChannel();
 
         try {
 
-            in = new BufferedInputStream(new FileInputStream(classFile));
-
-            return parse(in);
+            long start = System.nanoTime();
+            ByteBuffer bytes = read(channel);
+            if (metrics != null) {
+                metrics.addRead(bytes.remaining(), System.nanoTime() - start);
+            }
+            return parseClass(bytes);
 
         } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException ioe) {
-                    ioe.printStackTrace();
-                }
+            try {
+                channel.close();
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
             }
         }
     }
 
-    
+    /**
+     * Registered parser listeners are informed that the resulting
+     * <code>JavaClass</code> was parsed.
+     * <p>
+     * The stream is drained into this parser's reusable buffer before 
+     * parsing, so callers need not buffer it themselves.
+     */
+    @Override
 	public JavaClass_T parse(InputStream is) throws IOException {
+        long start = System.nanoTime();
+        ByteBuffer bytes = read(is);
+        if (metrics != null) {
+            metrics.addRead(bytes.remaining(), System.nanoTime() - start);
+        }
+        return parse(bytes);
+    }
+
+    /**
+     * Registered parser listeners are informed that the resulting
+     * <code>JavaClass</code> was parsed.
+     * 
+     * @param bytes Class file contents, from the buffer's position 
+     *              to its limit.
+     * @throws IOException If the class file is invalid, with a message
+     *         that does not name it, since the buffer has no name.
+     */
+    public JavaClass_T parse(ByteBuffer bytes) throws IOException {
+        this.fileName = null;
+        return parseClass(bytes);
+    }
+
+    private JavaClass_T parseClass(ByteBuffer bytes) throws IOException {
+
+        long start = System.nanoTime();
+        AnalysisEvents.ClassParse event = new AnalysisEvents.ClassParse();
+        event.begin();
+        int size = bytes.remaining();
 
         reset();
 
         jClass = new JavaClass_T("Unknown");
 
-        in = new DataInputStream(is);
+        in = bytes;
+
+        try {
+
+            int magic = parseMagic();
 
-        int magic = parseMagic();
+            int minorVersion = parseMinorVersion();
+            int majorVersion = parseMajorVersion();
 
-        int minorVersion = parseMinorVersion();
-        int majorVersion = parseMajorVersion();
+            parseConstantPool();
 
-        constantPool = parseConstantPool();
+            parseAccessFlags();
 
-        parseAccessFlags();
+            className = parseClassName();
 
-        className = parseClassName();
+            superClassName = parseSuperClassName();
 
-        superClassName = parseSuperClassName();
+            interfaceNames = parseInterfaces();
 
-        interfaceNames = parseInterfaces();
+            fields = parseFields();
 
-        fields = parseFields();
+            methods = parseMethods();
 
-        methods = parseMethods();
+            parseAttributes();
 
-        parseAttributes();
+            addClassConstantReferences();
 
-        addClassConstantReferences();
+            addAnnotationsReferences();
 
-        addAnnotationsReferences();
+        } catch (BufferUnderflowException bue) {
+            throw new IOException(named("Truncated class file"));
+        } catch (IndexOutOfBoundsException ioobe) {
+            throw new IOException(named("Truncated class file"));
+        }
+
+        if (metrics != null) {
+            metrics.addParse(System.nanoTime() - start);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.className = className;
+            event.bytes = size;
+            event.commit();
+        }
 
         onParsedJavaClass(jClass);
 
         return jClass;
     }
 
+    /**
+     * @return The specified message, followed by the name of the class
+     *         file being parsed if it was read from a file.
+     */
+    private String named(String message) {
+        return fileName == null ? message : message + ": " + fileName;
+    }
+
+    private ByteBuffer read(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > MAP_THRESHOLD) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        ByteBuffer buf = buffer((int) size);
+        buf.limit((int) size);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf) < 0) {
+                break;
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private ByteBuffer read(InputStream is) throws IOException {
+        ByteBuffer buf = buffer(DEFAULT_BUFFER_SIZE);
+        int count = 0;
+        while (true) {
+            if (count == buf.capacity()) {
+                buf = buffer(count * 2);
+            }
+            int n = is.read(buf.array(), count, buf.capacity() - count);
+            if (n < 0) {
+                break;
+            }
+            count += n;
+        }
+        buf.limit(count);
+        return buf;
+    }
+
+    /**
+     * Returns this parser's reusable buffer, cleared and grown to 
+     * hold at least the specified number of bytes.  Growing keeps 
+     * the bytes already read.
+     */
+    private ByteBuffer buffer(int size) {
+        if (buffer.capacity() < size) {
+            ByteBuffer larger = ByteBuffer.allocate(size);
+            System.arraycopy(buffer.array(), 0, larger.array(), 0, 
+                buffer.capacity());
+            buffer = larger;
+        }
+        buffer.clear();
+        return buffer;
+    }
+
     private int parseMagic() throws IOException {
-        int magic = in.readInt();
+        int magic = in.getInt();
         if (magic != JAVA_MAGIC) {
-            throw new IOException("Invalid class file: " + fileName);
+            throw new IOException(named("Invalid class file"));
         }
 
         return magic;
     }
 
     private int parseMinorVersion() throws IOException {
-        return in.readUnsignedShort();
+        return u2();
     }
 
     private int parseMajorVersion() throws IOException {
-        return in.readUnsignedShort();
+        return u2();
     }
 
-    private Constant[] parseConstantPool() throws IOException {
-        int constantPoolSize = in.readUnsignedShort();
+    /**
+     * Records the tag and buffer offset of each constant pool entry
+     * without decoding it.  Entries are decoded on first use, so only
+     * the UTF8 strings reached from class constants, field and method 
+     * descriptors, annotations and attribute names are ever built.
+     */
+    private void parseConstantPool() throws IOException {
+        int constantPoolSize = u2();
 
-        Constant[] pool = new Constant[constantPoolSize];
+        if (constantTags.length < constantPoolSize) {
+            constantTags = new byte[constantPoolSize];
+            constantOffsets = new int[constantPoolSize];
+            constantStrings = new String[constantPoolSize];
+        } else {
+            Arrays.fill(constantTags, 0, constantPoolSize, (byte) 0);
+            Arrays.fill(constantStrings, 0, constantPoolSize, null);
+        }
+        constantPoolCount = constantPoolSize;
 
         for (int i = 1; i < constantPoolSize; i++) {
 
-            Constant constant = parseNextConstant();
-
-            pool[i] = constant;
+            byte tag = in.get();
+            constantTags[i] = tag;
+            constantOffsets[i] = in.position();
+            skip(constantLength(tag));
 
             //
             // 8-byte constants use two constant pool entries
             //
-            if (constant.getTag() == CONSTANT_DOUBLE
-                    || constant.getTag() == CONSTANT_LONG) {
+            if (tag == CONSTANT_DOUBLE || tag == CONSTANT_LONG) {
                 i++;
             }
         }
+    }
+
+    private int constantLength(byte tag) throws IOException {
 
-        return pool;
+        switch (tag) {
+
+        case (ClassFileParser_T.CONSTANT_UTF8):
+            return 2 + u2(in.position());
+        case (ClassFileParser_T.CONSTANT_CLASS):
+        case (ClassFileParser_T.CONSTANT_STRING):
+        case (ClassFileParser_T.CONSTANT_METHODTYPE):
+        case (ClassFileParser_T.CONSTANT_MODULE):
+        case (ClassFileParser_T.CONSTANT_PACKAGE):
+            return 2;
+        case (ClassFileParser_T.CONSTANT_METHODHANDLE):
+            return 3;
+        case (ClassFileParser_T.CONSTANT_FIELD):
+        case (ClassFileParser_T.CONSTANT_METHOD):
+        case (ClassFileParser_T.CONSTANT_INTERFACEMETHOD):
+        case (ClassFileParser_T.CONSTANT_NAMEANDTYPE):
+        case (ClassFileParser_T.CONSTANT_DYNAMIC):
+        case (ClassFileParser_T.CONSTANT_INVOKEDYNAMIC):
+        case (ClassFileParser_T.CONSTANT_INTEGER):
+        case (ClassFileParser_T.CONSTANT_FLOAT):
+            return 4;
+        case (ClassFileParser_T.CONSTANT_LONG):
+        case (ClassFileParser_T.CONSTANT_DOUBLE):
+            return 8;
+        default:
+            throw new IOException("Unknown constant: " + tag);
+        }
     }
 
     private void parseAccessFlags() throws IOException {
-        int accessFlags = in.readUnsignedShort();
+        int accessFlags = u2();
 
         boolean isAbstract = ((accessFlags & ACC_ABSTRACT) != 0);
         boolean isInterface = ((accessFlags & ACC_INTERFACE) != 0);
@@ -187,7 +385,7 @@ public class ClassFileParser_T extends AbstractParser_T {
     }
 
     private String parseClassName() throws IOException {
-        int entryIndex = in.readUnsignedShort();
+        int entryIndex = u2();
         String className = getClassConstantName(entryIndex);
         jClass.setName(className);
         jClass.setPackageName(getPackageName(className));
@@ -199,7 +397,7 @@ public class ClassFileParser_T extends AbstractParser_T {
     }
 
     private String parseSuperClassName() throws IOException {
-        int entryIndex = in.readUnsignedShort();
+        int entryIndex = u2();
         String superClassName = getClassConstantName(entryIndex);
         addImport(getPackageName(superClassName));
 
@@ -209,10 +407,10 @@ public class ClassFileParser_T extends AbstractParser_T {
     }
 
     private String[] parseInterfaces() throws IOException {
-        int interfacesCount = in.readUnsignedShort();
+        int interfacesCount = u2();
         String[] interfaceNames = new String[interfacesCount];
         for (int i = 0; i < interfacesCount; i++) {
-            int entryIndex = in.readUnsignedShort();
+            int entryIndex = u2();
             interfaceNames[i] = getClassConstantName(entryIndex);
             addImport(getPackageName(interfaceNames[i]));
 
@@ -223,7 +421,7 @@ public class ClassFileParser_T extends AbstractParser_T {
     }
 
     private FieldOrMethodInfo[] parseFields() throws IOException {
-        int fieldsCount = in.readUnsignedShort();
+        int fieldsCount = u2();
         FieldOrMethodInfo[] fields = new FieldOrMethodInfo[fieldsCount];
         for (int i = 0; i < fieldsCount; i++) {
             fields[i] = parseFieldOrMethodInfo();
@@ -240,7 +438,7 @@ public class ClassFileParser_T extends AbstractParser_T {
     }
 
     private FieldOrMethodInfo[] parseMethods() throws IOException {
-        int methodsCount = in.readUnsignedShort();
+        int methodsCount = u2();
         FieldOrMethodInfo[] methods = new FieldOrMethodInfo[methodsCount];
         for (int i = 0; i < methodsCount; i++) {
             methods[i] = parseFieldOrMethodInfo();
@@ -258,57 +456,15 @@ public class ClassFileParser_T extends AbstractParser_T {
         return methods;
     }
 
-    private Constant parseNextConstant() throws IOException {
-
-        Constant result;
-
-        byte tag = in.readByte();
-
-        switch (tag) {
-
-        case (ClassFileParser_T.CONSTANT_CLASS):
-        case (ClassFileParser_T.CONSTANT_STRING):
-            result = new Constant(tag, in.readUnsignedShort());
-            break;
-        case (ClassFileParser_T.CONSTANT_FIELD):
-        case (ClassFileParser_T.CONSTANT_METHOD):
-        case (ClassFileParser_T.CONSTANT_INTERFACEMETHOD):
-        case (ClassFileParser_T.CONSTANT_NAMEANDTYPE):
-            result = new Constant(tag, in.readUnsignedShort(), in
-                    .readUnsignedShort());
-            break;
-        case (ClassFileParser_T.CONSTANT_INTEGER):
-            result = new Constant(tag, new Integer(in.readInt()));
-            break;
-        case (ClassFileParser_T.CONSTANT_FLOAT):
-            result = new Constant(tag, new Float(in.readFloat()));
-            break;
-        case (ClassFileParser_T.CONSTANT_LONG):
-            result = new Constant(tag, new Long(in.readLong()));
-            break;
-        case (ClassFileParser_T.CONSTANT_DOUBLE):
-            result = new Constant(tag, new Double(in.readDouble()));
-            break;
-        case (ClassFileParser_T.CONSTANT_UTF8):
-            result = new Constant(tag, in.readUTF());
-            break;
-        default:
-            throw new IOException("Unknown constant: " + tag);
-        }
-
-        return result;
-    }
-
     private FieldOrMethodInfo parseFieldOrMethodInfo() throws IOException {
 
-        FieldOrMethodInfo result = new FieldOrMethodInfo(
-                in.readUnsignedShort(), in.readUnsignedShort(), in
-                        .readUnsignedShort());
+        FieldOrMethodInfo result = new FieldOrMethodInfo(u2(), u2(), u2());
 
-        int attributesCount = in.readUnsignedShort();
+        int attributesCount = u2();
         for (int a = 0; a < attributesCount; a++) {
         	AttributeInfo attribute = parseAttribute();
-        	if ("RuntimeVisibleAnnotations".equals(attribute.name)) {
+        	if (attribute != null 
+        	        && "RuntimeVisibleAnnotations".equals(attribute.name)) {
         		result._runtimeVisibleAnnotations = attribute;
         	}
         }
@@ -317,19 +473,16 @@ public class ClassFileParser_T extends AbstractParser_T {
     }
 
     private void parseAttributes() throws IOException {
-        int attributesCount = in.readUnsignedShort();
+        int attributesCount = u2();
         attributes = new AttributeInfo[attributesCount];
 
         for (int i = 0; i < attributesCount; i++) {
             attributes[i] = parseAttribute();
 
             // Section 4.7.7 of VM Spec - Class File Format
-            if (attributes[i].getName() != null) {
+            if (attributes[i] != null) {
                 if (attributes[i].getName().equals("SourceFile")) {
-                    byte[] b = attributes[i].getValue();
-                    int b0 = b[0] < 0 ? b[0] + 256 : b[0];
-                    int b1 = b[1] < 0 ? b[1] + 256 : b[1];
-                    int pe = b0 * 256 + b1;
+                    int pe = u2(attributes[i].getOffset());
 
                     String descriptor = toUTF8(pe);
                     jClass.setSourceFile(descriptor);
@@ -338,52 +491,136 @@ public class ClassFileParser_T extends AbstractParser_T {
         }
     }
 
+    /**
+     * Skips over the attribute at the current buffer position.  Only 
+     * the <code>SourceFile</code> and <code>RuntimeVisibleAnnotations</code>
+     * attributes are of interest to the dependency analysis; these are 
+     * returned as a reference to their body in the buffer.  All others, 
+     * including <code>Code</code>, <code>StackMapTable</code> and 
+     * <code>LineNumberTable</code>, are neither copied nor returned.
+     * 
+     * @return Retained attribute, or <code>null</code> if skipped.
+     */
     private AttributeInfo parseAttribute() throws IOException {
-        AttributeInfo result = new AttributeInfo();
 
-        int nameIndex = in.readUnsignedShort();
-        if (nameIndex != -1) {
-            result.setName(toUTF8(nameIndex));
-        }
+        int nameIndex = u2();
+        int attributeLength = in.getInt();
+        int offset = in.position();
+        skip(attributeLength);
 
-        int attributeLength = in.readInt();
-        byte[] value = new byte[attributeLength];
-        for (int b = 0; b < attributeLength; b++) {
-            value[b] = in.readByte();
+        String name = toUTF8(nameIndex);
+        if (name.equals("SourceFile") 
+                || name.equals("RuntimeVisibleAnnotations")) {
+            return new AttributeInfo(name, offset, attributeLength);
         }
 
-        result.setValue(value);
-        return result;
+        return null;
     }
 
-    private Constant getConstantPoolEntry(int entryIndex) throws IOException {
+    private int u2() {
+        return in.getShort() & 0xFFFF;
+    }
 
-        if (entryIndex < 0 || entryIndex >= constantPool.length) {
+    private int u2(int offset) {
+        return in.getShort(offset) & 0xFFFF;
+    }
+
+    private void skip(int length) {
+        if (length < 0 || length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        in.position(in.position() + length);
+    }
+
+    /**
+     * Decodes a modified UTF-8 string of the specified byte length 
+     * starting at the specified buffer offset (JVM Spec 4.4.7).
+     */
+    private String readUTF(int offset, int length) {
+        if (chars.length < length) {
+            chars = new char[length];
+        }
+
+        int index = offset;
+        int end = index + length;
+        int count = 0;
+        while (index < end) {
+            int c = in.get(index++) & 0xFF;
+            if (c < 0x80) {
+                chars[count++] = (char) c;
+            } else if ((c & 0xE0) == 0xC0) {
+                chars[count++] = (char) (((c & 0x1F) << 6) 
+                    | (in.get(index++) & 0x3F));
+            } else {
+                chars[count++] = (char) (((c & 0x0F) << 12) 
+                    | ((in.get(index++) & 0x3F) << 6) 
+                    | (in.get(index++) & 0x3F));
+            }
+        }
+
+        return new String(chars, 0, count);
+    }
+
+    private void checkConstantPoolIndex(int entryIndex) throws IOException {
+        if (entryIndex < 0 || entryIndex >= constantPoolCount) {
             throw new IOException("Illegal constant pool index : " + entryIndex);
         }
+    }
+
+    /**
+     * Materializes the specified constant pool entry.  Only used to
+     * describe the parsed class; parsing itself reads entries in place.
+     */
+    private Constant getConstantPoolEntry(int entryIndex) throws IOException {
+
+        checkConstantPoolIndex(entryIndex);
+
+        byte tag = constantTags[entryIndex];
+        int offset = constantOffsets[entryIndex];
 
-        return constantPool[entryIndex];
+        switch (tag) {
+
+        case 0:
+            return null;
+        case (ClassFileParser_T.CONSTANT_UTF8):
+            return new Constant(tag, toUTF8(entryIndex));
+        case (ClassFileParser_T.CONSTANT_INTEGER):
+            return new Constant(tag, new Integer(in.getInt(offset)));
+        case (ClassFileParser_T.CONSTANT_FLOAT):
+            return new Constant(tag, new Float(in.getFloat(offset)));
+        case (ClassFileParser_T.CONSTANT_LONG):
+            return new Constant(tag, new Long(in.getLong(offset)));
+        case (ClassFileParser_T.CONSTANT_DOUBLE):
+            return new Constant(tag, new Double(in.getDouble(offset)));
+        case (ClassFileParser_T.CONSTANT_METHODHANDLE):
+            return new Constant(tag, u2(offset + 1));
+        case (ClassFileParser_T.CONSTANT_FIELD):
+        case (ClassFileParser_T.CONSTANT_METHOD):
+        case (ClassFileParser_T.CONSTANT_INTERFACEMETHOD):
+        case (ClassFileParser_T.CONSTANT_NAMEANDTYPE):
+        case (ClassFileParser_T.CONSTANT_DYNAMIC):
+        case (ClassFileParser_T.CONSTANT_INVOKEDYNAMIC):
+            return new Constant(tag, u2(offset), u2(offset + 2));
+        default:
+            return new Constant(tag, u2(offset));
+        }
     }
 
     private void addClassConstantReferences() throws IOException {
-        for (int j = 1; j < constantPool.length; j++) {
-            if (constantPool[j].getTag() == CONSTANT_CLASS) {
-                String name = toUTF8(constantPool[j].getNameIndex());
+        for (int j = 1; j < constantPoolCount; j++) {
+            if (constantTags[j] == CONSTANT_CLASS) {
+                String name = toUTF8(u2(constantOffsets[j]));
                 addImport(getPackageName(name));
 
                 debug("Parser: class type = " + slashesToDots(name));
             }
-            
-            if (constantPool[j].getTag() == CONSTANT_DOUBLE
-                    || constantPool[j].getTag() == CONSTANT_LONG) {
-                j++;
-            }
         }
     }
 
     private void addAnnotationsReferences() throws IOException {
         for (int j = 1; j < attributes.length; j++) {
-            if ("RuntimeVisibleAnnotations".equals(attributes[j].name)) {
+            if (attributes[j] != null 
+                    && "RuntimeVisibleAnnotations".equals(attributes[j].name)) {
                 addAnnotationReferences(attributes[j]);
             }
         }
@@ -401,22 +638,22 @@ public class ClassFileParser_T extends AbstractParser_T {
 
     private void addAnnotationReferences(AttributeInfo annotation) throws IOException {
     	// JVM Spec 4.8.15
-    	byte[] data = annotation.value;
-    	int numAnnotations = u2(data, 0);
-    	int annotationIndex = 2;
-    	addAnnotationReferences(data, annotationIndex, numAnnotations);
+    	int index = annotation.getOffset();
+    	int numAnnotations = u2(index);
+    	int annotationIndex = index + 2;
+    	addAnnotationReferences(annotationIndex, numAnnotations);
     }
 
-    private int addAnnotationReferences(byte[] data, int index, int numAnnotations) throws IOException {
+    private int addAnnotationReferences(int index, int numAnnotations) throws IOException {
     	int visitedAnnotations = 0;
 		while (visitedAnnotations < numAnnotations) {
-	    	int typeIndex = u2(data, index);
-	    	int numElementValuePairs = u2(data, index = index + 2);
+	    	int typeIndex = u2(index);
+	    	int numElementValuePairs = u2(index = index + 2);
 	        addImport(getPackageName(toUTF8(typeIndex).substring(1)));
 	        int visitedElementValuePairs = 0;
 	        index += 2;
 	        while (visitedElementValuePairs < numElementValuePairs) {
-	        	index = addAnnotationElementValueReferences(data, index = index + 2);
+	        	index = addAnnotationElementValueReferences(index = index + 2);
 	        	visitedElementValuePairs++;
 	        }
 	        visitedAnnotations++;
@@ -424,8 +661,8 @@ public class ClassFileParser_T extends AbstractParser_T {
 		return index;
 	}
     
-    private int addAnnotationElementValueReferences(byte[] data, int index) throws IOException {
-    	byte tag = data[index];
+    private int addAnnotationElementValueReferences(int index) throws IOException {
+    	byte tag = in.get(index);
     	index += 1;
     	switch (tag) {
         	case 'B':
@@ -441,49 +678,51 @@ public class ClassFileParser_T extends AbstractParser_T {
     			break;
     			
     		case 'e':
-    			int enumTypeIndex = u2(data, index);
+    			int enumTypeIndex = u2(index);
     			addImport(getPackageName(toUTF8(enumTypeIndex).substring(1)));
     			index += 4;
     			break;
     			
     		case 'c':
-    			int classInfoIndex = u2(data, index);
+    			int classInfoIndex = u2(index);
     			addImport(getPackageName(toUTF8(classInfoIndex).substring(1)));
     			index += 2;
     			break;
     			
     		case '@':
-    			index = addAnnotationReferences(data, index, 1);
+    			index = addAnnotationReferences(index, 1);
     			break;
     			
     		case '[':
-    			int numValues = u2(data, index);
+    			int numValues = u2(index);
     			index = index + 2;
     			for (int i = 0; i < numValues; i++) {
-    				index = addAnnotationElementValueReferences(data, index);
+    				index = addAnnotationElementValueReferences(index);
     			}
     			break;
     	}
     	return index;
     }
 
-	private int u2(byte[] data, int index) {
-		return (data[index] << 8 & 0xFF00)  | (data[index+1] & 0xFF);
-	}
-
 	private String getClassConstantName(int entryIndex) throws IOException {
 
-        Constant entry = getConstantPoolEntry(entryIndex);
-        if (entry == null) {
+        checkConstantPoolIndex(entryIndex);
+        if (constantTags[entryIndex] == 0) {
             return "";
         }
-        return slashesToDots(toUTF8(entry.getNameIndex()));
+        return slashesToDots(toUTF8(u2(constantOffsets[entryIndex])));
     }
 
     private String toUTF8(int entryIndex) throws IOException {
-        Constant entry = getConstantPoolEntry(entryIndex);
-        if (entry.getTag() == CONSTANT_UTF8) {
-            return (String) entry.getValue();
+        checkConstantPoolIndex(entryIndex);
+        if (constantTags[entryIndex] == CONSTANT_UTF8) {
+            String value = constantStrings[entryIndex];
+            if (value == null) {
+                int offset = constantOffsets[entryIndex];
+                value = readUTF(offset + 2, u2(offset));
+                constantStrings[entryIndex] = value;
+            }
+            return value;
         }
 
         throw new IOException("Constant pool entry is not a UTF8 type: "
@@ -668,22 +907,29 @@ public class ClassFileParser_T extends AbstractParser_T {
 
         private String name;
 
-        private byte[] value;
+        private int offset;
+
+        private int length;
 
-        public void setName(String name) {
+        AttributeInfo(String name, int offset, int length) {
             this.name = name;
+            this.offset = offset;
+            this.length = length;
         }
 
         public String getName() {
             return this.name;
         }
 
-        public void setValue(byte[] value) {
-            this.value = value;
+        /**
+         * @return Buffer offset of the attribute body.
+         */
+        public int getOffset() {
+            return this.offset;
         }
 
-        public byte[] getValue() {
-            return this.value;
+        public int getLength() {
+            return this.length;
         }
     }
 
@@ -702,7 +948,7 @@ public class ClassFileParser_T extends AbstractParser_T {
             s.append("\n" + className + ":\n");
 
             s.append("\nConstants:\n");
-            for (int i = 1; i < constantPool.length; i++) {
+            for (int i = 1; i < constantPoolCount; i++) {
                 Constant entry = getConstantPoolEntry(i);
                 s.append("    " + i + ". " + entry.toString() + "\n");
                 if (entry.getTag() == CONSTANT_DOUBLE
@@ -2,66 +2,124 @@ package jdependFast.framework;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * A pool of <code>ItemProcessor</code> threads fed by a bounded queue.
+ * <p>
+ * <code>consume()</code> blocks while the queue is full, which slows a
+ * producer down to the pace of the processors.
+ * <code>finishConsumption()</code> queues one end of stream marker per
+ * processor behind the items already queued and waits until all of
+ * them were processed.
+ */
 public class ConsumerImpl implements Consumer{
 
-	private BlockingQueue<Item> itemQueue = new LinkedBlockingQueue<Item>();
-	
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private BlockingQueue<Item> itemQueue;
+
 	private List<ItemProcessor> jobList = new LinkedList<ItemProcessor>();
-	
-	private ExecutorService executorService = Executors.newCachedThreadPool();
-	
+
+	private ExecutorService executorService;
+
 	private volatile boolean shutdownCalled = false;
-	
+
 	public ConsumerImpl(int poolSize){
+		this(poolSize, DEFAULT_CAPACITY);
+	}
+
+	public ConsumerImpl(int poolSize, int capacity){
+		itemQueue = new ArrayBlockingQueue<Item>(capacity);
+		executorService = Executors.newFixedThreadPool(poolSize);
 		for(int i = 0; i < poolSize; i++){
 			ItemProcessor jobThread = new ItemProcessor(itemQueue);
 			jobList.add(jobThread);
 			executorService.submit(jobThread);
 		}
 	}
+
+	/**
+	 * Queues the specified item, waiting for space if the queue is full.
+	 *
+	 * @return <code>false</code> if consumption was finished or an item
+	 *         failed, in which case the item is not queued.
+	 */
 	public boolean consume(Item j) {
-		// TODO Auto-generated method stub
-		if(!shutdownCalled){
-			try{
-				itemQueue.put(j);
-			}catch(InterruptedException ie){
-				Thread.currentThread().interrupt();
-				return false;
-			}
-			return true;
-		}else{
+		if(shutdownCalled || getFailure() != null){
+			return false;
+		}
+		try{
+			itemQueue.put(j);
+		}catch(InterruptedException ie){
+			Thread.currentThread().interrupt();
 			return false;
 		}
-		//return false;
+		return true;
 	}
 
 	public void finishConsumption() {
-		// TODO Auto-generated method stub
-		//for(ItemProcessor j : jobList){
-			//j.cancelExecution();
-		//}
+		if(shutdownCalled){
+			return;
+		}
+		shutdownCalled = true;
 		executorService.shutdown();
-		
-		 try {
-		     // Wait a while for existing tasks to terminate
-		     if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
-		    	 executorService.shutdownNow(); // Cancel currently executing tasks
-		       // Wait a while for tasks to respond to being cancelled
-		       if (!executorService.awaitTermination(10, TimeUnit.SECONDS))
-		           System.err.println("Pool did not terminate");
-		     }
-		   } catch (InterruptedException ie) {
-		     // (Re-)Cancel if current thread also interrupted
-			   executorService.shutdownNow();
-		     // Preserve interrupt status
-		     Thread.currentThread().interrupt();
-		   }
+
+		try {
+			for(int i = 0; i < jobList.size(); i++){
+				itemQueue.put(ItemProcessor.END);
+			}
+			while (!executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+				// keep waiting for the queued items
+			}
+		} catch (InterruptedException ie) {
+			for(ItemProcessor j : jobList){
+				j.cancelExecution();
+			}
+			executorService.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return Number of items waiting in the queue.
+	 */
+	public int getQueueSize() {
+		return itemQueue.size();
+	}
+
+	public int getPoolSize() {
+		return jobList.size();
+	}
+
+	/**
+	 * @return Nanoseconds the processors spent processing items, 
+	 *         summed over all of them.
+	 */
+	public long getBusyTime() {
+		long busyTime = 0;
+		for(ItemProcessor j : jobList){
+			busyTime += j.getBusyTime();
+		}
+		return busyTime;
+	}
+
+	/**
+	 * @return The exception thrown by the first failed item, or
+	 *         <code>null</code> if no item failed.
+	 */
+	public Throwable getFailure() {
+		for(ItemProcessor j : jobList){
+			Throwable failure = j.getFailure();
+			if(failure != null){
+				return failure;
+			}
+		}
+		return null;
 	}
 
 }
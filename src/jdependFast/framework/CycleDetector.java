@@ -0,0 +1,204 @@
+package jdependFast.framework;
+
+import java.util.*;
+
+/**
+ * The <code>CycleDetector</code> class labels packages with the
+ * strongly connected component of the dependency graph they belong to,
+ * using an iterative form of Tarjan's algorithm that runs in time
+ * linear in the number of packages and dependencies.
+ * <p>
+ * A package is in a dependency cycle if its component holds more
+ * than one package, and <em>contains</em> a cycle, in the sense of
+ * <code>JavaPackage_T.containsCycle()</code>, if a cyclic component
+ * can be reached from it.
+ * <p>
+ * Each labeling pass is an instance of this class.  A pass is
+ * invalidated as soon as the efferents of a package it labeled change,
+ * after which the affected packages are labeled again on demand.
+ * Efferents are added on several linking threads at once, so passes
+ * are only invalidated, and linked to the passes they relabeled, under
+ * a lock shared by every pass.
+ */
+
+class CycleDetector {
+
+    private static final Object LOCK = new Object();
+
+    private volatile boolean valid;
+    private Set dependents;
+
+
+    private CycleDetector() {
+        valid = true;
+        dependents = new HashSet();
+    }
+
+    boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Invalidates this pass and the earlier passes whose packages it
+     * relabeled, since those may depend on the changed packages too.
+     */
+    void invalidate() {
+        synchronized (LOCK) {
+            List pending = new ArrayList();
+            pending.add(this);
+            while (!pending.isEmpty()) {
+                CycleDetector pass = (CycleDetector)pending.remove(pending.size() - 1);
+                if (pass.valid) {
+                    pass.valid = false;
+                    pending.addAll(pass.dependents);
+                    pass.dependents.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Labels the specified packages and every package reachable from
+     * them.
+     *
+     * @param roots Packages to label.
+     */
+    static void label(Collection roots) {
+        label(new PackageGraph(roots));
+    }
+
+    /**
+     * Labels the packages of the specified graph.
+     *
+     * @param graph Package graph.
+     */
+    static void label(PackageGraph graph) {
+
+        CycleDetector pass = new CycleDetector();
+
+        synchronized (LOCK) {
+            for (int id = 0; id < graph.size(); id++) {
+                JavaPackage_T node = graph.getPackage(id);
+                CycleDetector previous = node.getCycleDetector();
+                if (previous != null && previous != pass && previous.isValid()) {
+                    pass.dependents.add(previous);
+                }
+                node.setCycleLabel(pass, graph.getComponent(id),
+                    graph.isInCycle(id), graph.containsCycle(id));
+            }
+        }
+    }
+
+    /**
+     * Computes the strongly connected components of the specified
+     * graph.  Components are numbered in the order Tarjan's algorithm
+     * completes them, which is a reverse topological order, so every
+     * component reachable from another has a lower number.
+     *
+     * @param offsets Offsets of each node's edges in <code>targets</code>,
+     *        with a final entry holding the number of edges.
+     * @param targets Edge targets.
+     * @param component Populated with the component of each node.
+     * @param inCycle Populated, per component, with whether it is cyclic.
+     * @param reachesCycle Populated, per component, with whether a
+     *        cyclic component is reachable from it.
+     * @return Number of components.
+     */
+    static int components(int[] offsets, int[] targets, int[] component,
+        boolean[] inCycle, boolean[] reachesCycle) {
+
+        int count = offsets.length - 1;
+        int[] index = new int[count];
+        int[] low = new int[count];
+        boolean[] onStack = new boolean[count];
+        int[] stack = new int[count];
+        int[] callStack = new int[count];
+        int[] nextEdge = new int[count];
+        Arrays.fill(index, -1);
+        System.arraycopy(offsets, 0, nextEdge, 0, count);
+
+        int nextIndex = 0;
+        int stackSize = 0;
+        int components = 0;
+
+        for (int root = 0; root < count; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+
+            int depth = 0;
+            callStack[depth++] = root;
+            index[root] = low[root] = nextIndex++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+
+            while (depth > 0) {
+                int node = callStack[depth - 1];
+
+                if (nextEdge[node] < offsets[node + 1]) {
+                    int target = targets[nextEdge[node]++];
+                    if (index[target] < 0) {
+                        index[target] = low[target] = nextIndex++;
+                        stack[stackSize++] = target;
+                        onStack[target] = true;
+                        callStack[depth++] = target;
+                    } else if (onStack[target]) {
+                        low[node] = Math.min(low[node], index[target]);
+                    }
+                    continue;
+                }
+
+                depth--;
+                if (depth > 0) {
+                    int parent = callStack[depth - 1];
+                    low[parent] = Math.min(low[parent], low[node]);
+                }
+
+                if (low[node] == index[node]) {
+                    int c = components++;
+                    int size = 0;
+                    int member;
+                    do {
+                        member = stack[--stackSize];
+                        onStack[member] = false;
+                        component[member] = c;
+                        size++;
+                    } while (member != node);
+
+                    inCycle[c] = size > 1;
+                    reachesCycle[c] = inCycle[c];
+                }
+            }
+        }
+
+        //
+        // Successor components are numbered lower, so one pass in
+        // numbering order settles reachability
+        //
+        int[] order = new int[count];
+        int[] start = new int[components + 1];
+        for (int n = 0; n < count; n++) {
+            start[component[n] + 1]++;
+        }
+        for (int c = 0; c < components; c++) {
+            start[c + 1] += start[c];
+        }
+        int[] fill = start.clone();
+        for (int n = 0; n < count; n++) {
+            order[fill[component[n]]++] = n;
+        }
+        for (int c = 0; c < components; c++) {
+            for (int m = start[c]; m < start[c + 1] && !reachesCycle[c]; m++) {
+                int node = order[m];
+                for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+                    if (reachesCycle[component[targets[e]]]) {
+                        reachesCycle[c] = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        return components;
+    }
+}
@@ -0,0 +1,775 @@
+package jdependFast.framework;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The <code>DiscoveryIndex</code> class records every class file and
+ * every class entry of the jar, war, and zip files found under the
+ * directories registered with a <code>FileManager_T</code>, with their
+ * sizes, along with the archives nested in those files.  The classes
+ * of nested archives are only counted once they are read, since their
+ * entries are not listed in the central directory of the outer file.
+ * <p>
+ * The directories are walked once, on the fork/join pool or, in the I/O
+ * execution mode, on the I/O executor of the file manager, and the
+ * entries of each jar file are read from its central directory alone,
+ * without inflating them.  Counting classes, reporting progress, and
+ * parsing then all reuse the index instead of walking the directories
+ * again.
+ * <p>
+ * Files are listed in the order a depth-first walk finds them: the
+ * class and jar files of a directory in name order, then the files of
+ * its sub-directories.
+ * <p>
+ * A <code>Listener</code> can be told of each file as soon as it is 
+ * indexed, in no particular order, so that reading and parsing can 
+ * start while the walk is still in progress.
+ * <p>
+ * The modules of the <code>jrt:/</code> runtime image are indexed like
+ * jar files, each on a task of its own, from the image's own listing.
+ * <p>
+ * When the file manager deduplicates classes, every class after the 
+ * first with the same file name, size, and CRC-32 is dropped from the
+ * index, in walk order, and so is every jar file whose class entries
+ * all match those of an earlier jar file.  The CRC-32 and size of jar
+ * entries come from the central directory; the CRC-32 of a class file
+ * is only computed when an earlier class has the same name and size.
+ */
+
+public class DiscoveryIndex {
+
+    private List files;
+    private Map jars;
+    private int classCount;
+    private long totalBytes;
+    private int directoryCount;
+    private long scanTime;
+    private Map duplicates = new LinkedHashMap();
+
+
+    /**
+     * Receives each class and jar file as soon as it is indexed.
+     */
+    interface Listener {
+
+        /**
+         * @param file Indexed file.
+         * @param names Names of the class entries of the jar file, or
+         *        <code>null</code> if the file is a class file.
+         * @param nested Names of the archives nested in the jar file, 
+         *        or <code>null</code> if the file is a class file.
+         */
+        void indexed(File file, String[] names, String[] nested);
+    }
+
+    /**
+     * Walks the directories and jar files registered with the specified
+     * file manager.
+     *
+     * @param fileManager Registered directories and file filter.
+     */
+    DiscoveryIndex(FileManager_T fileManager) {
+        this(fileManager, null);
+    }
+
+    /**
+     * Walks the directories and jar files registered with the specified
+     * file manager, telling the specified listener of each file from
+     * the threads of the walk as soon as it is indexed.  When the file
+     * manager deduplicates classes, the files kept are only told once 
+     * the walk ends, in walk order, since the first of several copies
+     * is only known then.
+     *
+     * @param fileManager Registered directories and file filter.
+     * @param listener Listener, or <code>null</code>.
+     */
+    DiscoveryIndex(FileManager_T fileManager, Listener listener) {
+
+        Scan scan = new Scan(fileManager, 
+            fileManager.isDeduplicating() ? null : listener);
+        List found = fileManager.getIoExecutor() != null
+            ? walk(scan, fileManager.getIoExecutor())
+            : walk(scan, fileManager.getExecutor());
+
+        classCount = scan.classes.get();
+        totalBytes = scan.bytes.get();
+        directoryCount = scan.directories.get();
+        scanTime = scan.time.get();
+
+        files = new ArrayList();
+        jars = new HashMap();
+        Deduplication dedup = fileManager.isDeduplicating() 
+            ? new Deduplication() : null;
+        for (Iterator i = found.iterator(); i.hasNext();) {
+            Object[] entry = (Object[]) i.next();
+            File file = (File) entry[0];
+            if (entry[1] instanceof Jar) {
+                Jar jar = (Jar) entry[1];
+                if (dedup != null && !ModuleImage.isModule(file) 
+                        && !dedup.keep(file, jar)) {
+                    continue;
+                }
+                jars.put(file, jar);
+            } else if (dedup != null 
+                    && !dedup.keep(file, ((Long) entry[1]).longValue())) {
+                continue;
+            }
+            files.add(file);
+        }
+
+        if (dedup != null && listener != null) {
+            replay(listener);
+        }
+    }
+
+    private static List walk(Scan scan, ForkJoinPool pool) {
+
+        List tasks = new ArrayList();
+        for (Iterator i = scan.fileManager.getDirectories().iterator(); i.hasNext();) {
+            ScanTask task = new ScanTask(scan, (File) i.next());
+            pool.execute(task);
+            tasks.add(task);
+        }
+
+        List found = new ArrayList();
+        for (Iterator i = tasks.iterator(); i.hasNext();) {
+            found.addAll(((ScanTask) i.next()).join());
+        }
+        return found;
+    }
+
+    /**
+     * Lists every directory on a task of its own, which submits the 
+     * tasks of its sub-directories without waiting for them, so that
+     * a bounded executor cannot run out of threads.  The walk ends 
+     * when no task is left pending.
+     */
+    private static List walk(Scan scan, ExecutorService io) {
+
+        IoWalk walk = new IoWalk(scan, io);
+        List roots = new ArrayList();
+        for (Iterator i = scan.fileManager.getDirectories().iterator(); i.hasNext();) {
+            roots.add(walk.submit((File) i.next()));
+        }
+        walk.arrive();
+        walk.await();
+
+        RuntimeException failure = (RuntimeException) walk.failure.get();
+        if (failure != null) {
+            throw failure;
+        }
+
+        List found = new ArrayList();
+        for (Iterator i = roots.iterator(); i.hasNext();) {
+            ((IoTask) i.next()).collect(found);
+        }
+        return found;
+    }
+
+    /**
+     * Tells the specified listener of every indexed file, in walk order.
+     */
+    void replay(Listener listener) {
+        for (Iterator i = files.iterator(); i.hasNext();) {
+            File file = (File) i.next();
+            listener.indexed(file, getEntryNames(file), getNestedArchives(file));
+        }
+    }
+
+    /**
+     * @return The class and jar files found, in walk order.
+     */
+    public List getFiles() {
+        return Collections.unmodifiableList(files);
+    }
+
+    /**
+     * @param file Indexed file.
+     * @return <code>true</code> if the file is an indexed jar, war, zip,
+     *         or jmod file, or a module of the runtime image.
+     */
+    public boolean isJarFile(File file) {
+        return jars.containsKey(file);
+    }
+
+    /**
+     * @param jar Indexed jar, war, or zip file.
+     * @return Names of the class entries of the file, in central
+     *         directory order, or <code>null</code> if the file is not
+     *         an indexed jar file.
+     */
+    public String[] getEntryNames(File jar) {
+        Jar entries = (Jar) jars.get(jar);
+        return entries == null ? null : entries.names;
+    }
+
+    /**
+     * @param jar Indexed jar, war, or zip file.
+     * @return Uncompressed sizes of the class entries of the file, or
+     *         <code>null</code> if the file is not an indexed jar file.
+     */
+    public long[] getEntrySizes(File jar) {
+        Jar entries = (Jar) jars.get(jar);
+        return entries == null ? null : entries.sizes;
+    }
+
+    /**
+     * @param jar Indexed jar, war, or zip file.
+     * @return Names of the jar, war, and zip files nested in the file, 
+     *         in central directory order, or <code>null</code> if the 
+     *         file is not an indexed jar file.
+     */
+    public String[] getNestedArchives(File jar) {
+        Jar entries = (Jar) jars.get(jar);
+        return entries == null ? null : entries.nested;
+    }
+
+    /**
+     * @param jar Indexed jar, war, or zip file.
+     * @return CRC-32 of the class entries of the file, from its central
+     *         directory, or <code>null</code> if the file is not an 
+     *         indexed jar file.
+     */
+    public long[] getEntryCrcs(File jar) {
+        Jar entries = (Jar) jars.get(jar);
+        return entries == null ? null : entries.crcs;
+    }
+
+    /**
+     * Returns the classes and jar files dropped as duplicates, in walk
+     * order, each mapped to the class or jar file it duplicates.  Jar
+     * entries are named by the path of their jar file, followed by 
+     * <code>!</code> and the entry name.
+     * 
+     * @return Map of duplicate path to original path, empty unless the
+     *         file manager deduplicates classes.
+     */
+    public Map getDuplicates() {
+        return Collections.unmodifiableMap(duplicates);
+    }
+
+    /**
+     * @return Number of class files and class entries of jar files,
+     *         not counting those of nested archives.
+     */
+    public int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * @return Total size of the class files and of the uncompressed
+     *         class entries of jar files.
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return Number of directories listed.
+     */
+    public int getDirectoryCount() {
+        return directoryCount;
+    }
+
+    /**
+     * @return Time spent listing directories and reading central
+     *         directories, summed over all threads, in nanoseconds.
+     */
+    public long getScanTime() {
+        return scanTime;
+    }
+
+    private static long[] toArray(List values) {
+        long[] array = new long[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ((Long) values.get(i)).longValue();
+        }
+        return array;
+    }
+
+    private static class Jar {
+        String[] names;
+        long[] sizes;
+        long[] crcs;
+        String[] nested;
+        long[] nestedSizes;
+        long[] nestedCrcs;
+    }
+
+    /**
+     * First-wins deduplication of the files found by the walk, in walk
+     * order.  Classes are keyed by file name, size, and CRC-32, and jar
+     * files by a SHA-256 digest of the names, sizes, and CRC-32 of all 
+     * their entries.
+     */
+    private class Deduplication {
+
+        private Map originals = new HashMap();
+        private Map pending = new HashMap();
+        private Set named = new HashSet();
+
+        /**
+         * Drops the class entries and nested archives of the specified
+         * jar file that duplicate earlier ones.
+         * 
+         * @return <code>false</code> if the whole jar file duplicates 
+         *         an earlier one.
+         */
+        boolean keep(File file, Jar jar) {
+
+            MessageDigest signature = newDigest();
+            for (int i = 0; i < jar.names.length; i++) {
+                update(signature, jar.names[i], jar.sizes[i], jar.crcs[i]);
+            }
+            for (int i = 0; i < jar.nested.length; i++) {
+                update(signature, jar.nested[i], jar.nestedSizes[i], jar.nestedCrcs[i]);
+            }
+            String key = "jar:" + new BigInteger(1, signature.digest()).toString(16);
+            String original = (String) originals.get(key);
+            if (original != null) {
+                duplicates.put(file.getPath(), original);
+                classCount -= jar.names.length;
+                for (int i = 0; i < jar.sizes.length; i++) {
+                    totalBytes -= jar.sizes[i];
+                }
+                return false;
+            }
+            originals.put(key, file.getPath());
+
+            List names = new ArrayList();
+            List sizes = new ArrayList();
+            List crcs = new ArrayList();
+            for (int i = 0; i < jar.names.length; i++) {
+                String path = file.getPath() + "!" + jar.names[i];
+                if (isDuplicate(nameSize(jar.names[i], jar.sizes[i]), 
+                        jar.crcs[i], path)) {
+                    classCount--;
+                    totalBytes -= jar.sizes[i];
+                    continue;
+                }
+                names.add(jar.names[i]);
+                sizes.add(Long.valueOf(jar.sizes[i]));
+                crcs.add(Long.valueOf(jar.crcs[i]));
+            }
+
+            List nested = new ArrayList();
+            for (int i = 0; i < jar.nested.length; i++) {
+                String path = file.getPath() + "!" + jar.nested[i];
+                if (!isDuplicate("archive:" + nameSize(jar.nested[i], 
+                        jar.nestedSizes[i]), jar.nestedCrcs[i], path)) {
+                    nested.add(jar.nested[i]);
+                }
+            }
+
+            if (names.size() < jar.names.length) {
+                jar.names = (String[]) names.toArray(new String[names.size()]);
+                jar.sizes = toArray(sizes);
+                jar.crcs = toArray(crcs);
+            }
+            if (nested.size() < jar.nested.length) {
+                jar.nested = (String[]) nested.toArray(new String[nested.size()]);
+            }
+            return true;
+        }
+
+        /**
+         * @return <code>false</code> if the class file duplicates an 
+         *         earlier class.
+         */
+        boolean keep(File file, long size) {
+
+            String nameSize = nameSize(file.getName(), size);
+            flush(nameSize);
+            if (named.add(nameSize)) {
+                List files = new ArrayList();
+                files.add(file);
+                pending.put(nameSize, files);
+                return true;
+            }
+
+            if (isDuplicate(nameSize, crc(file), file.getPath())) {
+                classCount--;
+                totalBytes -= size;
+                return false;
+            }
+            return true;
+        }
+
+        private boolean isDuplicate(String nameSize, long crc, String path) {
+            flush(nameSize);
+            named.add(nameSize);
+            String key = nameSize + ":" + crc;
+            String original = (String) originals.get(key);
+            if (original != null) {
+                duplicates.put(path, original);
+                return true;
+            }
+            originals.put(key, path);
+            return false;
+        }
+
+        /**
+         * Computes the CRC-32 of the earlier class files of the same
+         * name and size, now that another class may match them.
+         */
+        private void flush(String nameSize) {
+            List files = (List) pending.remove(nameSize);
+            if (files == null) {
+                return;
+            }
+            for (Iterator i = files.iterator(); i.hasNext();) {
+                File file = (File) i.next();
+                String key = nameSize + ":" + crc(file);
+                if (!originals.containsKey(key)) {
+                    originals.put(key, file.getPath());
+                }
+            }
+        }
+
+        private String nameSize(String name, long size) {
+            return name.substring(name.lastIndexOf('/') + 1) + ":" + size;
+        }
+
+        private MessageDigest newDigest() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void update(MessageDigest signature, String name, long size, long crc) {
+            signature.update(name.getBytes(StandardCharsets.UTF_8));
+            signature.update(ByteBuffer.allocate(17).put((byte) 0)
+                .putLong(size).putLong(crc).array());
+        }
+
+        private long crc(File file) {
+            CRC32 crc = new CRC32();
+            try {
+                crc.update(Files.readAllBytes(file.toPath()));
+            } catch (IOException ioe) {
+                return -1;
+            }
+            return crc.getValue();
+        }
+
+    }
+
+    private static class Scan {
+
+        FileManager_T fileManager;
+        Listener listener;
+        AtomicInteger classes = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        AtomicInteger directories = new AtomicInteger();
+        AtomicLong time = new AtomicLong();
+
+        Scan(FileManager_T fileManager, Listener listener) {
+            this.fileManager = fileManager;
+            this.listener = listener;
+        }
+
+        /**
+         * Indexes the specified file and tells the listener, if any.
+         * 
+         * @return The file, and its size if it is a class file or its 
+         *         entries if it is a jar file.
+         */
+        Object[] index(File file) {
+            Object[] entry = entry(file);
+            if (listener != null) {
+                if (entry[1] instanceof Jar) {
+                    Jar jar = (Jar) entry[1];
+                    listener.indexed(file, jar.names, jar.nested);
+                } else {
+                    listener.indexed(file, null, null);
+                }
+            }
+            return entry;
+        }
+
+        private Object[] entry(File file) {
+            if (fileManager.acceptClassFile(file)) {
+                long size = file.length();
+                classes.incrementAndGet();
+                bytes.addAndGet(size);
+                return new Object[] { file, Long.valueOf(size) };
+            }
+
+            Jar jar = new Jar();
+            List names = new ArrayList();
+            List sizes = new ArrayList();
+            List crcs = new ArrayList();
+            List nested = new ArrayList();
+            List nestedSizes = new ArrayList();
+            List nestedCrcs = new ArrayList();
+            try {
+                if (ModuleImage.isModule(file)) {
+                    ModuleImage.index(file, fileManager, names, sizes);
+                    for (int i = 0; i < names.size(); i++) {
+                        crcs.add(Long.valueOf(-1));
+                    }
+                    return toEntry(file, jar, names, sizes, crcs, nested, 
+                        nestedSizes, nestedCrcs);
+                }
+                ZipFile zipFile = new ZipFile(file);
+                try {
+                    Enumeration entries = zipFile.entries();
+                    while (entries.hasMoreElements()) {
+                        ZipEntry entry = (ZipEntry) entries.nextElement();
+                        if (entry.isDirectory()) {
+                            continue;
+                        }
+                        if (fileManager.acceptClassFileName(entry.getName())) {
+                            names.add(entry.getName());
+                            sizes.add(Long.valueOf(Math.max(0, entry.getSize())));
+                            crcs.add(Long.valueOf(entry.getCrc()));
+                        } else if (fileManager.acceptJarFileName(entry.getName())) {
+                            nested.add(entry.getName());
+                            nestedSizes.add(Long.valueOf(entry.getSize()));
+                            nestedCrcs.add(Long.valueOf(entry.getCrc()));
+                        }
+                    }
+                } finally {
+                    zipFile.close();
+                }
+            } catch (IOException ioe) {
+                fileManager.reportError(file.getPath() + ": " + ioe.getMessage());
+            }
+            return toEntry(file, jar, names, sizes, crcs, nested, 
+                nestedSizes, nestedCrcs);
+        }
+
+        private Object[] toEntry(File file, Jar jar, List names, List sizes, 
+            List crcs, List nested, List nestedSizes, List nestedCrcs) {
+
+            jar.names = (String[]) names.toArray(new String[names.size()]);
+            jar.sizes = toArray(sizes);
+            jar.crcs = toArray(crcs);
+            jar.nested = (String[]) nested.toArray(new String[nested.size()]);
+            jar.nestedSizes = toArray(nestedSizes);
+            jar.nestedCrcs = toArray(nestedCrcs);
+            for (int i = 0; i < jar.sizes.length; i++) {
+                bytes.addAndGet(jar.sizes[i]);
+            }
+            classes.addAndGet(jar.names.length);
+            return new Object[] { file, jar };
+        }
+    }
+
+    /**
+     * Receives the sub-directories of a directory as soon as it is
+     * listed, before its own files are indexed.
+     */
+    private interface Walker {
+        void walk(List subdirectories);
+    }
+
+    /**
+     * Lists the specified directory, hands its sub-directories to the
+     * specified walker, and indexes its class and jar files in name 
+     * order.
+     * 
+     * @return The indexed files.
+     */
+    private static List scanDirectory(Scan scan, File directory, Walker walker) {
+
+        long start = System.nanoTime();
+        AnalysisEvents.DirectoryScan event = new AnalysisEvents.DirectoryScan();
+        event.begin();
+
+        Collection files = new TreeSet();
+        List subdirectories = new ArrayList();
+        String[] names = ModuleImage.isImage(directory) 
+            ? ModuleImage.list() : directory.list();
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) {
+                File file = new File(directory, names[i]);
+                if (scan.fileManager.acceptFile(file)) {
+                    files.add(file);
+                } else if (file.isDirectory() || ModuleImage.isModule(file)) {
+                    subdirectories.add(file);
+                }
+            }
+        }
+        walker.walk(subdirectories);
+
+        List found = new ArrayList();
+        for (Iterator i = files.iterator(); i.hasNext();) {
+            found.add(scan.index((File) i.next()));
+        }
+        scan.directories.incrementAndGet();
+        scan.time.addAndGet(System.nanoTime() - start);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = directory.getPath();
+            event.files = files.size();
+            event.subdirectories = subdirectories.size();
+            event.commit();
+        }
+        return found;
+    }
+
+    /**
+     * Fork/join task that indexes the class and jar files of one
+     * directory, and forks a sub-task for each of its sub-directories.
+     */
+    private static class ScanTask extends RecursiveTask<List> implements Walker {
+
+        private Scan scan;
+        private File item;
+        private List subtasks = new ArrayList();
+
+        ScanTask(Scan scan, File item) {
+            this.scan = scan;
+            this.item = item;
+        }
+
+        public void walk(List subdirectories) {
+            for (Iterator i = subdirectories.iterator(); i.hasNext();) {
+                ScanTask task = new ScanTask(scan, (File) i.next());
+                task.fork();
+                subtasks.add(task);
+            }
+        }
+
+        @Override
+        protected List compute() {
+            List found = new ArrayList();
+            if (item.isFile() || ModuleImage.isModule(item)) {
+                found.add(scan.index(item));
+                return found;
+            }
+
+            found.addAll(scanDirectory(scan, item, this));
+            for (Iterator i = subtasks.iterator(); i.hasNext();) {
+                found.addAll(((ScanTask) i.next()).join());
+            }
+            return found;
+        }
+    }
+
+    /**
+     * Tasks of a walk on the I/O executor.  The walk counts its pending
+     * tasks, plus one for the thread that started it, rather than 
+     * registering them with a <code>Phaser</code>, which cannot hold 
+     * more than 65535 parties at once.
+     */
+    private static class IoWalk {
+
+        Scan scan;
+        ExecutorService io;
+        AtomicInteger pending = new AtomicInteger(1);
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference failure = new AtomicReference();
+
+        IoWalk(Scan scan, ExecutorService io) {
+            this.scan = scan;
+            this.io = io;
+        }
+
+        IoTask submit(File item) {
+            IoTask task = new IoTask(this, item);
+            pending.incrementAndGet();
+            try {
+                io.execute(task);
+            } catch (RejectedExecutionException e) {
+                arrive();
+                throw e;
+            }
+            return task;
+        }
+
+        void arrive() {
+            if (pending.decrementAndGet() == 0) {
+                done.countDown();
+            }
+        }
+
+        /**
+         * Waits for every task to arrive, without giving up when the
+         * thread is interrupted, since the tasks still hold the files 
+         * they found.
+         */
+        void await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * I/O task that indexes the class and jar files of one directory,
+     * and submits a task for each of its sub-directories.  The files
+     * found are collected from the tree of tasks once the walk ends.
+     */
+    private static class IoTask implements Runnable, Walker {
+
+        private IoWalk walk;
+        private File item;
+        private List found = Collections.EMPTY_LIST;
+        private List children = new ArrayList();
+
+        IoTask(IoWalk walk, File item) {
+            this.walk = walk;
+            this.item = item;
+        }
+
+        public void walk(List subdirectories) {
+            for (Iterator i = subdirectories.iterator(); i.hasNext();) {
+                children.add(walk.submit((File) i.next()));
+            }
+        }
+
+        public void run() {
+            try {
+                if (item.isFile() || ModuleImage.isModule(item)) {
+                    found = Collections.singletonList(walk.scan.index(item));
+                } else {
+                    found = scanDirectory(walk.scan, item, this);
+                }
+            } catch (RuntimeException e) {
+                walk.failure.compareAndSet(null, e);
+            } finally {
+                walk.arrive();
+            }
+        }
+
+        void collect(List into) {
+            into.addAll(found);
+            for (Iterator i = children.iterator(); i.hasNext();) {
+                ((IoTask) i.next()).collect(into);
+            }
+        }
+    }
+}
@@ -1,11 +1,20 @@
 package jdependFast.framework;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.*;
-import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 
@@ -19,45 +28,52 @@ import java.util.zip.ZipEntry;
  */
 
 public class FileManager_T{
-	public class Semaphore
-	{
-		private int sem = 0;
-		private FileManager_T par;
-		public Semaphore(FileManager_T p)
-		{
-			par = p;
-		}
-		public synchronized void increase()
-	    {
-			sem++;
-			
-	    }
-		public synchronized void decrease()
-	    {
-			sem--;
-			if (sem == 0)
-			{
-				synchronized(par)
-				{
-					par.notify();
-				}
-			}
-	    }
-	}
+
+    /**
+     * Jar files with more class entries than this are split into 
+     * ranges of at most this many entries, parsed in parallel.
+     */
+    public static final int JAR_CHUNK_SIZE = 256;
+
+    /**
+     * Ranges of more indexed files than this are split in two and 
+     * parsed in parallel.
+     */
+    public static final int FILE_CHUNK_SIZE = 32;
+
+    /**
+     * Maximum number of class and jar files read at once in the I/O 
+     * execution mode, whose bytes are held until they are parsed.
+     */
+    public static final int MAX_READS_IN_FLIGHT = 1024;
+
+    /**
+     * Maximum number of class bytes read or waiting to be parsed at 
+     * once in the I/O execution mode, as estimated from the sizes in
+     * the discovery index.  A file larger than this is read alone.
+     */
+    public static final long MAX_BYTES_IN_FLIGHT = 64L << 20;
+
     private ArrayList directories;
     public boolean acceptInnerClasses;
-    private List<Future> fut = new ArrayList();
-    private Semaphore sem;
-    public void  add(Future f)
-    {
-    	synchronized(fut){
-    		fut.add(f);
-    	}
-    }
+    private ParseCache cache;
+    private JarSummaryStore summaries;
+    private Map classesByFile;
+    private ParserListener_T sink;
+    private AnalysisMetrics metrics;
+    private DiscoveryIndex index;
+    private boolean indexTaken;
+    private ForkJoinPool executor;
+    private ExecutorService ioExecutor;
+    private PackageFilter_T filter;
+    private boolean deduplicate;
+    private long maxBytesInFlight = MAX_BYTES_IN_FLIGHT;
+    private PrintWriter errors;
+
     public FileManager_T() {
         directories = new ArrayList();
         acceptInnerClasses = true;
-        sem = new Semaphore(this);
+        classesByFile = new ConcurrentHashMap();
     }
 
     /**
@@ -68,6 +84,159 @@ public class FileManager_T{
      */
     public void acceptInnerClasses(boolean b) {
         acceptInnerClasses = b;
+        index = null;
+    }
+
+    /**
+     * Determines whether classes with the same file name, size, and 
+     * CRC-32 as an earlier class in walk order, and jar files whose 
+     * entries all match those of an earlier jar file, are dropped from
+     * the discovery index rather than parsed again.
+     * 
+     * @param b <code>true</code> to keep the first copy of each class
+     *          only; <code>false</code> to parse every copy (the 
+     *          default).
+     */
+    public void deduplicateClasses(boolean b) {
+        deduplicate = b;
+        index = null;
+    }
+
+    public boolean isDeduplicating() {
+        return deduplicate;
+    }
+
+    /**
+     * Sets the cache consulted before parsing each class file.
+     * 
+     * @param cache Parse cache, or <code>null</code> to always parse.
+     */
+    public void setParseCache(ParseCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Sets the store of jar summaries consulted before reading each 
+     * indexed jar file with no nested archives.  A jar file whose 
+     * contents were summarized before is merged from its summary 
+     * instead of read and parsed; any other is summarized once parsed.
+     * 
+     * @param summaries Jar summary store, or <code>null</code> to 
+     *                  always read jar files.
+     */
+    public void setJarSummaryStore(JarSummaryStore summaries) {
+        this.summaries = summaries;
+    }
+
+    /**
+     * Sets the listener each class is handed to as soon as its file is
+     * parsed, on the thread that parsed it.  While a listener is set, 
+     * <code>extractFiles()</code> neither collects nor records the 
+     * classes, so they can be discarded once the listener returns.
+     * 
+     * @param sink Class listener, or <code>null</code> to collect the
+     *             classes.
+     */
+    public void setClassSink(ParserListener_T sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Sets the metrics recording the files visited and the time spent
+     * walking directories, reading, and parsing.
+     * 
+     * @param metrics Analysis metrics, or <code>null</code> to record
+     *                nothing.
+     */
+    public void setMetrics(AnalysisMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the fork/join pool that walks directories and parses files.
+     * 
+     * @param executor Fork/join pool, or <code>null</code> for the 
+     *                 common pool.
+     */
+    public void setExecutor(ForkJoinPool executor) {
+        this.executor = executor;
+    }
+
+    public ForkJoinPool getExecutor() {
+        return executor == null ? ForkJoinPool.commonPool() : executor;
+    }
+
+    /**
+     * Sets the executor that lists directories and reads class and jar
+     * files in the I/O execution mode, typically one running each task
+     * on a virtual thread.  The bytes read are parsed on the fork/join
+     * pool, so that only as many classes are parsed at once as it has
+     * threads, however many files are being read.
+     * 
+     * @param ioExecutor I/O executor, or <code>null</code> to walk, 
+     *                   read, and parse on the fork/join pool alone.
+     */
+    public void setIoExecutor(ExecutorService ioExecutor) {
+        this.ioExecutor = ioExecutor;
+    }
+
+    public ExecutorService getIoExecutor() {
+        return ioExecutor;
+    }
+
+    /**
+     * Sets the maximum number of class bytes read or waiting to be 
+     * parsed at once in the I/O execution mode.
+     */
+    void setMaxBytesInFlight(long maxBytesInFlight) {
+        this.maxBytesInFlight = maxBytesInFlight;
+    }
+
+    /**
+     * Sets the writer that files skipped because they cannot be read or
+     * parsed are reported to, such as one sending them back to the 
+     * client of a request.
+     * 
+     * @param errors Error writer, or <code>null</code> to report to the
+     *               standard error stream.
+     */
+    public void setErrorWriter(PrintWriter errors) {
+        this.errors = errors;
+    }
+
+    /**
+     * Reports a file, entry, or directory that is skipped because it 
+     * cannot be read or parsed, from whichever thread skipped it.
+     */
+    void reportError(String message) {
+        if (errors == null) {
+            System.err.println("\n" + message);
+            return;
+        }
+        errors.println("\n" + message);
+        errors.flush();
+    }
+
+    /**
+     * Sets the package filter of the parsers this file manager creates.
+     * 
+     * @param filter Package filter.
+     */
+    public void setFilter(PackageFilter_T filter) {
+        this.filter = filter;
+    }
+
+    private PackageFilter_T getFilter() {
+        if (filter == null) {
+            filter = new PackageFilter_T();
+        }
+        return filter;
+    }
+
+    private ClassFileParser_T newParser() {
+        ClassFileParser_T parser = new ClassFileParser_T(getFilter());
+        parser.setMetrics(metrics);
+        return parser;
     }
 
     public void addDirectory(String name) throws IOException {
@@ -75,14 +244,23 @@ public class FileManager_T{
         File directory = new File(name);
         
         
-	        if (directory.isDirectory() || acceptJarFile(directory)) {
+	        if (directory.isDirectory() || acceptJarFile(directory)
+	                || (ModuleImage.isImage(directory) && ModuleImage.exists(directory))) {
 	            directories.add(directory);
+	            index = null;
 	        } else {
 	            throw new IOException("Invalid directory or JAR file: " + name);
 	        }
         
     }
 
+    /**
+     * @return The registered directories and jar files.
+     */
+    public Collection getDirectories() {
+        return directories;
+    }
+
     public boolean acceptFile(File file) {
         return acceptClassFile(file) || acceptJarFile(file);
     }
@@ -110,7 +288,18 @@ public class FileManager_T{
     }
 
     public boolean acceptJarFile(File file) {
-        return isJar(file) || isZip(file) || isWar(file);
+        return isJar(file) || isZip(file) || isWar(file) || isJmod(file);
+    }
+
+    /**
+     * @param name Name of an archive entry.
+     * @return <code>true</code> if the entry is a jar, war, or zip file
+     *         nested in the archive.
+     */
+    public boolean acceptJarFileName(String name) {
+        String lower = name.toLowerCase();
+        return lower.endsWith(".jar") || lower.endsWith(".zip") 
+            || lower.endsWith(".war");
     }
 
     private boolean isWar(File file) {
@@ -125,32 +314,139 @@ public class FileManager_T{
         return existsWithExtension(file, ".jar");
     }
 
+    private boolean isJmod(File file) {
+        return existsWithExtension(file, ".jmod");
+    }
+
     private boolean existsWithExtension(File file, String extension) {
         return file.isFile() &&
             file.getName().toLowerCase().endsWith(extension);
     }
     
-    public  Collection extractFiles() throws InterruptedException, ExecutionException, IOException {
+    /**
+     * Returns the index of the class and jar files under the registered
+     * directories, walking them only if they were not walked since a
+     * directory was added.
+     * 
+     * @return Discovery index.
+     */
+    public synchronized DiscoveryIndex getIndex() {
+        if (index == null) {
+            index = new DiscoveryIndex(this);
+            indexTaken = false;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index for a new analysis: the index built since the
+     * previous analysis if there is one, or else a new index, since 
+     * the files may have changed after the previous analysis.
+     * 
+     * @return Discovery index.
+     */
+    public synchronized DiscoveryIndex takeIndex() {
+        if (indexTaken) {
+            index = null;
+        }
+        DiscoveryIndex taken = getIndex();
+        indexTaken = true;
+        return taken;
+    }
 
-        ExecutorService es = JDepend_T.getExecutor();
-        for (Iterator i = directories.iterator(); i.hasNext();) {
-            fut.add(es.submit(new Worker((File)i.next())));
+    /**
+     * Returns the index for a new analysis, as <code>takeIndex()</code>
+     * does, and tells the specified listener of each indexed file: as
+     * the directories are walked if they need to be, or else from the
+     * index built since the previous analysis.
+     * 
+     * @param listener Listener told of each indexed file.
+     * @return Discovery index.
+     */
+    synchronized DiscoveryIndex takeIndex(DiscoveryIndex.Listener listener) {
+        if (index != null && !indexTaken) {
+            indexTaken = true;
+            index.replay(listener);
+            return index;
         }
-        synchronized(this) {
-            this.wait();
+        index = new DiscoveryIndex(this, listener);
+        indexTaken = true;
+        return index;
+    }
+
+    /**
+     * Returns the <code>JavaClass</code> instances built from every 
+     * class and jar file of the discovery index, in index order.
+     * <p>
+     * The indexed files are split into ranges of at most 
+     * <code>FILE_CHUNK_SIZE</code> files, each parsed on the fork/join
+     * pool by an <code>ExtractTask</code> with its own parser.  In the
+     * I/O execution mode, each file is read instead by a 
+     * <code>ReadTask</code> on the I/O executor, which hands its bytes
+     * to a <code>ParseTask</code> on the fork/join pool.
+     * 
+     * @return Collection of <code>JavaClass</code> instances.
+     */
+    public Collection extractFiles() throws InterruptedException, ExecutionException, IOException {
+
+        classesByFile.clear();
+
+        DiscoveryIndex index = getIndex();
+        if (ioExecutor != null) {
+            return extractFiles(index, ioExecutor);
+        }
+        return getExecutor().invoke(
+            new ExtractTask(index, 0, index.getFiles().size()));
+    }
+
+    /**
+     * Reads the indexed files on the specified I/O executor, with at
+     * most <code>MAX_READS_IN_FLIGHT</code> files and about 
+     * <code>MAX_BYTES_IN_FLIGHT</code> bytes read or waiting to be
+     * parsed at once, and parses them on the fork/join pool.
+     */
+    private Collection extractFiles(DiscoveryIndex index, ExecutorService io) 
+        throws InterruptedException, ExecutionException {
+
+        List files = index.getFiles();
+        IoExtraction extraction = new IoExtraction(index);
+        for (int i = 0; i < files.size(); i++) {
+            extraction.acquire(i);
+            try {
+                io.execute(new ReadTask(extraction, i));
+            } catch (RejectedExecutionException e) {
+                extraction.fail(e);
+                extraction.done(i, null);
+            }
+        }
+        extraction.remaining.await();
+
+        Throwable failure = (Throwable) extraction.failure.get();
+        if (failure != null) {
+            throw new ExecutionException(failure);
         }
-        es.shutdown();
+
         Collection classes = new ArrayList();
-        for(Future<Collection<JavaClass_T>> item:fut)
-        {
-        	Collection<JavaClass_T> temp = item.get();
-        	for (JavaClass_T f:temp)
-        	{
-        		classes.add(f);
-        	}
+        for (int i = 0; i < extraction.classes.length; i++) {
+            if (extraction.classes[i] != null) {
+                classes.addAll(extraction.classes[i]);
+            }
         }
         return classes;
     }
+
+    /**
+     * Returns the <code>JavaClass</code> instances built from each
+     * class or jar file by the last <code>extractFiles()</code>, keyed
+     * by absolute file.
+     * 
+     * @return Map of <code>File</code> to collection of 
+     *         <code>JavaClass</code> instances.
+     */
+    public Map getClassesByFile() {
+        return classesByFile;
+    }
+
     /**
      * Builds the <code>JavaClass</code> instances from the 
      * specified file.
@@ -159,55 +455,299 @@ public class FileManager_T{
      * @return Collection of <code>JavaClass</code> instances.
      */
     public Collection buildClasses(File file) throws IOException {
-    	ClassFileParser_T parser = new ClassFileParser_T(JDepend_T.filter);
+        return buildClasses(file, newParser());
+    }
+
+    /**
+     * Builds the <code>JavaClass</code> instances from the 
+     * specified file using the specified parser, whose read 
+     * buffer is reused from one file to the next.
+     * 
+     * @param file Class or Jar file.
+     * @param parser Class file parser.
+     * @return Collection of <code>JavaClass</code> instances.
+     */
+    public Collection buildClasses(File file, ClassFileParser_T parser) throws IOException {
+        return buildClasses(file, null, null, parser);
+    }
+
+    /**
+     * @param entryNames Names of the class entries of a jar file, or
+     *                   <code>null</code> to read them from the file.
+     * @param nestedNames Names of the archives nested in the jar file,
+     *                    read along with <code>entryNames</code>.
+     */
+    private Collection buildClasses(File file, String[] entryNames, 
+        String[] nestedNames, ClassFileParser_T parser) throws IOException {
         if (acceptClassFile(file)) {
-            InputStream is = null;
+            if (metrics != null) {
+                metrics.addClassFile();
+            }
+            JavaClass_T parsedClass = null;
+            if (cache != null) {
+                parsedClass = cache.get(file);
+                if (parsedClass != null && metrics != null) {
+                    metrics.addCacheHit();
+                }
+            }
+            if (parsedClass == null) {
+                parsedClass = parser.parse(file);
+                if (cache != null) {
+                    cache.put(file, parsedClass);
+                }
+            }
+            Collection javaClasses = new ArrayList();
+            javaClasses.add(parsedClass);
+            return javaClasses;
+        } else if (acceptJarFile(file)) {
+
+            if (metrics != null) {
+                metrics.addJarFile();
+            }
+            if (entryNames != null && entryNames.length == 0 
+                    && nestedNames.length == 0) {
+                return new ArrayList();
+            }
+            boolean summarize = summaries != null && entryNames != null 
+                && nestedNames.length == 0;
+            if (summarize) {
+                Collection summarized = getSummary(file, entryNames);
+                if (summarized != null) {
+                    return summarized;
+                }
+            }
+            AnalysisEvents.JarScan event = new AnalysisEvents.JarScan();
+            event.begin();
+            Collection result = Collections.EMPTY_LIST;
             try {
-                is = new BufferedInputStream(new FileInputStream(file));
-                JavaClass_T parsedClass = parser.parse(is);
-                Collection javaClasses = new ArrayList();
-                javaClasses.add(parsedClass);
-                return javaClasses;
+                JarFile jarFile = new JarFile(file);
+                try {
+                    result = buildClasses(jarFile, entryNames, nestedNames, parser);
+                } finally {
+                    jarFile.close();
+                }
             } finally {
-                if (is != null) {
-                    is.close();
+                event.end();
+                if (event.shouldCommit()) {
+                    event.path = file.getPath();
+                    event.classes = result.size();
+                    event.commit();
                 }
             }
-        } else if (acceptJarFile(file)) {
+            if (summarize) {
+                putSummary(file, entryNames, result);
+            }
+            return result;
+
+        } else if (ModuleImage.isModule(file)) {
 
-            JarFile jarFile = new JarFile(file);
-            Collection result = buildClasses(jarFile, parser);
-            jarFile.close();
+            if (metrics != null) {
+                metrics.addJarFile();
+            }
+            if (entryNames == null) {
+                List names = new ArrayList();
+                ModuleImage.index(file, this, names, new ArrayList());
+                entryNames = (String[]) names.toArray(new String[names.size()]);
+            }
+            if (summaries != null) {
+                Collection summarized = getSummary(file, entryNames);
+                if (summarized != null) {
+                    return summarized;
+                }
+            }
+            Collection result;
+            try {
+                result = entryNames.length <= JAR_CHUNK_SIZE
+                    || !ForkJoinTask.inForkJoinPool()
+                    ? buildModuleClasses(file, entryNames, 0, entryNames.length, parser)
+                    : new ModuleWorker(file, entryNames, 0, entryNames.length).invoke();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (summaries != null) {
+                putSummary(file, entryNames, result);
+            }
             return result;
 
         } else {
             throw new IOException("File is not a valid " + 
-                ".class, .jar, .war, or .zip file: " + 
+                ".class, .jar, .war, .zip, or .jmod file: " + 
                 file.getPath());
         }
     }
 
+    /**
+     * Returns the classes of the specified entries of the specified jar
+     * file from the jar summary store, or <code>null</code> if its 
+     * contents were not summarized.
+     */
+    private Collection getSummary(File file, String[] entryNames) 
+        throws IOException {
+        Collection classes = summaries.get(file, entryNames);
+        if (classes != null && metrics != null) {
+            metrics.addSummaryHit();
+        }
+        return classes;
+    }
+
+    /**
+     * Stores the summary of the classes built from the specified jar 
+     * file.  A summary that cannot be written is reported and skipped,
+     * since the classes were built all the same.
+     */
+    private void putSummary(File file, String[] entryNames, Collection classes) {
+        if (entryNames.length != classes.size()) {
+            return;
+        }
+        try {
+            summaries.put(file, entryNames, classes);
+        } catch (IOException ioe) {
+            reportError(file.getPath() + ": " + ioe.getMessage());
+        }
+    }
+
     /**
      * Builds the <code>JavaClass</code> instances from the specified 
-     * jar, war, or zip file.
+     * jar, war, or zip file, and from the jar, war, and zip files 
+     * nested in it.
+     * <p>
+     * When called from the fork/join pool, the class entries of a large
+     * file are split into disjoint ranges of <code>JAR_CHUNK_SIZE</code>
+     * entries, each parsed by a <code>JarWorker</code> with its own parser,
+     * and each nested archive is streamed by a <code>NestedWorker</code>
+     * of its own.
      * 
      * @param file Jar, war, or zip file.
      * @return Collection of <code>JavaClass</code> instances.
      */
     public Collection buildClasses(JarFile file, ClassFileParser_T parser) throws IOException {
+        return buildClasses(file, (String[]) null, null, parser);
+    }
+
+    private Collection buildClasses(JarFile file, String[] entryNames, 
+        String[] nestedNames, ClassFileParser_T parser) throws IOException {
+
+        List<ZipEntry> classEntries = new ArrayList<ZipEntry>();
+        List<ZipEntry> nestedEntries = new ArrayList<ZipEntry>();
+
+        if (entryNames != null) {
+            for (int i = 0; i < entryNames.length; i++) {
+                ZipEntry e = file.getEntry(entryNames[i]);
+                if (e != null) {
+                    classEntries.add(e);
+                }
+            }
+            for (int i = 0; i < nestedNames.length; i++) {
+                ZipEntry e = file.getEntry(nestedNames[i]);
+                if (e != null) {
+                    nestedEntries.add(e);
+                }
+            }
+        } else {
+            Enumeration entries = file.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry e = (ZipEntry) entries.nextElement();
+                if (e.isDirectory()) {
+                    continue;
+                }
+                if (acceptClassFileName(e.getName())) {
+                    classEntries.add(e);
+                } else if (acceptJarFileName(e.getName())) {
+                    nestedEntries.add(e);
+                }
+            }
+        }
+
+        if (!ForkJoinTask.inForkJoinPool()) {
+            Collection javaClasses = buildClasses(file, classEntries, parser);
+            for (ZipEntry e : nestedEntries) {
+                javaClasses.addAll(buildNestedClasses(file, e, parser));
+            }
+            return javaClasses;
+        }
+
+        List<NestedWorker> nestedWorkers = new ArrayList<NestedWorker>();
+        for (ZipEntry e : nestedEntries) {
+            NestedWorker worker = new NestedWorker(file, e);
+            worker.fork();
+            nestedWorkers.add(worker);
+        }
+
+        try {
+            Collection javaClasses = classEntries.size() <= JAR_CHUNK_SIZE
+                ? buildClasses(file, classEntries, parser)
+                : new JarWorker(file, classEntries, 0, classEntries.size()).invoke();
+            for (NestedWorker worker : nestedWorkers) {
+                javaClasses.addAll(worker.join());
+            }
+            return javaClasses;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Builds the <code>JavaClass</code> instances from the jar, war, or
+     * zip file nested in the specified entry, streamed from the outer
+     * file.  A nested archive that cannot be read is reported and 
+     * skipped, keeping the classes read before the error.
+     */
+    private Collection buildNestedClasses(JarFile file, ZipEntry nested, 
+        final ClassFileParser_T parser) throws IOException {
+
+        final Collection javaClasses = new ArrayList();
+        InputStream in = file.getInputStream(nested);
+        try {
+            NestedArchive.read(in, this, new NestedArchive.Visitor() {
+                public void visitClass(ZipEntry entry, InputStream is) 
+                    throws IOException {
+                    if (metrics != null) {
+                        metrics.addJarEntry();
+                    }
+                    javaClasses.add(parser.parse(is));
+                }
+            });
+        } catch (IOException ioe) {
+            reportError(file.getName() + "!" + nested.getName() 
+                + ": " + ioe.getMessage());
+        } finally {
+            in.close();
+        }
+        return javaClasses;
+    }
+
+    private Collection buildClasses(JarFile file, List<ZipEntry> entries, 
+        ClassFileParser_T parser) throws IOException {
 
         Collection javaClasses = new ArrayList();
 
-        Enumeration entries = file.entries();
-        while (entries.hasMoreElements()) {
-            ZipEntry e = (ZipEntry) entries.nextElement();
-            if (acceptClassFileName(e.getName())) {
-                InputStream is = null;
-                try {
-	                is = new BufferedInputStream(file.getInputStream(e));
-                    JavaClass_T jc = parser.parse(is);
+        for (ZipEntry e : entries) {
+            if (metrics != null) {
+                metrics.addJarEntry();
+            }
+            if (cache != null) {
+                JavaClass_T jc = cache.get(file, e);
+                if (jc != null) {
+                    if (metrics != null) {
+                        metrics.addCacheHit();
+                    }
                     javaClasses.add(jc);
-                } finally {
+                    continue;
+                }
+            }
+            InputStream is = null;
+            try {
+                is = file.getInputStream(e);
+                JavaClass_T jc = parser.parse(is);
+                if (cache != null) {
+                    cache.put(file, e, jc);
+                }
+                javaClasses.add(jc);
+            } catch (IOException ioe) {
+                throw new IOException(file.getName() + "!" + e.getName() 
+                    + ": " + ioe.getMessage(), ioe);
+            } finally {
+                if (is != null) {
                     is.close();
                 }
             }
@@ -215,97 +755,562 @@ public class FileManager_T{
 
         return javaClasses;
     }
+
+    /**
+     * Fork/join task that parses a range of the class entries of one
+     * jar file, splitting ranges larger than <code>JAR_CHUNK_SIZE</code>
+     * in two.
+     */
+    class JarWorker extends RecursiveTask<Collection> {
+        private JarFile file;
+        private List<ZipEntry> entries;
+        private int from;
+        private int to;
+
+        JarWorker(JarFile file, List<ZipEntry> entries, int from, int to) {
+            this.file = file;
+            this.entries = entries;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Collection compute() {
+            if (to - from > JAR_CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                JarWorker right = new JarWorker(file, entries, middle, to);
+                right.fork();
+                Collection classes = 
+                    new JarWorker(file, entries, from, middle).compute();
+                classes.addAll(right.join());
+                return classes;
+            }
+
+            ClassFileParser_T parser = newParser();
+            try {
+                return buildClasses(file, entries.subList(from, to), parser);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+    }
     
-    public class Worker implements Callable{
-    	private File job;
-    	public Worker(File f)
-    	{
-    		job =f;
-    	}
-    	@Override
-    	public Object call() throws Exception {
-    		  //System.out.println("worker: "+ Thread.currentThread().getId());
-    		sem.increase();
-    		Collection<File> files = new TreeSet<File>();
-    		collectFiles(job, files);
-    		Collection classes = new ArrayList();
-    		for (File f : files)
-	        {
-	        	 classes.addAll(buildClasses(f));
-	        }
-    		sem.decrease();
-    		return classes;
-    	}
-    	
-    	@SuppressWarnings("unchecked")
-    	private void collectFiles(File item, Collection files) {
-            if (item.isFile()) {
+    /**
+     * Builds the <code>JavaClass</code> instances from a range of the 
+     * class entries of a module of the runtime image.
+     */
+    private Collection buildModuleClasses(File module, String[] entryNames, 
+        int from, int to, ClassFileParser_T parser) throws IOException {
 
-                addFile(item, files);
+        Collection javaClasses = new ArrayList();
+        for (int i = from; i < to; i++) {
+            if (metrics != null) {
+                metrics.addJarEntry();
+            }
+            long start = System.nanoTime();
+            byte[] bytes = ModuleImage.read(module, entryNames[i]);
+            if (metrics != null) {
+                metrics.addRead(bytes.length, System.nanoTime() - start);
+            }
+            try {
+                javaClasses.add(parser.parse(ByteBuffer.wrap(bytes)));
+            } catch (IOException ioe) {
+                throw new IOException(module.getPath() + "!" + entryNames[i] 
+                    + ": " + ioe.getMessage(), ioe);
+            }
+        }
+        return javaClasses;
+    }
+
+    /**
+     * Fork/join task that parses a range of the class entries of one
+     * module of the runtime image, splitting ranges larger than 
+     * <code>JAR_CHUNK_SIZE</code> in two.
+     */
+    class ModuleWorker extends RecursiveTask<Collection> {
+        private File module;
+        private String[] entryNames;
+        private int from;
+        private int to;
+
+        ModuleWorker(File module, String[] entryNames, int from, int to) {
+            this.module = module;
+            this.entryNames = entryNames;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Collection compute() {
+            if (to - from > JAR_CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                ModuleWorker right = new ModuleWorker(module, entryNames, middle, to);
+                right.fork();
+                Collection classes = 
+                    new ModuleWorker(module, entryNames, from, middle).compute();
+                classes.addAll(right.join());
+                return classes;
+            }
+
+            try {
+                return buildModuleClasses(module, entryNames, from, to, newParser());
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+    }
+
+    /**
+     * Fork/join task that streams the classes of one archive nested in
+     * a jar file.
+     */
+    class NestedWorker extends RecursiveTask<Collection> {
+        private JarFile file;
+        private ZipEntry nested;
+
+        NestedWorker(JarFile file, ZipEntry nested) {
+            this.file = file;
+            this.nested = nested;
+        }
+
+        @Override
+        protected Collection compute() {
+            try {
+                return buildNestedClasses(file, nested, newParser());
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        }
+    }
+
+    /**
+     * Fork/join task that parses a range of the indexed files, 
+     * splitting ranges larger than <code>FILE_CHUNK_SIZE</code> in two.
+     */
+    class ExtractTask extends RecursiveTask<Collection> {
+        private DiscoveryIndex index;
+        private int from;
+        private int to;
 
-            } else {
+        ExtractTask(DiscoveryIndex index, int from, int to) {
+            this.index = index;
+            this.from = from;
+            this.to = to;
+        }
 
-                String[] directoryFiles = item.list();
+        @Override
+        protected Collection compute() {
+            if (to - from > FILE_CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                ExtractTask right = new ExtractTask(index, middle, to);
+                right.fork();
+                Collection classes = 
+                    new ExtractTask(index, from, middle).compute();
+                classes.addAll(right.join());
+                return classes;
+            }
 
-                for (int i = 0; i < directoryFiles.length; i++) {
+            if (metrics != null) {
+                metrics.addQueueDepth("fork/join", getPool().getQueuedTaskCount());
+            }
 
-                    File file = new File(item, directoryFiles[i]);
-                    if (acceptFile(file)) {
-                    	addFile(file, files);
-                    } else if (file.isDirectory()) {
-                    	add(JDepend_T.getExecutor().submit(new Worker(file)));
+            Collection classes = new ArrayList();
+            ClassFileParser_T parser = newParser();
+            List files = index.getFiles();
+            for (int i = from; i < to; i++) {
+                File f = (File) files.get(i);
+                try {
+                    Collection built = buildClasses(f, 
+                        index.getEntryNames(f), index.getNestedArchives(f), parser);
+                    if (sink != null) {
+                        for (Iterator j = built.iterator(); j.hasNext();) {
+                            sink.onParsedJavaClass((JavaClass_T)j.next());
+                        }
+                        continue;
                     }
+                    classesByFile.put(f.getAbsoluteFile(), built);
+                    classes.addAll(built);
+                } catch (IOException ioe) {
+                    reportError(ioe.getMessage());
                 }
             }
+            return classes;
         }
-    	private void addFile(File f, Collection files) {
-    	    if (!files.contains(f)) {
-    	        files.add(f);
-    	    }
-    	}
-    	  public boolean acceptFile(File file) {
-    	        return acceptClassFile(file) || acceptJarFile(file);
-    	    }
-    	  public boolean acceptClassFile(File file) {
-    	        if (!file.isFile()) {
-    	            return false;
-    	        }
-    	        return acceptClassFileName(file.getName());
-    	    }
-
-    	    public boolean acceptClassFileName(String name) {
-
-    	        if (!acceptInnerClasses) {
-    	            if (name.toLowerCase().indexOf("$") > 0) {
-    	                return false;
-    	            }
-    	        }
-
-    	        if (!name.toLowerCase().endsWith(".class")) {
-    	            return false;
-    	        }
-
-    	        return true;
-    	    }
-    	    public boolean acceptJarFile(File file) {
-    	        return isJar(file) || isZip(file) || isWar(file);
-    	    }
-    	    private boolean isWar(File file) {
-    	        return existsWithExtension(file, ".war");
-    	    }
-
-    	    private boolean isZip(File file) {
-    	        return existsWithExtension(file, ".zip");
-    	    }
-    	 
-    	    private boolean isJar(File file) {
-    	        return existsWithExtension(file, ".jar");
-    	    }
-    	    private boolean existsWithExtension(File file, String extension) {
-    	        return file.isFile() &&
-    	            file.getName().toLowerCase().endsWith(extension);
-    	    }
-    	
     }
-    
-}
\ No newline at end of file
+
+    /**
+     * State shared by the read and parse tasks of one extraction in 
+     * the I/O execution mode.
+     */
+    private class IoExtraction {
+
+        DiscoveryIndex index;
+        List files;
+        Collection[] classes;
+        Semaphore permits = new Semaphore(MAX_READS_IN_FLIGHT);
+        Semaphore kilobytes;
+        int[] weights;
+        CountDownLatch remaining;
+        AtomicReference failure = new AtomicReference();
+        ThreadLocal<ClassFileParser_T> parsers = new ThreadLocal<ClassFileParser_T>();
+
+        IoExtraction(DiscoveryIndex index) {
+            this.index = index;
+            this.files = index.getFiles();
+            this.classes = new Collection[files.size()];
+            this.remaining = new CountDownLatch(files.size());
+            this.kilobytes = new Semaphore(kilobytes(maxBytesInFlight));
+            this.weights = new int[files.size()];
+        }
+
+        /**
+         * Waits until the specified indexed file may be read: until
+         * fewer than <code>MAX_READS_IN_FLIGHT</code> files are in 
+         * flight, and the bytes in flight leave room for its classes.
+         */
+        void acquire(int file) throws InterruptedException {
+            File f = (File) files.get(file);
+            long bytes = f.length();
+            long[] sizes = index.getEntrySizes(f);
+            if (sizes != null) {
+                // the classes of nested archives are not indexed, so
+                // the size of the jar file stands in for them
+                bytes = index.getNestedArchives(f).length > 0 ? bytes : 0;
+                for (int i = 0; i < sizes.length; i++) {
+                    bytes += sizes[i];
+                }
+            }
+            weights[file] = Math.min(kilobytes(bytes), kilobytes(maxBytesInFlight));
+            permits.acquire();
+            kilobytes.acquire(weights[file]);
+        }
+
+        private int kilobytes(long bytes) {
+            return (int) Math.max(1, Math.min(Integer.MAX_VALUE, (bytes + 1023) >> 10));
+        }
+
+        ClassFileParser_T parser() {
+            ClassFileParser_T parser = parsers.get();
+            if (parser == null) {
+                parser = newParser();
+                parsers.set(parser);
+            }
+            return parser;
+        }
+
+        void fail(Throwable t) {
+            failure.compareAndSet(null, t);
+        }
+
+        /**
+         * Records the classes built from the specified indexed file, or
+         * hands them to the class listener, and releases its permit.
+         */
+        void done(int file, Collection built) {
+            if (built != null) {
+                if (sink != null) {
+                    for (Iterator i = built.iterator(); i.hasNext();) {
+                        sink.onParsedJavaClass((JavaClass_T) i.next());
+                    }
+                } else {
+                    classesByFile.put(((File) files.get(file)).getAbsoluteFile(), built);
+                    classes[file] = built;
+                }
+            }
+            kilobytes.release(weights[file]);
+            permits.release();
+            remaining.countDown();
+        }
+    }
+
+    /**
+     * I/O task that reads one indexed class file, or the class entries
+     * of one indexed jar file, and submits a <code>ParseTask</code> for
+     * the bytes of the classes not found in the parse cache.
+     */
+    private class ReadTask implements Runnable {
+
+        private IoExtraction extraction;
+        private int file;
+
+        ReadTask(IoExtraction extraction, int file) {
+            this.extraction = extraction;
+            this.file = file;
+        }
+
+        public void run() {
+            ParseTask task = null;
+            File f = (File) extraction.files.get(file);
+            try {
+                task = extraction.index.isJarFile(f) ? readJarFile(f) : readClassFile(f);
+            } catch (IOException ioe) {
+                reportError(f.getPath() + ": " + ioe.getMessage());
+            } catch (RuntimeException e) {
+                extraction.fail(e);
+            } finally {
+                if (task == null) {
+                    extraction.done(file, null);
+                }
+            }
+            if (task != null) {
+                try {
+                    getExecutor().execute(task);
+                } catch (RejectedExecutionException e) {
+                    extraction.fail(e);
+                    extraction.done(file, null);
+                }
+            }
+        }
+
+        private ParseTask readClassFile(File f) throws IOException {
+            if (metrics != null) {
+                metrics.addClassFile();
+            }
+            ParseTask task = new ParseTask(extraction, file, f, null, 1);
+            if (cache != null) {
+                task.classes[0] = cache.get(f);
+                if (task.classes[0] != null) {
+                    if (metrics != null) {
+                        metrics.addCacheHit();
+                    }
+                    return task;
+                }
+            }
+
+            long start = System.nanoTime();
+            task.bytes[0] = Files.readAllBytes(f.toPath());
+            if (metrics != null) {
+                metrics.addRead(task.bytes[0].length, System.nanoTime() - start);
+            }
+            return task;
+        }
+
+        private ParseTask readJarFile(File f) throws IOException {
+            if (metrics != null) {
+                metrics.addJarFile();
+            }
+            String[] names = extraction.index.getEntryNames(f);
+            String[] nested = extraction.index.getNestedArchives(f);
+            if (names.length == 0 && nested.length == 0) {
+                return new ParseTask(extraction, file, f, null, 0);
+            }
+            boolean summarize = summaries != null && nested.length == 0;
+            if (summarize) {
+                Collection summarized = getSummary(f, names);
+                if (summarized != null) {
+                    ParseTask task = new ParseTask(extraction, file, f, null, 
+                        summarized.size());
+                    summarized.toArray(task.classes);
+                    return task;
+                }
+            }
+            if (ModuleImage.isModule(f)) {
+                return readModule(f, names, summarize);
+            }
+
+            AnalysisEvents.JarScan event = new AnalysisEvents.JarScan();
+            event.begin();
+            JarFile jarFile = new JarFile(f);
+            List entries = new ArrayList();
+            List nestedBytes = new ArrayList();
+            try {
+                for (int i = 0; i < names.length; i++) {
+                    ZipEntry e = jarFile.getEntry(names[i]);
+                    if (e != null) {
+                        entries.add(e);
+                    }
+                }
+
+                for (int i = 0; i < nested.length; i++) {
+                    ZipEntry e = jarFile.getEntry(nested[i]);
+                    if (e != null) {
+                        readNestedArchive(jarFile, e, nestedBytes);
+                    }
+                }
+
+                ParseTask task = new ParseTask(extraction, file, f, jarFile, 
+                    entries.size() + nestedBytes.size());
+                if (summarize) {
+                    task.summaryNames = names;
+                }
+                for (int i = 0; i < nestedBytes.size(); i++) {
+                    task.bytes[entries.size() + i] = (byte[]) nestedBytes.get(i);
+                }
+                for (int i = 0; i < entries.size(); i++) {
+                    ZipEntry e = (ZipEntry) entries.get(i);
+                    task.entries[i] = e;
+                    if (metrics != null) {
+                        metrics.addJarEntry();
+                    }
+                    if (cache != null) {
+                        task.classes[i] = cache.get(jarFile, e);
+                        if (task.classes[i] != null) {
+                            if (metrics != null) {
+                                metrics.addCacheHit();
+                            }
+                            continue;
+                        }
+                    }
+                    long start = System.nanoTime();
+                    InputStream is = jarFile.getInputStream(e);
+                    try {
+                        task.bytes[i] = is.readAllBytes();
+                    } finally {
+                        is.close();
+                    }
+                    if (metrics != null) {
+                        metrics.addRead(task.bytes[i].length, System.nanoTime() - start);
+                    }
+                }
+                return task;
+            } finally {
+                jarFile.close();
+                event.end();
+                if (event.shouldCommit()) {
+                    event.path = f.getPath();
+                    event.classes = entries.size() + nestedBytes.size();
+                    event.commit();
+                }
+            }
+        }
+
+        private ParseTask readModule(File f, String[] names, boolean summarize) 
+            throws IOException {
+            ParseTask task = new ParseTask(extraction, file, f, null, names.length);
+            if (summarize) {
+                task.summaryNames = names;
+            }
+            for (int i = 0; i < names.length; i++) {
+                if (metrics != null) {
+                    metrics.addJarEntry();
+                }
+                long start = System.nanoTime();
+                task.bytes[i] = ModuleImage.read(f, names[i]);
+                if (metrics != null) {
+                    metrics.addRead(task.bytes[i].length, System.nanoTime() - start);
+                }
+            }
+            return task;
+        }
+
+        /**
+         * Adds the bytes of every class of the archive nested in the 
+         * specified entry to the specified list.  A nested archive that
+         * cannot be read is reported and skipped.
+         */
+        private void readNestedArchive(JarFile jarFile, ZipEntry nested, 
+            final List bytes) throws IOException {
+
+            InputStream in = jarFile.getInputStream(nested);
+            try {
+                NestedArchive.read(in, FileManager_T.this, new NestedArchive.Visitor() {
+                    public void visitClass(ZipEntry entry, InputStream is) 
+                        throws IOException {
+                        if (metrics != null) {
+                            metrics.addJarEntry();
+                        }
+                        long start = System.nanoTime();
+                        byte[] b = is.readAllBytes();
+                        if (metrics != null) {
+                            metrics.addRead(b.length, System.nanoTime() - start);
+                        }
+                        bytes.add(b);
+                    }
+                });
+            } catch (IOException ioe) {
+                reportError(jarFile.getName() + "!" + nested.getName() 
+                    + ": " + ioe.getMessage());
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Fork/join task that parses the bytes read by a 
+     * <code>ReadTask</code>, splitting the class entries of jar files
+     * into ranges of at most <code>JAR_CHUNK_SIZE</code> entries.
+     */
+    private class ParseTask extends RecursiveAction {
+
+        private IoExtraction extraction;
+        private int file;
+        private File f;
+        private JarFile jarFile;
+        byte[][] bytes;
+        ZipEntry[] entries;
+        JavaClass_T[] classes;
+        String[] summaryNames;
+
+        ParseTask(IoExtraction extraction, int file, File f, JarFile jarFile, int count) {
+            this.extraction = extraction;
+            this.file = file;
+            this.f = f;
+            this.jarFile = jarFile;
+            this.bytes = new byte[count][];
+            this.entries = new ZipEntry[count];
+            this.classes = new JavaClass_T[count];
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                parse(0, bytes.length);
+                Collection built = new ArrayList();
+                for (int i = 0; i < classes.length; i++) {
+                    if (classes[i] != null) {
+                        built.add(classes[i]);
+                    }
+                }
+                if (summaryNames != null) {
+                    putSummary(f, summaryNames, built);
+                }
+                extraction.done(file, built);
+            } catch (RuntimeException e) {
+                extraction.fail(e);
+                extraction.done(file, null);
+            }
+        }
+
+        private void parse(final int from, final int to) {
+            if (to - from > JAR_CHUNK_SIZE) {
+                final int middle = (from + to) >>> 1;
+                invokeAll(new RecursiveAction() {
+                    protected void compute() {
+                        parse(from, middle);
+                    }
+                }, new RecursiveAction() {
+                    protected void compute() {
+                        parse(middle, to);
+                    }
+                });
+                return;
+            }
+
+            ClassFileParser_T parser = extraction.parser();
+            for (int i = from; i < to; i++) {
+                if (bytes[i] == null) {
+                    continue;
+                }
+                try {
+                    classes[i] = parser.parse(ByteBuffer.wrap(bytes[i]));
+                    bytes[i] = null;
+                    if (cache != null) {
+                        if (jarFile != null) {
+                            if (entries[i] != null) {
+                                cache.put(jarFile, entries[i], classes[i]);
+                            }
+                        } else if (!extraction.index.isJarFile(f)) {
+                            cache.put(f, classes[i]);
+                        }
+                    }
+                } catch (IOException ioe) {
+                    String source = entries[i] != null 
+                        ? jarFile.getName() + "!" + entries[i].getName() 
+                        : f.getPath();
+                    reportError(source + ": " + ioe.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -1,36 +1,81 @@
 package jdependFast.framework;
 
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.TimeUnit;
 
+/**
+ * Takes items from a queue and processes them until it takes the
+ * <code>END</code> marker.
+ * <p>
+ * Once an item fails, or execution is cancelled, the remaining items
+ * are taken and discarded, so that producers blocked on a full queue
+ * are released.
+ */
 public class ItemProcessor implements Runnable {
-	
+
+	/**
+	 * End of stream marker, queued once per processor.
+	 */
+	public static final Item END = new Item() {
+		public void process() {
+		}
+	};
+
 	private BlockingQueue<Item> jobQueue;
-	
+
 	private volatile boolean keepProcessing;
-	
+
+	private volatile Throwable failure;
+
+	private volatile long busyTime;
+
 	public ItemProcessor(BlockingQueue<Item> queue){
 		jobQueue = queue;
 		keepProcessing = true;
 	}
 	@Override
 	public void run() {
-		// TODO Auto-generated method stub
-		while(keepProcessing || !jobQueue.isEmpty()){
+		while(true){
+			Item j;
 			try{
-				Item j = jobQueue.poll(10, TimeUnit.SECONDS);
-				if(j != null){
-					j.process();
-				}
+				j = jobQueue.take();
 			}catch(InterruptedException ie){
 				Thread.currentThread().interrupt();
 				return ;
 			}
+			if(j == END){
+				return ;
+			}
+			if(keepProcessing && failure == null){
+				long start = System.nanoTime();
+				try{
+					j.process();
+				}catch(RuntimeException re){
+					failure = re;
+				}catch(Error e){
+					failure = e;
+				}
+				busyTime += System.nanoTime() - start;
+			}
 		}
 	}
-	
+
 	public void cancelExecution(){
 		this.keepProcessing = false;
 	}
 
+	/**
+	 * @return Nanoseconds spent processing items.
+	 */
+	public long getBusyTime(){
+		return busyTime;
+	}
+
+	/**
+	 * @return The exception thrown by the first failed item, or
+	 *         <code>null</code> if no item failed.
+	 */
+	public Throwable getFailure(){
+		return failure;
+	}
+
 }
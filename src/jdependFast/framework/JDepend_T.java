@@ -1,10 +1,16 @@
 package jdependFast.framework;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -106,33 +112,64 @@ import java.util.concurrent.Executors;
 
 public class JDepend_T {
 
-    private HashMap packages;
+    private ConcurrentHashMap<String, JavaPackage_T> packages;
     private FileManager_T fileManager;
-    public static PackageFilter_T filter;
+    private PackageFilter_T filter;
     private ClassFileParser_T parser;
     private JavaClassBuilder_T builder;
     private Collection components;
-    private static ExecutorService executor = null;
-    public static ExecutorService getExecutor() {
-		return executor;
-	}
-    public static int size = 0;
+    private File cacheDirectory;
+    private ParseCache parseCache;
+    private File summaryDirectory;
+    private JarSummaryStore summaries;
+    private Map classesByFile;
+    private Set declaredPackages;
+    private PackageGraph graph;
+    private int pipelineLoadThreads;
+    private int pipelineParseThreads;
+    private boolean retainClasses = true;
+    private AnalysisMetrics metrics = new AnalysisMetrics();
+    private AnalysisEvents.Phase phaseEvent;
+    private long phaseStart;
+    private ForkJoinPool executor;
+    private boolean ownsExecutor;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int classCount;
+    private boolean ioThreads;
+    private Map duplicates = Collections.EMPTY_MAP;
 
 	public JDepend_T() {
         this(new PackageFilter_T());
     }
 
     public JDepend_T(PackageFilter_T filter) {
-    	
-    	executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-    	setFilter(filter);
+        this(filter, null);
+    }
 
-        this.packages = new HashMap();
+    /**
+     * Constructs a <code>JDepend_T</code> instance that runs its 
+     * parallel work on the specified pool.
+     * <p>
+     * Several instances may share one pool and analyze concurrently;
+     * the pool's parallelism then bounds all of them together.
+     * 
+     * @param filter Package filter.
+     * @param executor Fork/join pool, or <code>null</code> for a pool
+     *                 of this instance's own.
+     */
+    public JDepend_T(PackageFilter_T filter, ForkJoinPool executor) {
+
+        this.packages = new ConcurrentHashMap<String, JavaPackage_T>();
+        this.classesByFile = new HashMap();
+        this.declaredPackages = new HashSet();
         this.fileManager = new FileManager_T();
 
         this.parser = new ClassFileParser_T(filter);
         this.builder = new JavaClassBuilder_T(parser, fileManager);
 
+        setFilter(filter);
+        setExecutor(executor);
+
         PropertyConfigurator_T config = new PropertyConfigurator_T();
         addPackages(config.getConfiguredPackages());
         analyzeInnerClasses(config.getAnalyzeInnerClasses());
@@ -143,53 +180,482 @@ public class JDepend_T {
      * analyzed packages.
      * 
      * @return Collection of analyzed packages.
+     * @throws IOException If a directory or archive cannot be read, the
+     *         analysis pipeline fails, or the analysis is interrupted.
+     *         The packages are then left partially analyzed and 
+     *         unlabeled.
      */
-    public Collection analyze() {
+    public Collection analyze() throws IOException {
     	
-        Collection classes = null;
+        ParseCache cache = parseCache;
+        if (cache == null && cacheDirectory != null) {
+            cache = new ParseCache(cacheDirectory, getFilter());
+        }
+        JarSummaryStore store = summaries;
+        if (store == null && summaryDirectory != null) {
+            store = new JarSummaryStore(summaryDirectory, getFilter());
+        }
+        metrics = new AnalysisMetrics();
+        fileManager.setParseCache(cache);
+        fileManager.setJarSummaryStore(store);
+        fileManager.setMetrics(metrics);
+        ExecutorService io = ioThreads ? VirtualThreads.newExecutor() : null;
+        fileManager.setIoExecutor(io);
 		try {
-			classes = builder.build();
-			JDepend_T.size = classes.size();
+			if (pipelineParseThreads == 0) {
+				beginPhase();
+				addDiscovery(fileManager.takeIndex());
+				endPhase(AnalysisMetrics.DISCOVERY);
+			}
+			if (pipelineParseThreads > 0) {
+				classCount = analyzePipeline(cache, store);
+			} else if (!retainClasses) {
+				classCount = analyzeStream();
+			} else {
+				beginPhase();
+				Collection classes = builder.build();
+				classesByFile = new HashMap(fileManager.getClassesByFile());
+				classCount = classes.size();
+				endPhase(AnalysisMetrics.EXTRACTION);
+				addExtractionPool();
+				beginPhase();
+				analyzeClasses(new ArrayList(classes));
+				endPhase(AnalysisMetrics.LINKING);
+			}
+			if (cache != null) {
+				beginPhase();
+				cache.save();
+				endPhase(AnalysisMetrics.CACHE);
+			}
 		} catch (InterruptedException e) {
-			e.printStackTrace();
-			System.exit(1);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Analysis interrupted");
 		} catch (ExecutionException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-			System.exit(1);
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			if (e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			throw new IOException("Analysis failed", e.getCause());
+		} finally {
+			fileManager.setJarSummaryStore(null);
+			fileManager.setMetrics(null);
+			fileManager.setIoExecutor(null);
+			if (io != null) {
+				io.shutdown();
+			}
 		}
+
+        beginPhase();
+        labelCycles();
+        endPhase(AnalysisMetrics.CYCLES);
+
+        return getPackages();
+    }
+
+    private void beginPhase() {
+        phaseEvent = new AnalysisEvents.Phase();
+        phaseEvent.begin();
+        phaseStart = System.nanoTime();
+    }
+
+    /**
+     * Adds the time elapsed since <code>beginPhase()</code> to the 
+     * specified phase, and emits the phase event if it is enabled.
+     */
+    private void endPhase(String phase) {
+        metrics.addPhaseTime(phase, System.nanoTime() - phaseStart);
+        phaseEvent.end();
+        if (phaseEvent.shouldCommit()) {
+            phaseEvent.phase = phase;
+            phaseEvent.packages = packages.size();
+            phaseEvent.commit();
+        }
+    }
+
+    private void addDiscovery(DiscoveryIndex index) {
+        duplicates = index.getDuplicates();
+        metrics.addDiscovery(index.getDirectoryCount(), index.getScanTime());
+    }
+
+    private void addExtractionPool() {
+        if (fileManager.getIoExecutor() != null) {
+            metrics.addPool("fork/join", getExecutor().getParallelism(),
+                metrics.getParseTime());
+            metrics.addPool("io", FileManager_T.MAX_READS_IN_FLIGHT,
+                metrics.getReadTime());
+            return;
+        }
+        metrics.addPool("fork/join", getExecutor().getParallelism(),
+            metrics.getReadTime() + metrics.getParseTime());
+    }
+
+    /**
+     * Builds the package graph of the analyzed packages and labels 
+     * every package with its dependency cycle, in one pass linear in
+     * the number of packages and dependencies, so that the cycle 
+     * queries that follow need not search the graph again.
+     */
+    private void labelCycles() {
+        graph = new PackageGraph(getPackages());
+        CycleDetector.label(graph);
+    }
+
+    /**
+     * Links the specified classes into packages.
+     * <p>
+     * The packages of each class and of its imports are resolved and 
+     * registered in parallel.  The dependencies are then added in class
+     * order, so that the order of each package's efferents, and with 
+     * it the reported cycle paths, does not depend on scheduling.
+     */
+    private void analyzeClasses(List classes) {
+        JavaPackage_T[][] links = new JavaPackage_T[classes.size()][];
+        getExecutor().invoke(new LinkTask(classes, links, 0, classes.size()));
+        for (int i = 0; i < links.length; i++) {
+            link(links[i]);
+        }
+    }
+
+    /**
+     * Builds and links the classes through an <code>AnalysisPipeline</code>.
+     * <p>
+     * The pipeline walks the directories itself, so that files are
+     * read and parsed while the walk is still in progress, and the 
+     * time of the walk is part of the extraction phase.
+     * Packages are registered and classes added to them as the classes
+     * are parsed.  The dependencies are added once parsing completes,
+     * in class name order, since classes arrive in scheduling order.
+     * 
+     * @return Number of classes.
+     */
+    private int analyzePipeline(ParseCache cache, JarSummaryStore store) 
+        throws IOException {
+
+        final List classes = new ArrayList();
+        final Map links = new IdentityHashMap();
+
+        AnalysisPipeline pipeline = new AnalysisPipeline(fileManager, 
+            getFilter(), cache, pipelineLoadThreads, pipelineParseThreads,
+            ConsumerImpl.DEFAULT_CAPACITY);
+        pipeline.setJarSummaryStore(store);
+        pipeline.setMetrics(metrics);
+        beginPhase();
+
+        if (!retainClasses) {
+            final AtomicInteger count = new AtomicInteger();
+            pipeline.setRetainClasses(false);
+            pipeline.run(new ParserListener_T() {
+                public void onParsedJavaClass(JavaClass_T parsedClass) {
+                    count.incrementAndGet();
+                    link(resolve(parsedClass));
+                }
+            });
+            addDiscovery(pipeline.getIndex());
+            endPhase(AnalysisMetrics.EXTRACTION);
+            beginPhase();
+            classesByFile = new HashMap();
+            sortDependencies();
+            endPhase(AnalysisMetrics.LINKING);
+            return count.get();
+        }
+
+        classesByFile = new HashMap(pipeline.run(new ParserListener_T() {
+            public void onParsedJavaClass(JavaClass_T parsedClass) {
+                classes.add(parsedClass);
+                links.put(parsedClass, resolve(parsedClass));
+            }
+        }));
+        addDiscovery(pipeline.getIndex());
+        endPhase(AnalysisMetrics.EXTRACTION);
+        beginPhase();
+
+        Collections.sort(classes, new JavaClass_T.ClassComparator());
         for (Iterator i = classes.iterator(); i.hasNext();) {
+            link((JavaPackage_T[])links.get(i.next()));
+        }
+        endPhase(AnalysisMetrics.LINKING);
+
+        return classes.size();
+    }
 
-        	analyzeClass((JavaClass_T)i.next());
+    /**
+     * Folds each class into its package as soon as it is parsed, and 
+     * then drops it, so that the heap holds the packages rather than
+     * every class of the analyzed directories.
+     * <p>
+     * Classes are folded from the parsing threads in no particular 
+     * order.  The dependencies of each package are sorted by name 
+     * afterwards, so that the reported cycle paths stay the same from
+     * one run to the next.
+     * 
+     * @return Number of classes.
+     */
+    private int analyzeStream() throws InterruptedException, 
+        ExecutionException, IOException {
+
+        final AtomicInteger count = new AtomicInteger();
+        fileManager.setClassSink(new ParserListener_T() {
+            public void onParsedJavaClass(JavaClass_T parsedClass) {
+                count.incrementAndGet();
+                link(resolve(parsedClass));
+            }
+        });
+        beginPhase();
+        try {
+            builder.build();
+        } finally {
+            fileManager.setClassSink(null);
         }
+        endPhase(AnalysisMetrics.EXTRACTION);
+        addExtractionPool();
+        beginPhase();
 
-        return getPackages();
+        classesByFile = new HashMap();
+        sortDependencies();
+        endPhase(AnalysisMetrics.LINKING);
+        return count.get();
+    }
+
+    private void sortDependencies() {
+        for (Iterator i = getPackages().iterator(); i.hasNext();) {
+            JavaPackage_T pkg = (JavaPackage_T)i.next();
+            List efferents = new ArrayList(pkg.getEfferents());
+            Collections.sort(efferents, PackageComparator_T.byName());
+            pkg.setEfferents(efferents);
+            List afferents = new ArrayList(pkg.getAfferents());
+            Collections.sort(afferents, PackageComparator_T.byName());
+            pkg.setAfferents(afferents);
+        }
     }
 
     private void analyzeClass(JavaClass_T javaClass) {
+        link(resolve(javaClass));
+    }
+
+    /**
+     * Registers the package of the specified class and the packages it
+     * imports, and adds the class to its package, or only counts it 
+     * there if classes are not retained.
+     * 
+     * @return The class package followed by the imported packages, or
+     *         <code>null</code> if the class package is filtered.
+     */
+    private JavaPackage_T[] resolve(JavaClass_T javaClass) {
 
         String packageName = javaClass.getPackageName();
 
         if (!getFilter().accept(packageName)) {
-            return;
+            return null;
         }
 
         JavaPackage_T clazzPackage = addPackage(packageName);
-        clazzPackage.addClass(javaClass);
+        if (retainClasses) {
+            clazzPackage.addClass(javaClass);
+        } else {
+            clazzPackage.countClass(javaClass.getName(), javaClass.isAbstract());
+        }
 
         Collection imports = javaClass.getImportedPackages();
+        JavaPackage_T[] link = new JavaPackage_T[imports.size() + 1];
+        link[0] = clazzPackage;
+        int index = 1;
         for (Iterator i = imports.iterator(); i.hasNext();) {
             JavaPackage_T importedPackage = (JavaPackage_T)i.next();
-            importedPackage = addPackage(importedPackage.getName());
-            clazzPackage.dependsUpon(importedPackage);
+            link[index++] = addPackage(importedPackage.getName());
+        }
+        return link;
+    }
+
+    private void link(JavaPackage_T[] link) {
+        if (link == null) {
+            return;
+        }
+        for (int i = 1; i < link.length; i++) {
+            link[0].dependsUpon(link[i]);
+        }
+    }
+
+    private class LinkTask extends RecursiveAction {
+
+        private static final int THRESHOLD = 256;
+
+        private List classes;
+        private JavaPackage_T[][] links;
+        private int from;
+        private int to;
+
+        LinkTask(List classes, JavaPackage_T[][] links, int from, int to) {
+            this.classes = classes;
+            this.links = links;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from > THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new LinkTask(classes, links, from, middle),
+                    new LinkTask(classes, links, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                links[i] = resolve((JavaClass_T)classes.get(i));
+            }
+        }
+    }
+    /**
+     * Updates the analyzed packages after the specified class or jar 
+     * files changed, were added, or were removed since the last
+     * analysis, without re-analyzing the files that did not change.
+     * <p>
+     * The classes previously built from each file are retracted from 
+     * their packages, except those another analyzed file also provides,
+     * the changed files are parsed again, and the dependencies of the
+     * affected packages only are recomputed.
+     * Packages left with no classes and no afferents are dropped.
+     * 
+     * @param changed Changed or added class and jar files.
+     * @param removed Removed class and jar files.
+     * @return Collection of analyzed packages.
+     * @throws IOException If a changed file cannot be parsed.
+     */
+    public Collection update(Collection changed, Collection removed) throws IOException {
+
+        if (!retainClasses) {
+            throw new IllegalStateException(
+                "Incremental updates require the analyzed classes");
+        }
+
+        Set affected = new HashSet();
+        Map retracted = new HashMap();
+
+        for (Iterator i = removed.iterator(); i.hasNext();) {
+            retract((File)i.next(), affected, retracted);
+        }
+        for (Iterator i = changed.iterator(); i.hasNext();) {
+            retract((File)i.next(), affected, retracted);
+        }
+        restore(retracted);
+
+        for (Iterator i = changed.iterator(); i.hasNext();) {
+            File file = (File)i.next();
+            if (!fileManager.acceptFile(file)) {
+                continue;
+            }
+
+            Collection classes = fileManager.buildClasses(file);
+            classesByFile.put(file.getAbsoluteFile(), classes);
+            classCount += classes.size();
+            for (Iterator j = classes.iterator(); j.hasNext();) {
+                analyzeClass((JavaClass_T)j.next());
+            }
+        }
+
+        relink(affected);
+        labelCycles();
+
+        return getPackages();
+    }
+
+    /**
+     * Removes the classes built from the specified file from their
+     * packages, adding the packages to <code>affected</code> and the
+     * classes' packages by class name to <code>retracted</code>.
+     */
+    private void retract(File file, Set affected, Map retracted) {
+
+        Collection classes = (Collection)classesByFile.remove(file.getAbsoluteFile());
+        if (classes == null) {
+            return;
+        }
+        classCount -= classes.size();
+
+        for (Iterator i = classes.iterator(); i.hasNext();) {
+            JavaClass_T javaClass = (JavaClass_T)i.next();
+            if (!getFilter().accept(javaClass.getPackageName())) {
+                continue;
+            }
+            JavaPackage_T pkg = getPackage(toComponent(javaClass.getPackageName()));
+            if (pkg != null) {
+                pkg.removeClass(javaClass);
+                affected.add(pkg);
+                retracted.put(javaClass.getName(), pkg);
+            }
+        }
+    }
+
+    /**
+     * Adds back the retracted classes that another file still analyzed
+     * also provides, since a package lists a class found in several 
+     * files only once.
+     */
+    private void restore(Map retracted) {
+
+        if (retracted.isEmpty()) {
+            return;
+        }
+
+        for (Iterator i = classesByFile.values().iterator(); i.hasNext();) {
+            Collection classes = (Collection)i.next();
+            for (Iterator j = classes.iterator(); j.hasNext();) {
+                JavaClass_T javaClass = (JavaClass_T)j.next();
+                JavaPackage_T pkg = (JavaPackage_T)retracted.get(javaClass.getName());
+                if (pkg != null) {
+                    pkg.addClass(javaClass);
+                }
+            }
+        }
+    }
+
+    /**
+     * Recomputes the efferents of the specified packages from the 
+     * classes they still contain, removing the dependencies no class
+     * accounts for any more.
+     */
+    private void relink(Set affected) {
+
+        Set candidates = new HashSet(affected);
+
+        for (Iterator i = affected.iterator(); i.hasNext();) {
+            JavaPackage_T pkg = (JavaPackage_T)i.next();
+
+            Set efferents = new HashSet();
+            for (Iterator j = pkg.getClasses().iterator(); j.hasNext();) {
+                JavaClass_T javaClass = (JavaClass_T)j.next();
+                Collection imports = javaClass.getImportedPackages();
+                for (Iterator k = imports.iterator(); k.hasNext();) {
+                    JavaPackage_T imported = (JavaPackage_T)k.next();
+                    efferents.add(toComponent(imported.getName()));
+                }
+            }
+
+            List previous = new ArrayList(pkg.getEfferents());
+            for (Iterator j = previous.iterator(); j.hasNext();) {
+                JavaPackage_T efferent = (JavaPackage_T)j.next();
+                if (!efferents.contains(efferent.getName())) {
+                    pkg.removeEfferent(efferent);
+                    efferent.removeAfferent(pkg);
+                    candidates.add(efferent);
+                }
+            }
+        }
+
+        for (Iterator i = candidates.iterator(); i.hasNext();) {
+            JavaPackage_T pkg = (JavaPackage_T)i.next();
+            if (pkg.getClassCount() == 0 && pkg.getAfferents().isEmpty()
+                    && !declaredPackages.contains(pkg.getName())) {
+                packages.remove(pkg.getName());
+            }
         }
     }
+
     /**
      * Adds the specified directory name to the collection of directories to be
      * analyzed.
+     * <p>
+     * Jar, war, zip, and jmod files are analyzed like directories, and so
+     * are the modules of the running JDK, read from its runtime image 
+     * without extracting them: <code>jrt:/</code> names every module,
+     * and <code>jrt:/java.base</code>, for instance, a single module.
      * 
      * @param name Directory name.
      * @throws IOException If the directory is invalid.
@@ -198,6 +664,125 @@ public class JDepend_T {
         fileManager.addDirectory(name);
     }
     
+    /**
+     * Sets the writer that class and jar files skipped because they 
+     * cannot be read or parsed are reported to.
+     * 
+     * @param errors Error writer, or <code>null</code> to report to the
+     *               standard error stream.
+     */
+    public void setErrorWriter(PrintWriter errors) {
+        fileManager.setErrorWriter(errors);
+    }
+
+    /**
+     * Sets the directory in which parsed classes are cached between 
+     * analyses.  Only classes whose files changed since the previous
+     * analysis are parsed again.
+     * 
+     * @param directory Cache directory, or <code>null</code> to disable
+     *                  caching.
+     */
+    public void setCacheDirectory(File directory) {
+        this.cacheDirectory = directory;
+    }
+
+    /**
+     * Sets a parse cache kept by the caller, such as one kept in memory
+     * and shared by the analyses of a long-running process, in place of
+     * the cache in the directory set by <code>setCacheDirectory()</code>.
+     * The cache must have been built for this instance's package 
+     * filter.
+     * 
+     * @param cache Parse cache, or <code>null</code> to use the cache 
+     *              directory, if any.
+     */
+    public void setParseCache(ParseCache cache) {
+        this.parseCache = cache;
+    }
+
+    /**
+     * Sets the directory in which the classes of each jar file are 
+     * summarized, keyed by the SHA-256 hash of its contents.  Jar files
+     * summarized by a previous analysis, of this or any other project,
+     * are merged from their summary instead of read and parsed.  Jar 
+     * files with nested archives are always read.
+     * 
+     * @param directory Summary directory, or <code>null</code> to 
+     *                  disable jar summaries.
+     */
+    public void setSummaryDirectory(File directory) {
+        this.summaryDirectory = directory;
+    }
+
+    /**
+     * Sets a jar summary store kept by the caller, in place of the 
+     * store in the directory set by <code>setSummaryDirectory()</code>,
+     * so that the hashes and summaries it read are kept from one 
+     * analysis to the next.  The store must have been built for this 
+     * instance's package filter.
+     * 
+     * @param summaries Jar summary store, or <code>null</code> to use 
+     *                  the summary directory, if any.
+     */
+    public void setJarSummaryStore(JarSummaryStore summaries) {
+        this.summaries = summaries;
+    }
+
+    /**
+     * Determines whether the analyzed classes are kept in their 
+     * packages.
+     * <p>
+     * When they are not, each class is folded into the class counts
+     * and dependencies of its package as soon as it is parsed and then
+     * discarded, so that memory use follows the number of packages 
+     * rather than the number of classes.  <code>getClasses()</code> of
+     * each package is then empty, and <code>update()</code> is not
+     * available.
+     * 
+     * @param b <code>true</code> to keep the classes (the default);
+     *          <code>false</code> otherwise.
+     */
+    public void setRetainClasses(boolean b) {
+        this.retainClasses = b;
+    }
+
+    /**
+     * Analyzes the registered directories through a staged pipeline of
+     * bounded queues, which links classes while the directories are 
+     * still being walked, instead of walking and parsing them on the 
+     * fork/join pool before linking.
+     * 
+     * @param loadThreads Number of threads reading class and jar files.
+     * @param parseThreads Number of threads parsing classes, or 0 to 
+     *                     disable the pipeline.
+     */
+    public void setPipeline(int loadThreads, int parseThreads) {
+        this.pipelineLoadThreads = Math.max(1, loadThreads);
+        this.pipelineParseThreads = Math.max(0, parseThreads);
+    }
+
+    /**
+     * Determines whether directories are listed and class and jar 
+     * files read on virtual threads, thousands at once, while the
+     * classes are parsed on the fork/join pool.  This suits network 
+     * file systems, where reads wait far longer than they compute.
+     * Runtimes without virtual threads use a pool of 
+     * <code>VirtualThreads.FALLBACK_THREADS</code> threads instead.
+     * The pipeline, when enabled, reads on its own load threads.
+     * 
+     * @param b <code>true</code> to read on virtual threads; 
+     *          <code>false</code> to read on the fork/join pool (the
+     *          default).
+     */
+    public void setIoThreads(boolean b) {
+        this.ioThreads = b;
+    }
+
+    public boolean isIoThreads() {
+        return ioThreads;
+    }
+
     /**
      * Sets the list of components.
      * 
@@ -222,6 +807,31 @@ public class JDepend_T {
         fileManager.acceptInnerClasses(b);
     }
 
+    /**
+     * Determines whether each distinct class is analyzed once only, 
+     * the first copy found winning, when the same class or jar file 
+     * appears under several of the registered directories.  Classes 
+     * are matched by file name, size, and CRC-32, taken from the 
+     * central directory for jar entries.  <code>update()</code> does 
+     * not deduplicate the files it is given.
+     * 
+     * @param b <code>true</code> to drop duplicates; <code>false</code>
+     *          to analyze every copy (the default).
+     */
+    public void deduplicateClasses(boolean b) {
+        fileManager.deduplicateClasses(b);
+    }
+
+    /**
+     * Returns the classes and jar files dropped as duplicates by the
+     * last analysis, each mapped to the one it duplicates.
+     * 
+     * @return Map of duplicate path to original path.
+     */
+    public Map getDuplicates() {
+        return duplicates;
+    }
+
     /**
      * Returns the collection of analyzed packages.
      * 
@@ -231,6 +841,76 @@ public class JDepend_T {
         return packages.values();
     }
 
+    /**
+     * Returns the timings and counts recorded by the last analysis.
+     * 
+     * @return Analysis metrics.
+     */
+    public AnalysisMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the int-indexed dependency graph of the analyzed packages
+     * as of the last analysis or update.
+     * 
+     * @return Package graph.
+     */
+    public PackageGraph getPackageGraph() {
+        if (graph == null) {
+            graph = new PackageGraph(getPackages());
+        }
+        return graph;
+    }
+
+    /**
+     * Writes a snapshot of the analyzed packages to the specified file,
+     * from which <code>loadSnapshot()</code> or 
+     * <code>AnalysisSnapshot.open()</code> restore them without 
+     * analyzing the directories again.
+     * 
+     * @param file Snapshot file.
+     * @param withClasses <code>true</code> to list the classes of each
+     *                    package; <code>false</code> to keep their 
+     *                    counts only.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writeSnapshot(File file, boolean withClasses) throws IOException {
+        AnalysisSnapshot.write(getPackages(), withClasses, file);
+    }
+
+    /**
+     * Replaces the analyzed packages with those of the snapshot in the
+     * specified file, in place of an analysis of the registered 
+     * directories.  The classes of each package are listed only if the
+     * snapshot lists them, and are counted otherwise.
+     * 
+     * @param file Snapshot file.
+     * @return Collection of analyzed packages.
+     * @throws IOException If the file is not a readable snapshot.
+     */
+    public Collection loadSnapshot(File file) throws IOException {
+
+        metrics = new AnalysisMetrics();
+        AnalysisSnapshot snapshot = AnalysisSnapshot.open(file);
+        Collection loaded = snapshot.getPackages();
+
+        packages.clear();
+        for (Iterator i = loaded.iterator(); i.hasNext();) {
+            JavaPackage_T pkg = (JavaPackage_T)i.next();
+            packages.put(pkg.getName(), pkg);
+        }
+        classesByFile = new HashMap();
+        duplicates = Collections.EMPTY_MAP;
+        classCount = snapshot.getClassCount();
+
+        beginPhase();
+        labelCycles();
+        endPhase(AnalysisMetrics.CYCLES);
+
+        return getPackages();
+    }
+
     /**
      * Returns the analyzed package of the specified name.
      * 
@@ -238,11 +918,7 @@ public class JDepend_T {
      * @return Package, or <code>null</code> if the package was not analyzed.
      */
     public JavaPackage_T getPackage(String name) {
-    	JavaPackage_T t = null;
-    	synchronized(packages){
-    		t = (JavaPackage_T)packages.get(name);
-    	}
-        return t;
+        return packages.get(name);
     }
 
     /**
@@ -256,6 +932,10 @@ public class JDepend_T {
 
     /**
      * Returns the number of registered Java classes to be analyzed.
+     * <p>
+     * The classes are counted from the <code>DiscoveryIndex</code>,
+     * which the next analysis reuses, or, after an analysis, from the
+     * index it used, so that the directories are walked only once.
      * 
      * @return Number of classes.
      * @throws ExecutionException 
@@ -266,6 +946,15 @@ public class JDepend_T {
         return builder.countClasses();
     }
 
+    /**
+     * Returns the number of classes built by the last analysis.
+     * 
+     * @return Number of classes.
+     */
+    public int getClassCount() {
+        return classCount;
+    }
+
     /**
      * Indicates whether the packages contain one or more dependency cycles.
      * 
@@ -311,13 +1000,7 @@ public class JDepend_T {
      */
     public JavaPackage_T addPackage(String name) {
         name = toComponent(name);
-        JavaPackage_T pkg = getPackage(name);
-        if (pkg == null) {
-            pkg = new JavaPackage_T(name);
-            addPackage(pkg);
-        }
-
-        return pkg;
+        return packages.computeIfAbsent(name, JavaPackage_T::new);
     }
     
     /**
@@ -326,12 +1009,8 @@ public class JDepend_T {
      * 
      * @param pkg Java package.
      */
-   public void addPackage(JavaPackage_T pkg) {
-	   synchronized(packages){
-        if (!packages.containsValue(pkg)) {
-            packages.put(pkg.getName(), pkg);
-        }
-	   }
+    public void addPackage(JavaPackage_T pkg) {
+        packages.putIfAbsent(pkg.getName(), pkg);
     }
 
     private String toComponent(String packageName) {
@@ -355,6 +1034,7 @@ public class JDepend_T {
     public void addPackages(Collection packages) {
         for (Iterator i = packages.iterator(); i.hasNext();) {
             JavaPackage_T pkg = (JavaPackage_T)i.next();
+            declaredPackages.add(pkg.getName());
             addPackage(pkg);
         }
     }
@@ -372,7 +1052,68 @@ public class JDepend_T {
         if (parser != null) {
             parser.setFilter(filter);
         }
-        JDepend_T.filter = filter;
+        if (fileManager != null) {
+            fileManager.setFilter(filter);
+        }
+        this.filter = filter;
+    }
+
+    /**
+     * Returns the fork/join pool that walks, parses, and links classes
+     * for this instance.
+     * 
+     * @return Fork/join pool.
+     */
+    public synchronized ForkJoinPool getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the fork/join pool that walks, parses, and links classes 
+     * for this instance.  The pool this instance created, if any, is 
+     * shut down; a pool passed in is never shut down by this instance.
+     * 
+     * @param executor Fork/join pool, or <code>null</code> for a pool
+     *                 of this instance's own, of 
+     *                 <code>getParallelism()</code> threads.
+     */
+    public synchronized void setExecutor(ForkJoinPool executor) {
+        if (ownsExecutor) {
+            this.executor.shutdown();
+        }
+        ownsExecutor = executor == null;
+        this.executor = ownsExecutor ? new ForkJoinPool(parallelism) : executor;
+        fileManager.setExecutor(this.executor);
+    }
+
+    /**
+     * Limits the number of threads of the pool this instance creates
+     * for itself, so that many analyses running at once share the 
+     * machine.  It has no effect on a pool passed in.
+     * 
+     * @param parallelism Number of threads, at least 1.  The default 
+     *                    is the number of available processors.
+     */
+    public synchronized void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        if (ownsExecutor) {
+            setExecutor(null);
+        }
+    }
+
+    public synchronized int getParallelism() {
+        return executor.getParallelism();
+    }
+
+    /**
+     * Shuts down the pool this instance created for itself.  A pool 
+     * passed in is left running.  The instance cannot analyze again
+     * afterwards, unless it is given another pool.
+     */
+    public synchronized void shutdown() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
     }
 
 }
@@ -0,0 +1,382 @@
+package jdependFast.framework;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The <code>JarSummaryStore</code> class keeps a summary of the classes
+ * of each jar file analyzed, keyed by the SHA-256 hash of the file's
+ * contents, so that jar files that never change, such as the libraries
+ * of a Maven repository, are parsed once and merged from their summary
+ * by every later analysis, wherever they are copied to.
+ * <p>
+ * A summary lists the packages of the jar file once and records, for
+ * each class entry, the class name, whether it is abstract, its source
+ * file, and its package and imported packages as indices into that
+ * list, so that the package set, the class and abstract counts of each
+ * package, and the package dependencies of the jar file are restored
+ * exactly, in entry order.
+ * <p>
+ * The modules of the <code>jrt:/</code> runtime image are summarized
+ * the same way, keyed by the hash of the runtime's vendor and version
+ * and the module name, so that each JDK is parsed once only.
+ * <p>
+ * Each summary is a file of its own in the store directory, named after
+ * the hash, and is written as soon as its jar file is parsed, so that
+ * the store can be shared by several projects and processes.  Like the
+ * <code>ParseCache</code>, a summary is bound to the package filter it
+ * was written under.  The hash of a jar file is computed once for as
+ * long as its size and modification time stay the same.
+ */
+
+public class JarSummaryStore {
+
+    public static final String SUMMARY_SUFFIX = ".summary";
+
+    private static final int MAGIC = 0x4A44534D;
+    private static final int VERSION = 1;
+
+    private File directory;
+    private String filterKey;
+    private Map hashes;
+    private Map summaries;
+    private int hits;
+    private int misses;
+
+
+    /**
+     * Constructs a <code>JarSummaryStore</code> instance stored in the
+     * specified directory, for analyses under the specified package
+     * filter.
+     *
+     * @param directory Store directory.
+     * @param filter Package filter.
+     */
+    public JarSummaryStore(File directory, PackageFilter_T filter) {
+        this.directory = directory;
+        this.filterKey = ParseCache.toKey(filter);
+        this.hashes = new ConcurrentHashMap();
+        this.summaries = new ConcurrentHashMap();
+    }
+
+    /**
+     * Returns the classes of the specified entries of the specified jar
+     * file, in entry order, from the summary of its contents, or
+     * <code>null</code> if no summary was stored for its contents or
+     * the summary lacks one of the entries.
+     *
+     * @param file Jar file.
+     * @param entryNames Names of its class entries.
+     * @return Collection of <code>JavaClass_T</code> instances.
+     * @throws IOException If the jar file cannot be read.
+     */
+    public Collection get(File file, String[] entryNames) throws IOException {
+
+        Summary summary = getSummary(hash(file));
+        Collection classes = summary == null ? null : summary.toJavaClasses(entryNames);
+        synchronized (this) {
+            if (classes == null) {
+                misses++;
+            } else {
+                hits++;
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Stores the summary of the classes built from the specified
+     * entries of the specified jar file, in place of any summary
+     * stored for the same contents.
+     *
+     * @param file Jar file.
+     * @param entryNames Names of its class entries.
+     * @param classes Classes built from the entries, in entry order.
+     * @throws IOException If the summary cannot be written.
+     */
+    public void put(File file, String[] entryNames, Collection classes)
+        throws IOException {
+
+        if (entryNames.length != classes.size()) {
+            throw new IllegalArgumentException(entryNames.length
+                + " entries for " + classes.size() + " classes");
+        }
+
+        String hash = hash(file);
+        Summary summary = new Summary(entryNames, classes);
+        summaries.put(hash, summary);
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Invalid summary directory: " + directory);
+        }
+
+        File temp = File.createTempFile(hash, ".tmp", directory);
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(filterKey);
+            summary.write(out);
+        } finally {
+            out.close();
+        }
+        ParseCache.replace(temp, new File(directory, hash + SUMMARY_SUFFIX));
+    }
+
+    /**
+     * Returns the SHA-256 hash of the contents of the specified file, as
+     * 64 hexadecimal digits, reading the file only if its size or
+     * modification time changed since it was last hashed.  The hash of
+     * a module of the runtime image is that of the runtime's vendor and
+     * version and the module name.
+     *
+     * @param file File or module.
+     * @return Hash.
+     * @throws IOException If the file cannot be read.
+     */
+    public String hash(File file) throws IOException {
+
+        if (ModuleImage.isModule(file)) {
+            MessageDigest digest = newDigest();
+            digest.update((ModuleImage.getVersion() + "!" + file.getName())
+                .getBytes("UTF-8"));
+            return toHex(digest);
+        }
+
+        long size = file.length();
+        long modified = file.lastModified();
+        String[] known = (String[]) hashes.get(file.getPath());
+        if (known != null && known[0].equals(size + ":" + modified)) {
+            return known[1];
+        }
+
+        MessageDigest digest = newDigest();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[65536];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+
+        String hash = toHex(digest);
+        hashes.put(file.getPath(), new String[] { size + ":" + modified, hash });
+        return hash;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(MessageDigest digest) {
+        return String.format("%064x", new BigInteger(1, digest.digest()));
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    private Summary getSummary(String hash) {
+
+        Summary summary = (Summary) summaries.get(hash);
+        if (summary != null) {
+            return summary;
+        }
+
+        File file = new File(directory, hash + SUMMARY_SUFFIX);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || !in.readUTF().equals(filterKey)) {
+                return null;
+            }
+            summary = Summary.read(in, file.length());
+        } catch (IOException ioe) {
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+
+        summaries.put(hash, summary);
+        return summary;
+    }
+
+    static class Summary {
+
+        private String[] packages;
+        private String[] entries;
+        private String[] names;
+        private boolean[] abstracts;
+        private String[] sourceFiles;
+        private int[][] links;
+        private Map entryIndex;
+
+        Summary(String[] entryNames, Collection classes) {
+
+            Map packageIndex = new LinkedHashMap();
+            entries = (String[]) entryNames.clone();
+            names = new String[entries.length];
+            abstracts = new boolean[entries.length];
+            sourceFiles = new String[entries.length];
+            links = new int[entries.length][];
+
+            int c = 0;
+            for (Iterator i = classes.iterator(); i.hasNext(); c++) {
+                JavaClass_T jClass = (JavaClass_T) i.next();
+                names[c] = jClass.getName();
+                abstracts[c] = jClass.isAbstract();
+                sourceFiles[c] = jClass.getSourceFile();
+
+                Collection imports = jClass.getImportedPackages();
+                links[c] = new int[imports.size() + 1];
+                links[c][0] = intern(packageIndex, jClass.getPackageName());
+                int l = 1;
+                for (Iterator j = imports.iterator(); j.hasNext();) {
+                    links[c][l++] = intern(packageIndex,
+                        ((JavaPackage_T) j.next()).getName());
+                }
+            }
+
+            packages = (String[]) packageIndex.keySet().toArray(
+                new String[packageIndex.size()]);
+        }
+
+        private Summary() {
+        }
+
+        private static int intern(Map packageIndex, String name) {
+            Integer index = (Integer) packageIndex.get(name);
+            if (index == null) {
+                index = Integer.valueOf(packageIndex.size());
+                packageIndex.put(name, index);
+            }
+            return index.intValue();
+        }
+
+        /**
+         * @return The classes of the specified entries, or
+         *         <code>null</code> if one of them is not summarized.
+         */
+        synchronized Collection toJavaClasses(String[] entryNames) {
+
+            if (entryIndex == null) {
+                entryIndex = new HashMap();
+                for (int i = 0; i < entries.length; i++) {
+                    entryIndex.put(entries[i], Integer.valueOf(i));
+                }
+            }
+
+            Collection classes = new ArrayList(entryNames.length);
+            for (int i = 0; i < entryNames.length; i++) {
+                Integer c = (Integer) entryIndex.get(entryNames[i]);
+                if (c == null) {
+                    return null;
+                }
+                classes.add(toJavaClass(c.intValue()));
+            }
+            return classes;
+        }
+
+        private JavaClass_T toJavaClass(int c) {
+            JavaClass_T jClass = new JavaClass_T(names[c]);
+            jClass.setPackageName(packages[links[c][0]]);
+            jClass.isAbstract(abstracts[c]);
+            jClass.setSourceFile(sourceFiles[c]);
+            for (int l = 1; l < links[c].length; l++) {
+                jClass.addImportedPackage(new JavaPackage_T(packages[links[c][l]]));
+            }
+            return jClass;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(packages.length);
+            for (int i = 0; i < packages.length; i++) {
+                out.writeUTF(packages[i]);
+            }
+            out.writeInt(entries.length);
+            for (int c = 0; c < entries.length; c++) {
+                out.writeUTF(entries[c]);
+                out.writeUTF(names[c]);
+                out.writeBoolean(abstracts[c]);
+                out.writeUTF(sourceFiles[c]);
+                out.writeInt(links[c].length);
+                for (int l = 0; l < links[c].length; l++) {
+                    out.writeInt(links[c][l]);
+                }
+            }
+        }
+
+        /**
+         * Reads a summary, rejecting the counts of a damaged summary 
+         * that the specified number of bytes could not hold.
+         * 
+         * @param length Size of the summary file.
+         * @throws IOException If the summary cannot be read or is 
+         *         invalid.
+         */
+        static Summary read(DataInputStream in, long length) throws IOException {
+            Summary summary = new Summary();
+            summary.packages = new String[readCount(in, length)];
+            for (int i = 0; i < summary.packages.length; i++) {
+                summary.packages[i] = in.readUTF();
+            }
+            int count = readCount(in, length);
+            summary.entries = new String[count];
+            summary.names = new String[count];
+            summary.abstracts = new boolean[count];
+            summary.sourceFiles = new String[count];
+            summary.links = new int[count][];
+            for (int c = 0; c < count; c++) {
+                summary.entries[c] = in.readUTF();
+                summary.names[c] = in.readUTF();
+                summary.abstracts[c] = in.readBoolean();
+                summary.sourceFiles[c] = in.readUTF();
+                summary.links[c] = new int[readCount(in, length)];
+                for (int l = 0; l < summary.links[c].length; l++) {
+                    int index = in.readInt();
+                    if (index < 0 || index >= summary.packages.length) {
+                        throw new IOException("Invalid package index: " + index);
+                    }
+                    summary.links[c][l] = index;
+                }
+            }
+            return summary;
+        }
+
+        private static int readCount(DataInputStream in, long length) 
+            throws IOException {
+            int count = in.readInt();
+            if (count < 0 || count > length) {
+                throw new IOException("Invalid count: " + count);
+            }
+            return count;
+        }
+    }
+}
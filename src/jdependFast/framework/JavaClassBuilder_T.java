@@ -31,18 +31,14 @@ public class JavaClassBuilder_T {
         this.fileManager = fm;
     }
 
+    /**
+     * Counts the class files and jar entries of the discovery index of
+     * the file manager, without reading or parsing them.
+     * 
+     * @return Number of classes.
+     */
     public int countClasses() throws InterruptedException, ExecutionException, IOException {
-        AbstractParser_T counter = new AbstractParser_T() {
-
-            @Override
-			public JavaClass_T parse(InputStream is) {
-                return new JavaClass_T("");
-            }
-        };
-
-        JavaClassBuilder_T builder = new JavaClassBuilder_T(counter, fileManager);
-        Collection classes = builder.build();
-        return classes.size();
+        return fileManager.getIndex().getClassCount();
     }
 
     /**
@@ -16,8 +16,15 @@ public class JavaPackage_T {
     private String name;
     private int volatility;
     private HashSet classes;
-    private List afferents;
-    private List efferents;
+    private long[] foldedNames;
+    private int foldedClasses;
+    private int foldedAbstractClasses;
+    private Set afferents;
+    private Set efferents;
+    private volatile CycleDetector cycleDetector;
+    private int component;
+    private boolean inCycle;
+    private boolean reachesCycle;
 
 
     public JavaPackage_T(String name) {
@@ -28,8 +35,8 @@ public class JavaPackage_T {
         this.name = name;
         setVolatility(volatility);
         classes = new HashSet();
-        afferents = new ArrayList();
-        efferents = new ArrayList();
+        afferents = new LinkedHashSet();
+        efferents = new LinkedHashSet();
     }
 
     public String getName() {
@@ -50,13 +57,75 @@ public class JavaPackage_T {
         volatility = v;
     }
 
+    /**
+     * Indicates whether a package dependency cycle can be reached from
+     * this package.
+     * <p>
+     * The answer comes from the strongly connected component labels of
+     * the last cycle detection pass, which is rerun over the packages
+     * reachable from this one if a dependency changed since.
+     *
+     * @return <code>true</code> if a cycle exist; <code>false</code>
+     *         otherwise.
+     */
     public boolean containsCycle() {
-        return collectCycle(new ArrayList());
+        ensureCycleLabel();
+        return reachesCycle;
+    }
+
+    /**
+     * Indicates whether this package itself participates in a package
+     * dependency cycle.
+     *
+     * @return <code>true</code> if this package is in a cycle;
+     *         <code>false</code> otherwise.
+     */
+    public boolean isInCycle() {
+        ensureCycleLabel();
+        return inCycle;
+    }
+
+    /**
+     * @return The strongly connected component of this package, shared
+     *         by all packages in the same dependency cycle.
+     */
+    public int getComponent() {
+        ensureCycleLabel();
+        return component;
+    }
+
+    CycleDetector getCycleDetector() {
+        return cycleDetector;
+    }
+
+    void setCycleLabel(CycleDetector detector, int component,
+        boolean inCycle, boolean reachesCycle) {
+        this.cycleDetector = detector;
+        this.component = component;
+        this.inCycle = inCycle;
+        this.reachesCycle = reachesCycle;
+    }
+
+    private void ensureCycleLabel() {
+        if (cycleDetector == null || !cycleDetector.isValid()) {
+            CycleDetector.label(Collections.singleton(this));
+        }
+    }
+
+    private void invalidateCycleLabel() {
+        CycleDetector detector = cycleDetector;
+        if (detector != null) {
+            detector.invalidate();
+        }
     }
 
     /**
      * Collects the packages participating in the first package dependency cycle
      * detected which originates from this package.
+     * <p>
+     * The search walks iteratively along the first efferent from which a
+     * cycle can be reached, so it follows the same path as a depth-first
+     * search without descending into acyclic subgraphs.
      * 
      * @param list Collecting object to be populated with the list of
      *            JavaPackage instances in a cycle.
@@ -65,23 +134,31 @@ public class JavaPackage_T {
      */
     public boolean collectCycle(List list) {
 
-        if (list.contains(this)) {
-            list.add(this);
-            return true;
-        }
+        JavaPackage_T current = this;
+        Set path = new HashSet(list);
 
-        list.add(this);
+        while (!path.contains(current)) {
 
-        for (Iterator i = getEfferents().iterator(); i.hasNext();) {
-            JavaPackage_T efferent = (JavaPackage_T)i.next();
-            if (efferent.collectCycle(list)) {
-                return true;
+            if (!current.containsCycle()) {
+                return false;
             }
-        }
 
-        list.remove(this);
+            list.add(current);
+            path.add(current);
 
-        return false;
+            JavaPackage_T next = null;
+            for (Iterator i = current.getEfferents().iterator(); i.hasNext();) {
+                JavaPackage_T efferent = (JavaPackage_T)i.next();
+                if (path.contains(efferent) || efferent.containsCycle()) {
+                    next = efferent;
+                    break;
+                }
+            }
+            current = next;
+        }
+
+        list.add(current);
+        return true;
     }
 
     /**
@@ -108,6 +185,9 @@ public class JavaPackage_T {
         boolean containsCycle = false;
         for (Iterator i = getEfferents().iterator(); i.hasNext();) {
             JavaPackage_T efferent = (JavaPackage_T)i.next();
+            if (!list.contains(efferent) && !efferent.containsCycle()) {
+                continue;
+            }
             if (efferent.collectAllCycles(list)) {
                 containsCycle = true;
             }
@@ -127,16 +207,108 @@ public class JavaPackage_T {
     	}
     }
 
+    public void removeClass(JavaClass_T clazz) {
+    	synchronized(classes){
+        classes.remove(clazz);
+    	}
+    }
+
+    /**
+     * Counts a class of this package without keeping it, as in a 
+     * streaming analysis.  Counted classes contribute to the class 
+     * counts and metrics but are not among <code>getClasses()</code>.
+     * <p>
+     * Only a 64-bit fingerprint of the class name is kept, so that a
+     * class found twice is counted once, as <code>addClass()</code> 
+     * would.  The names themselves are not kept, since keeping them 
+     * would give back much of the memory streaming saves, so two 
+     * distinct classes whose names share a fingerprint are counted as
+     * one.  The FNV-1a fingerprints of <i>n</i> distinct names of one
+     * package collide with a probability of at most 
+     * <i>n</i>(<i>n</i> - 1) / 2<sup>65</sup>: below 10<sup>-9</sup>
+     * for a package of 100,000 classes.  Retaining classes counts 
+     * them exactly.
+     * 
+     * @param clazz Class name.
+     * @param isAbstract <code>true</code> if the class is abstract.
+     * @return <code>false</code> if the class was already counted.
+     */
+    public boolean countClass(String clazz, boolean isAbstract) {
+    	synchronized(classes){
+        if (!addFingerprint(fingerprint(clazz))) {
+            return false;
+        }
+        foldedClasses++;
+        if (isAbstract) {
+            foldedAbstractClasses++;
+        }
+        return true;
+    	}
+    }
+
+    /**
+     * Counts the specified number of classes of this package without
+     * their names, as when the package is loaded from a snapshot that
+     * does not list its classes.
+     */
+    void countClasses(int count, int abstractCount) {
+    	synchronized(classes){
+        foldedClasses += count;
+        foldedAbstractClasses += abstractCount;
+    	}
+    }
+
+    private static long fingerprint(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= name.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Adds a fingerprint to the open addressing table of counted 
+     * classes, in which 0 marks a free slot.
+     */
+    private boolean addFingerprint(long fingerprint) {
+        if (foldedNames == null) {
+            foldedNames = new long[16];
+        } else if ((foldedClasses + 1) * 2 > foldedNames.length) {
+            long[] previous = foldedNames;
+            foldedNames = new long[previous.length * 2];
+            for (int i = 0; i < previous.length; i++) {
+                if (previous[i] != 0) {
+                    insertFingerprint(previous[i]);
+                }
+            }
+        }
+        return insertFingerprint(fingerprint);
+    }
+
+    private boolean insertFingerprint(long fingerprint) {
+        int mask = foldedNames.length - 1;
+        int slot = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+        while (foldedNames[slot] != 0) {
+            if (foldedNames[slot] == fingerprint) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        foldedNames[slot] = fingerprint;
+        return true;
+    }
+
     public Collection getClasses() {
         return classes;
     }
 
     public int getClassCount() {
-        return classes.size();
+        return classes.size() + foldedClasses;
     }
 
     public int getAbstractClassCount() {
-        int count = 0;
+        int count = foldedAbstractClasses;
 
         for (Iterator i = classes.iterator(); i.hasNext();) {
             JavaClass_T clazz = (JavaClass_T)i.next();
@@ -149,7 +321,7 @@ public class JavaPackage_T {
     }
 
     public int getConcreteClassCount() {
-        int count = 0;
+        int count = foldedClasses - foldedAbstractClasses;
 
         for (Iterator i = classes.iterator(); i.hasNext();) {
             JavaClass_T clazz = (JavaClass_T)i.next();
@@ -180,37 +352,50 @@ public class JavaPackage_T {
     public void addAfferent(JavaPackage_T jPackage) {
         if (!jPackage.getName().equals(getName())) {
         	synchronized(afferents){
-	            if (!afferents.contains(jPackage)) {
-	                afferents.add(jPackage);
-	            }
+	            afferents.add(jPackage);
         	}
         }
     }
 
+    public void removeAfferent(JavaPackage_T jPackage) {
+        synchronized(afferents){
+            afferents.remove(jPackage);
+        }
+    }
+
     public Collection getAfferents() {
         return afferents;
     }
 
     public void setAfferents(Collection afferents) {
-        this.afferents = new ArrayList(afferents);
+        this.afferents = new LinkedHashSet(afferents);
     }
 
     public void addEfferent(JavaPackage_T jPackage) {
         if (!jPackage.getName().equals(getName())) {
-        	synchronized(afferents){
-	            if (!efferents.contains(jPackage)) {
-	                efferents.add(jPackage);
+        	synchronized(efferents){
+	            if (efferents.add(jPackage)) {
+	                invalidateCycleLabel();
 	            }
         	}
         }
     }
 
+    public void removeEfferent(JavaPackage_T jPackage) {
+        synchronized(efferents){
+            if (efferents.remove(jPackage)) {
+                invalidateCycleLabel();
+            }
+        }
+    }
+
     public Collection getEfferents() {
         return efferents;
     }
 
     public void setEfferents(Collection efferents) {
-        this.efferents = new ArrayList(efferents);
+        this.efferents = new LinkedHashSet(efferents);
+        invalidateCycleLabel();
     }
 
     /**
@@ -0,0 +1,151 @@
+package jdependFast.framework;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.ProviderNotFoundException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * The <code>ModuleImage</code> class reads the classes of the modules
+ * of the running Java runtime image through the <code>jrt:/</code>
+ * file system, without extracting them.
+ * <p>
+ * <code>jrt:/</code> names the whole image, whose modules are indexed
+ * and parsed like as many jar files, each on a task of its own, and
+ * <code>jrt:/&lt;module&gt;</code> names a single module.  The class
+ * entries of a module are named by their path in the module, such as
+ * <code>java/lang/Object.class</code>, in name order.
+ */
+
+final class ModuleImage {
+
+    static final String SCHEME = "jrt:";
+
+    private ModuleImage() {
+    }
+
+    /**
+     * @return <code>true</code> if the specified file names the runtime
+     *         image or one of its modules.
+     */
+    static boolean isImage(File file) {
+        return file.getPath().startsWith(SCHEME);
+    }
+
+    /**
+     * @return <code>true</code> if the specified file names a module of
+     *         the runtime image.
+     */
+    static boolean isModule(File file) {
+        return file.getPath().startsWith(SCHEME + File.separator);
+    }
+
+    /**
+     * @return <code>true</code> if the runtime has an image and, if the
+     *         specified file names a module, the image has the module.
+     */
+    static boolean exists(File file) {
+        FileSystem fileSystem = getFileSystem();
+        if (fileSystem == null) {
+            return false;
+        }
+        return !isModule(file)
+            || Files.isDirectory(fileSystem.getPath("/modules", file.getName()));
+    }
+
+    /**
+     * @return Names of the modules of the runtime image, in name order.
+     */
+    static String[] list() {
+        FileSystem fileSystem = getFileSystem();
+        if (fileSystem == null) {
+            return new String[0];
+        }
+        List names = new ArrayList();
+        try {
+            DirectoryStream<Path> modules =
+                Files.newDirectoryStream(fileSystem.getPath("/modules"));
+            try {
+                for (Path module : modules) {
+                    names.add(module.getFileName().toString());
+                }
+            } finally {
+                modules.close();
+            }
+        } catch (IOException ioe) {
+            System.err.println("\n" + ioe.getMessage());
+        }
+        Collections.sort(names);
+        return (String[]) names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Adds the name and size of each class entry of the specified module
+     * accepted by the specified file manager to the specified lists, in
+     * name order.
+     *
+     * @param module Module.
+     * @param fileManager File manager whose file filter applies.
+     * @param names List of entry names.
+     * @param sizes List of entry sizes, as <code>Long</code> instances.
+     * @throws IOException If the module cannot be read.
+     */
+    static void index(File module, FileManager_T fileManager, List names,
+        List sizes) throws IOException {
+
+        Path root = getFileSystem().getPath("/modules", module.getName());
+        SortedMap entries = new TreeMap();
+        Stream<Path> paths = Files.walk(root);
+        try {
+            for (Iterator<Path> i = paths.iterator(); i.hasNext();) {
+                Path path = i.next();
+                String name = root.relativize(path).toString();
+                if (fileManager.acceptClassFileName(name)
+                        && Files.isRegularFile(path)) {
+                    entries.put(name, Long.valueOf(Files.size(path)));
+                }
+            }
+        } finally {
+            paths.close();
+        }
+        names.addAll(entries.keySet());
+        sizes.addAll(entries.values());
+    }
+
+    /**
+     * @return The bytes of the specified class entry of the specified
+     *         module.
+     * @throws IOException If the entry cannot be read.
+     */
+    static byte[] read(File module, String name) throws IOException {
+        return Files.readAllBytes(
+            getFileSystem().getPath("/modules", module.getName(), name));
+    }
+
+    /**
+     * @return The vendor and version of the runtime, which identify the
+     *         contents of its image.
+     */
+    static String getVersion() {
+        return System.getProperty("java.vm.vendor") + " "
+            + System.getProperty("java.runtime.version");
+    }
+
+    private static FileSystem getFileSystem() {
+        try {
+            return FileSystems.getFileSystem(URI.create(SCHEME + "/"));
+        } catch (FileSystemNotFoundException e) {
+            return null;
+        } catch (ProviderNotFoundException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package jdependFast.framework;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * The <code>NestedArchive</code> class streams the class entries of a
+ * jar, war, or zip file nested in another one, such as the libraries
+ * under <code>WEB-INF/lib/</code> of a war file or under
+ * <code>BOOT-INF/lib/</code> of a Spring Boot jar.
+ * <p>
+ * The nested archive is read straight from the input stream of its
+ * entry in the outer archive, one local entry header after the other,
+ * without extracting it to a temporary file.  Archives nested in it
+ * are read the same way, from the same stream.
+ */
+
+final class NestedArchive {
+
+    /**
+     * Receives each class entry of a nested archive, with a stream
+     * positioned at the start of its contents and ending at their end.
+     */
+    interface Visitor {
+        void visitClass(ZipEntry entry, InputStream in) throws IOException;
+    }
+
+    private NestedArchive() {
+    }
+
+    /**
+     * Streams the class entries of the archive read from the specified
+     * stream, and of the archives nested in it, to the specified
+     * visitor, in stream order.  The stream is not closed.
+     *
+     * @param in Contents of the nested archive.
+     * @param fileManager File manager whose file filter applies.
+     * @param visitor Class entry visitor.
+     * @throws IOException If the archive cannot be read.
+     */
+    static void read(InputStream in, FileManager_T fileManager, Visitor visitor)
+        throws IOException {
+
+        ZipInputStream zip = new ZipInputStream(in);
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            if (fileManager.acceptClassFileName(entry.getName())) {
+                visitor.visitClass(entry, zip);
+            } else if (fileManager.acceptJarFileName(entry.getName())) {
+                read(zip, fileManager, visitor);
+            }
+        }
+    }
+}
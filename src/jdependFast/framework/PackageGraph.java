@@ -0,0 +1,252 @@
+package jdependFast.framework;
+
+import java.util.*;
+
+/**
+ * The <code>PackageGraph</code> class is a compact snapshot of the
+ * package dependency graph.
+ * <p>
+ * Each package is interned to an <code>int</code> id, and the
+ * efferents and afferents of all packages are stored in compressed
+ * sparse row form: the dependencies of package <code>id</code> are
+ * the entries <code>offsets[id]</code> up to <code>offsets[id + 1]</code>
+ * of a single target array.  Couplings, instability, and cycle
+ * detection then run over primitive arrays instead of object lists,
+ * and the reports read the metrics of each package from here.
+ * <p>
+ * The graph does not follow later changes to the packages it was
+ * built from.
+ */
+
+public class PackageGraph {
+
+    private JavaPackage_T[] packages;
+    private Map ids;
+    private int[] efferentOffsets;
+    private int[] efferentTargets;
+    private int[] afferentOffsets;
+    private int[] afferentTargets;
+
+    private int[] component;
+    private boolean[] inCycle;
+    private boolean[] reachesCycle;
+
+
+    /**
+     * Constructs a <code>PackageGraph</code> instance holding the
+     * specified packages and every package reachable from them.
+     *
+     * @param roots Collection of <code>JavaPackage_T</code> instances.
+     */
+    public PackageGraph(Collection roots) {
+
+        ids = new HashMap();
+        List nodes = new ArrayList(roots.size());
+        for (Iterator i = roots.iterator(); i.hasNext();) {
+            intern(i.next(), nodes);
+        }
+
+        int edges = 0;
+        for (int n = 0; n < nodes.size(); n++) {
+            Collection efferents = ((JavaPackage_T)nodes.get(n)).getEfferents();
+            for (Iterator i = efferents.iterator(); i.hasNext();) {
+                intern(i.next(), nodes);
+            }
+            edges += efferents.size();
+        }
+
+        int count = nodes.size();
+        packages = (JavaPackage_T[])nodes.toArray(new JavaPackage_T[count]);
+
+        efferentOffsets = new int[count + 1];
+        efferentTargets = new int[edges];
+        int[] afferentCounts = new int[count];
+        int e = 0;
+        for (int n = 0; n < count; n++) {
+            efferentOffsets[n] = e;
+            for (Iterator i = packages[n].getEfferents().iterator(); i.hasNext();) {
+                int target = getId(i.next());
+                efferentTargets[e++] = target;
+                afferentCounts[target]++;
+            }
+        }
+        efferentOffsets[count] = e;
+
+        //
+        // Afferents are the transpose of the efferents, so that only
+        // dependencies between packages of this graph are counted
+        //
+        afferentOffsets = new int[count + 1];
+        for (int n = 0; n < count; n++) {
+            afferentOffsets[n + 1] = afferentOffsets[n] + afferentCounts[n];
+        }
+        afferentTargets = new int[edges];
+        int[] fill = new int[count];
+        System.arraycopy(afferentOffsets, 0, fill, 0, count);
+        for (int n = 0; n < count; n++) {
+            for (int k = efferentOffsets[n]; k < efferentOffsets[n + 1]; k++) {
+                afferentTargets[fill[efferentTargets[k]]++] = n;
+            }
+        }
+    }
+
+    private void intern(Object jPackage, List nodes) {
+        String name = ((JavaPackage_T)jPackage).getName();
+        if (!ids.containsKey(name)) {
+            ids.put(name, Integer.valueOf(nodes.size()));
+            nodes.add(jPackage);
+        }
+    }
+
+    /**
+     * @return The number of packages in the graph.
+     */
+    public int size() {
+        return packages.length;
+    }
+
+    /**
+     * Returns the id of the specified package.
+     *
+     * @param jPackage Package, or package name.
+     * @return Package id, or -1 if the package is not in the graph.
+     */
+    public int getId(Object jPackage) {
+        Object name = jPackage instanceof JavaPackage_T
+            ? ((JavaPackage_T)jPackage).getName() : jPackage;
+        Integer id = (Integer)ids.get(name);
+        return id == null ? -1 : id.intValue();
+    }
+
+    public JavaPackage_T getPackage(int id) {
+        return packages[id];
+    }
+
+    public String getName(int id) {
+        return packages[id].getName();
+    }
+
+    /**
+     * @return The ids of the packages the specified package depends upon.
+     */
+    public int[] getEfferents(int id) {
+        return slice(efferentTargets, efferentOffsets, id);
+    }
+
+    /**
+     * @return The ids of the packages that depend upon the specified package.
+     */
+    public int[] getAfferents(int id) {
+        return slice(afferentTargets, afferentOffsets, id);
+    }
+
+    private static int[] slice(int[] targets, int[] offsets, int id) {
+        int[] slice = new int[offsets[id + 1] - offsets[id]];
+        System.arraycopy(targets, offsets[id], slice, 0, slice.length);
+        return slice;
+    }
+
+    /**
+     * @return The afferent coupling (Ca) of the specified package.
+     */
+    public int afferentCoupling(int id) {
+        return afferentOffsets[id + 1] - afferentOffsets[id];
+    }
+
+    /**
+     * @return The efferent coupling (Ce) of the specified package.
+     */
+    public int efferentCoupling(int id) {
+        return efferentOffsets[id + 1] - efferentOffsets[id];
+    }
+
+    /**
+     * @return Instability (0-1) of the specified package.
+     */
+    public float instability(int id) {
+
+        float totalCoupling = (float) efferentCoupling(id)
+                + (float) afferentCoupling(id);
+
+        if (totalCoupling > 0) {
+            return efferentCoupling(id)/totalCoupling;
+        }
+
+        return 0;
+    }
+
+    /**
+     * @return The abstractness (0-1) of the specified package.
+     */
+    public float abstractness(int id) {
+        return packages[id].abstractness();
+    }
+
+    /**
+     * @return The distance from the main sequence (D) of the specified
+     *         package.
+     */
+    public float distance(int id) {
+        float d = Math.abs(abstractness(id) + instability(id) - 1);
+        return d * packages[id].getVolatility();
+    }
+
+    /**
+     * @return The strongly connected component of the specified package.
+     */
+    public int getComponent(int id) {
+        computeComponents();
+        return component[id];
+    }
+
+    /**
+     * @return <code>true</code> if the specified package participates
+     *         in a dependency cycle.
+     */
+    public boolean isInCycle(int id) {
+        computeComponents();
+        return inCycle[component[id]];
+    }
+
+    /**
+     * @return <code>true</code> if a dependency cycle can be reached
+     *         from the specified package.
+     */
+    public boolean containsCycle(int id) {
+        computeComponents();
+        return reachesCycle[component[id]];
+    }
+
+    /**
+     * @return <code>true</code> if the graph contains one or more
+     *         dependency cycles.
+     */
+    public boolean containsCycles() {
+        computeComponents();
+        for (int c = 0; c < inCycle.length; c++) {
+            if (inCycle[c]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void computeComponents() {
+        if (component != null) {
+            return;
+        }
+
+        int count = packages.length;
+        int[] component = new int[count];
+        boolean[] inCycle = new boolean[count];
+        boolean[] reachesCycle = new boolean[count];
+        int components = CycleDetector.components(efferentOffsets,
+            efferentTargets, component, inCycle, reachesCycle);
+
+        this.inCycle = new boolean[components];
+        this.reachesCycle = new boolean[components];
+        System.arraycopy(inCycle, 0, this.inCycle, 0, components);
+        System.arraycopy(reachesCycle, 0, this.reachesCycle, 0, components);
+        this.component = component;
+    }
+}
@@ -0,0 +1,298 @@
+package jdependFast.framework;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+/**
+ * The <code>ParseCache</code> class keeps the parsed form of class
+ * files in a cache directory so that subsequent analyses only parse
+ * the classes that changed.
+ * <p>
+ * Loose class files are keyed by path and validated by size and
+ * modification time.  Jar, war, and zip entries are keyed by archive
+ * path and entry name and validated by size and the CRC-32 content
+ * hash recorded in the archive's central directory.
+ * <p>
+ * The cache is bound to the package filter in effect when it was
+ * written, since filtered imports are never recorded; a cache written
+ * under a different filter is discarded.
+ * <p>
+ * A cache constructed without a directory is kept in memory alone, 
+ * and can be shared by any number of analyses, one after another or
+ * at once, under the same package filter.  Every entry is kept, 
+ * whether or not its file was seen again, and saving it does nothing.
+ */
+
+public class ParseCache {
+
+    public static final String CACHE_FILE = "jdepend-parse.cache";
+
+    private static final int MAGIC = 0x4A444350;
+    private static final int VERSION = 1;
+
+    private File directory;
+    private String filterKey;
+    private Map previous;
+    private Map current;
+    private int hits;
+    private int misses;
+
+
+    /**
+     * Constructs a <code>ParseCache</code> instance stored in the
+     * specified directory, loading its previous contents if they
+     * were written under the same package filter.
+     *
+     * @param directory Cache directory.
+     * @param filter Package filter.
+     */
+    public ParseCache(File directory, PackageFilter_T filter) {
+        this.directory = directory;
+        this.filterKey = toKey(filter);
+        this.previous = new HashMap();
+        this.current = new ConcurrentHashMap();
+        load();
+    }
+
+    /**
+     * Constructs a <code>ParseCache</code> instance kept in memory, 
+     * for analyses under the specified package filter.
+     *
+     * @param filter Package filter.
+     */
+    public ParseCache(PackageFilter_T filter) {
+        this.filterKey = toKey(filter);
+        this.current = new ConcurrentHashMap();
+        this.previous = current;
+    }
+
+    /**
+     * Returns the cached class parsed from the specified class file,
+     * or <code>null</code> if the file is not cached or has changed.
+     */
+    public JavaClass_T get(File file) {
+        return get(file.getPath(), file.length(), file.lastModified());
+    }
+
+    public void put(File file, JavaClass_T jClass) {
+        put(file.getPath(), file.length(), file.lastModified(), jClass);
+    }
+
+    /**
+     * Returns the cached class parsed from the specified archive entry,
+     * or <code>null</code> if the entry is not cached or has changed.
+     */
+    public JavaClass_T get(JarFile file, ZipEntry entry) {
+        return get(file.getName() + "!" + entry.getName(),
+            entry.getSize(), entry.getCrc());
+    }
+
+    public void put(JarFile file, ZipEntry entry, JavaClass_T jClass) {
+        put(file.getName() + "!" + entry.getName(),
+            entry.getSize(), entry.getCrc(), jClass);
+    }
+
+    private JavaClass_T get(String key, long size, long stamp) {
+        Entry entry = (Entry) previous.get(key);
+        if (entry == null || entry.size != size || entry.stamp != stamp) {
+            synchronized (this) {
+                misses++;
+            }
+            return null;
+        }
+
+        current.put(key, entry);
+        synchronized (this) {
+            hits++;
+        }
+        return entry.toJavaClass();
+    }
+
+    private void put(String key, long size, long stamp, JavaClass_T jClass) {
+        current.put(key, new Entry(size, stamp, jClass));
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return Number of cached classes.
+     */
+    public int size() {
+        return current.size();
+    }
+
+    /**
+     * Writes the entries used or added since this cache was loaded,
+     * dropping those of files that were not seen again.  A cache kept
+     * in memory is left as it is.
+     *
+     * @throws IOException If the cache file cannot be written.
+     */
+    public void save() throws IOException {
+
+        if (directory == null) {
+            return;
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Invalid cache directory: " + directory);
+        }
+
+        File temp = File.createTempFile(CACHE_FILE, ".tmp", directory);
+        try {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(filterKey);
+                out.writeInt(current.size());
+                for (Iterator i = current.entrySet().iterator(); i.hasNext();) {
+                    Map.Entry e = (Map.Entry) i.next();
+                    out.writeUTF((String) e.getKey());
+                    ((Entry) e.getValue()).write(out);
+                }
+            } finally {
+                out.close();
+            }
+            replace(temp, new File(directory, CACHE_FILE));
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Replaces the specified file with the specified temporary file of
+     * the same directory in one atomic rename where the file system 
+     * supports it, so that processes sharing the directory read either
+     * file whole and never a file being written.
+     */
+    static void replace(File temp, File file) throws IOException {
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void load() {
+
+        File file = new File(directory, CACHE_FILE);
+        if (!file.isFile()) {
+            return;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || !in.readUTF().equals(filterKey)) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                previous.put(key, Entry.read(in));
+            }
+        } catch (IOException ioe) {
+            previous.clear();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    static String toKey(PackageFilter_T filter) {
+        List names = new ArrayList(filter.getFilters());
+        Collections.sort(names);
+        return names.toString();
+    }
+
+    static class Entry {
+
+        private long size;
+        private long stamp;
+        private String name;
+        private String packageName;
+        private boolean isAbstract;
+        private String sourceFile;
+        private String[] imports;
+
+        Entry(long size, long stamp, JavaClass_T jClass) {
+            this.size = size;
+            this.stamp = stamp;
+            this.name = jClass.getName();
+            this.packageName = jClass.getPackageName();
+            this.isAbstract = jClass.isAbstract();
+            this.sourceFile = jClass.getSourceFile();
+
+            Collection packages = jClass.getImportedPackages();
+            this.imports = new String[packages.size()];
+            int index = 0;
+            for (Iterator i = packages.iterator(); i.hasNext();) {
+                imports[index++] = ((JavaPackage_T) i.next()).getName();
+            }
+        }
+
+        private Entry() {
+        }
+
+        JavaClass_T toJavaClass() {
+            JavaClass_T jClass = new JavaClass_T(name);
+            jClass.setPackageName(packageName);
+            jClass.isAbstract(isAbstract);
+            jClass.setSourceFile(sourceFile);
+            for (int i = 0; i < imports.length; i++) {
+                jClass.addImportedPackage(new JavaPackage_T(imports[i]));
+            }
+            return jClass;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(size);
+            out.writeLong(stamp);
+            out.writeUTF(name);
+            out.writeUTF(packageName);
+            out.writeBoolean(isAbstract);
+            out.writeUTF(sourceFile);
+            out.writeShort(imports.length);
+            for (int i = 0; i < imports.length; i++) {
+                out.writeUTF(imports[i]);
+            }
+        }
+
+        static Entry read(DataInputStream in) throws IOException {
+            Entry entry = new Entry();
+            entry.size = in.readLong();
+            entry.stamp = in.readLong();
+            entry.name = in.readUTF();
+            entry.packageName = in.readUTF();
+            entry.isAbstract = in.readBoolean();
+            entry.sourceFile = in.readUTF();
+            entry.imports = new String[in.readUnsignedShort()];
+            for (int i = 0; i < entry.imports.length; i++) {
+                entry.imports[i] = in.readUTF();
+            }
+            return entry;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package jdependFast.framework;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The <code>VirtualThreads</code> class creates the executors that list
+ * directories and read class and jar files in the I/O execution mode.
+ * <p>
+ * On a runtime with virtual threads, each task runs on a virtual thread
+ * of its own, so that thousands of reads can wait on a slow or remote
+ * file system at once while only a few carrier threads are used.  The
+ * executor is looked up reflectively, so that the project still builds
+ * and runs on runtimes without virtual threads, where a pool of
+ * <code>FALLBACK_THREADS</code> daemon threads is used instead.
+ */
+
+public final class VirtualThreads {
+
+    /**
+     * Number of platform threads of the executor used when virtual
+     * threads are not available.
+     */
+    public static final int FALLBACK_THREADS = 256;
+
+    private static final Method FACTORY = lookup();
+
+    private VirtualThreads() {
+    }
+
+    private static Method lookup() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if this runtime has virtual threads.
+     */
+    public static boolean isAvailable() {
+        return FACTORY != null;
+    }
+
+    /**
+     * Returns a new executor that runs each task on a virtual thread,
+     * or on one of <code>FALLBACK_THREADS</code> daemon threads if this
+     * runtime has no virtual threads.  The caller shuts it down.
+     *
+     * @return I/O executor.
+     */
+    public static ExecutorService newExecutor() {
+        if (FACTORY != null) {
+            try {
+                return (ExecutorService) FACTORY.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // fall back to platform threads
+            }
+        }
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(FALLBACK_THREADS,
+            FALLBACK_THREADS, 10, TimeUnit.SECONDS, new LinkedBlockingQueue(),
+            new IoThreadFactory());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static class IoThreadFactory implements ThreadFactory {
+
+        private AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "jdepend-io-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -2,12 +2,16 @@ package jdependFast.textui;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.text.NumberFormat;
 
+import jdependFast.framework.AnalysisMetrics;
 import jdependFast.framework.JavaClass_T;
 import jdependFast.framework.JavaPackage_T;
 import jdependFast.framework.PackageComparator_T;
 import jdependFast.framework.PackageFilter_T;
+import jdependFast.framework.PackageGraph;
+import jdependFast.framework.ParseCache;
 
 public class JDepend_T {
 
@@ -17,6 +21,14 @@ public class JDepend_T {
 
     protected NumberFormat formatter;
 
+    private boolean printMetrics;
+
+    private boolean printDuplicates;
+
+    private File snapshotFile;
+
+    private File loadedSnapshot;
+
     /**
      * Constructs a <code>JDepend</code> instance using standard output.
      */
@@ -78,6 +90,138 @@ public class JDepend_T {
         analyzer.addDirectory(name);
     }
 
+    /**
+     * Sets the directory in which parsed classes are cached between
+     * runs.
+     * 
+     * @param directory Cache directory.
+     */
+    public void setCacheDirectory(String directory) {
+        analyzer.setCacheDirectory(new File(directory));
+    }
+
+    /**
+     * Sets the directory in which the classes of each jar file are 
+     * summarized, keyed by the hash of its contents, between runs.
+     * 
+     * @param directory Summary directory.
+     */
+    public void setSummaryDirectory(String directory) {
+        analyzer.setSummaryDirectory(new File(directory));
+    }
+
+    /**
+     * Writes a snapshot of the analyzed packages, with their classes,
+     * to the specified file once the analysis completes.
+     * 
+     * @param file Snapshot file.
+     */
+    public void setSnapshotFile(String file) {
+        this.snapshotFile = new File(file);
+    }
+
+    /**
+     * Reports the packages of the specified snapshot, in place of an 
+     * analysis of the registered directories.
+     * 
+     * @param file Snapshot file.
+     */
+    public void loadSnapshot(String file) {
+        this.loadedSnapshot = new File(file);
+    }
+
+    /**
+     * Sets a parse cache shared with other analyses, in place of the 
+     * cache directory.
+     * 
+     * @param cache Parse cache built for this instance's package filter.
+     */
+    public void setParseCache(ParseCache cache) {
+        analyzer.setParseCache(cache);
+    }
+
+    /**
+     * Sets the writer that class and jar files skipped because they 
+     * cannot be read or parsed are reported to, in place of the 
+     * standard error stream.
+     * 
+     * @param errors Error writer.
+     */
+    public void setErrorWriter(PrintWriter errors) {
+        analyzer.setErrorWriter(errors);
+    }
+
+    /**
+     * Sets the fork/join pool the analysis runs on, which is left 
+     * running once the analysis completes.
+     * 
+     * @param executor Fork/join pool.
+     */
+    public void setExecutor(ForkJoinPool executor) {
+        analyzer.setExecutor(executor);
+    }
+
+    /**
+     * Analyzes the directories through a staged pipeline using the 
+     * specified number of parsing threads.
+     * 
+     * @param parseThreads Number of parsing threads.
+     */
+    public void setPipeline(int parseThreads) {
+        setPipeline(1, parseThreads);
+    }
+
+    /**
+     * Analyzes the directories through a staged pipeline using the 
+     * specified numbers of loading and parsing threads.
+     * 
+     * @param loadThreads Number of threads reading class and jar files.
+     * @param parseThreads Number of parsing threads.
+     */
+    public void setPipeline(int loadThreads, int parseThreads) {
+        analyzer.setPipeline(loadThreads, parseThreads);
+    }
+
+    /**
+     * Folds each class into its package as soon as it is parsed and 
+     * discards it, in which case the abstract and concrete class 
+     * listings of each package are left empty.
+     */
+    public void setStreaming() {
+        analyzer.setRetainClasses(false);
+    }
+
+    /**
+     * Lists directories and reads class files on virtual threads, for
+     * directories on network file systems, while the classes are 
+     * parsed on the fork/join pool.
+     */
+    public void setIoThreads() {
+        analyzer.setIoThreads(true);
+    }
+
+    /**
+     * Analyzes the first copy only of each class found more than once.
+     * 
+     * @param report <code>true</code> to list the duplicates dropped 
+     *               after the summary; <code>false</code> otherwise.
+     */
+    public void setDeduplicate(boolean report) {
+        analyzer.deduplicateClasses(true);
+        this.printDuplicates = report;
+    }
+
+    /**
+     * Determines whether the timings and counts of the analysis are
+     * reported after the summary.
+     * 
+     * @param b <code>true</code> to report them; <code>false</code>
+     *          otherwise.
+     */
+    public void setPrintMetrics(boolean b) {
+        this.printMetrics = b;
+    }
+
     /**
      * Determines whether inner classes are analyzed.
      * 
@@ -94,9 +238,22 @@ public class JDepend_T {
      */
     public void analyze() {
 
-        printHeader();
+        Collection packages = null;
+        try {
+            if (loadedSnapshot != null) {
+                packages = analyzer.loadSnapshot(loadedSnapshot);
+            } else {
+                packages = analyzer.analyze();
+            }
+            if (snapshotFile != null) {
+                analyzer.writeSnapshot(snapshotFile, true);
+            }
+        } catch (IOException ioe) {
+            fail(ioe.getMessage());
+            return;
+        }
 
-        Collection packages = analyzer.analyze();
+        printHeader();
 
         ArrayList packageList = new ArrayList(packages);
 
@@ -109,6 +266,14 @@ public class JDepend_T {
 
         printSummary(packageList);
 
+        if (printDuplicates) {
+            printDuplicates(analyzer.getDuplicates());
+        }
+
+        if (printMetrics) {
+            printMetrics(analyzer.getMetrics());
+        }
+
         printFooter();
 
         getWriter().flush();
@@ -129,7 +294,7 @@ public class JDepend_T {
 
         printPackageHeader(jPackage);
 
-        if (jPackage.getClasses().size() == 0) {
+        if (jPackage.getClassCount() == 0) {
             printNoStats();
             printPackageFooter(jPackage);
             return;
@@ -237,13 +402,13 @@ public class JDepend_T {
 
     protected void printCycle(JavaPackage_T jPackage) {
 
-        List list = new ArrayList();
-        jPackage.collectCycle(list);
-
         if (!jPackage.containsCycle()) {
             return;
         }
 
+        List list = new ArrayList();
+        jPackage.collectCycle(list);
+
         JavaPackage_T cyclePackage = (JavaPackage_T) list.get(list.size() - 1);
         String cyclePackageName = cyclePackage.getName();
 
@@ -313,16 +478,26 @@ public class JDepend_T {
                 .println(
                         tab() + "Abstract Classes: "
                                 + jPackage.getAbstractClassCount());
+        PackageGraph graph = getPackageGraph();
+        int id = graph.getId(jPackage);
         getWriter().println("");
-        getWriter().println(tab() + "Ca: " + jPackage.afferentCoupling());
-        getWriter().println(tab() + "Ce: " + jPackage.efferentCoupling());
+        getWriter().println(tab() + "Ca: " + graph.afferentCoupling(id));
+        getWriter().println(tab() + "Ce: " + graph.efferentCoupling(id));
         getWriter().println("");
         getWriter().println(
-                tab() + "A: " + toFormattedString(jPackage.abstractness()));
+                tab() + "A: " + toFormattedString(graph.abstractness(id)));
         getWriter().println(
-                tab() + "I: " + toFormattedString(jPackage.instability()));
+                tab() + "I: " + toFormattedString(graph.instability(id)));
         getWriter().println(
-                tab() + "D: " + toFormattedString(jPackage.distance()));
+                tab() + "D: " + toFormattedString(graph.distance(id)));
+    }
+
+    /**
+     * @return The dependency graph of the analyzed packages, from which
+     *         the couplings and derived metrics are reported.
+     */
+    protected PackageGraph getPackageGraph() {
+        return analyzer.getPackageGraph();
     }
 
     protected void printClassName(JavaClass_T jClass) {
@@ -414,21 +589,116 @@ public class JDepend_T {
                 .println(
                         "Name, Class Count, Abstract Class Count, Ca, Ce, A, I, D, V:\n");
 
+        PackageGraph graph = getPackageGraph();
         Iterator i = packages.iterator();
         while (i.hasNext()) {
             JavaPackage_T jPackage = (JavaPackage_T) i.next();
+            int id = graph.getId(jPackage);
             getWriter().print(jPackage.getName() + ",");
             getWriter().print(jPackage.getClassCount() + ",");
             getWriter().print(jPackage.getAbstractClassCount() + ",");
-            getWriter().print(jPackage.afferentCoupling() + ",");
-            getWriter().print(jPackage.efferentCoupling() + ",");
-            getWriter().print(toFormattedString(jPackage.abstractness()) + ",");
-            getWriter().print(toFormattedString(jPackage.instability()) + ",");
-            getWriter().print(toFormattedString(jPackage.distance()) + ",");
+            getWriter().print(graph.afferentCoupling(id) + ",");
+            getWriter().print(graph.efferentCoupling(id) + ",");
+            getWriter().print(toFormattedString(graph.abstractness(id)) + ",");
+            getWriter().print(toFormattedString(graph.instability(id)) + ",");
+            getWriter().print(toFormattedString(graph.distance(id)) + ",");
             getWriter().println(jPackage.getVolatility());
         }
     }
 
+    protected void printDuplicates(Map duplicates) {
+        getWriter().println(
+                "\n--------------------------------------------------");
+        getWriter().println("- Duplicates:");
+        getWriter().println(
+                "--------------------------------------------------\n");
+
+        if (duplicates.isEmpty()) {
+            getWriter().println("No duplicates.");
+            return;
+        }
+        for (Iterator i = duplicates.entrySet().iterator(); i.hasNext();) {
+            Map.Entry e = (Map.Entry) i.next();
+            getWriter().println(e.getKey());
+            getWriter().println(tab() + "duplicates " + e.getValue());
+        }
+    }
+
+    protected void printMetrics(AnalysisMetrics metrics) {
+        getWriter().println(
+                "\n--------------------------------------------------");
+        getWriter().println("- Metrics:");
+        getWriter().println(
+                "--------------------------------------------------\n");
+
+        getWriter().println("Phase times (ms):");
+        Map phases = metrics.getPhaseTimes();
+        for (Iterator i = phases.keySet().iterator(); i.hasNext();) {
+            String phase = (String) i.next();
+            getWriter().println(tab() + phase + ": " 
+                + toMillis(((Long) phases.get(phase)).longValue()));
+        }
+
+        getWriter().println("\nDirectories visited: " 
+            + metrics.getDirectoriesVisited());
+        getWriter().println("Class files visited: " 
+            + metrics.getClassFilesVisited());
+        getWriter().println("Jar files visited: " 
+            + metrics.getJarFilesVisited());
+        getWriter().println("Jar entries visited: " 
+            + metrics.getJarEntriesVisited());
+        getWriter().println("Cache hits: " + metrics.getCacheHits());
+        getWriter().println("Jar summary hits: " + metrics.getSummaryHits());
+        getWriter().println("Bytes read: " + metrics.getBytesRead() + " (" 
+            + formatter.format(metrics.getBytesPerSecond() / (1024 * 1024)) 
+            + " MB/s)");
+        getWriter().println("Classes parsed: " + metrics.getClassesParsed() 
+            + " (" + formatter.format(metrics.getClassesPerSecond()) 
+            + " classes/s)");
+
+        getWriter().println("\nThread time (ms):");
+        getWriter().println(tab() + "discovery: " 
+            + toMillis(metrics.getDiscoveryTime()));
+        getWriter().println(tab() + "reading: " 
+            + toMillis(metrics.getReadTime()));
+        getWriter().println(tab() + "parsing: " 
+            + toMillis(metrics.getParseTime()));
+
+        getWriter().println("\nParse latency (us):");
+        double[] percentiles = { 50, 90, 99, 100 };
+        for (int i = 0; i < percentiles.length; i++) {
+            getWriter().println(tab() + "p" + (int) percentiles[i] + ": " 
+                + formatter.format(
+                    metrics.getParseLatency(percentiles[i]) / 1e3));
+        }
+
+        Collection queues = metrics.getQueues();
+        if (!queues.isEmpty()) {
+            getWriter().println("\nQueue depth (max, average):");
+            for (Iterator i = queues.iterator(); i.hasNext();) {
+                String queue = (String) i.next();
+                getWriter().println(tab() + queue + ": " 
+                    + metrics.getMaxQueueDepth(queue) + ", " 
+                    + formatter.format(metrics.getAverageQueueDepth(queue)));
+            }
+        }
+
+        Collection pools = metrics.getPools();
+        if (!pools.isEmpty()) {
+            getWriter().println("\nThread utilization:");
+            for (Iterator i = pools.iterator(); i.hasNext();) {
+                String pool = (String) i.next();
+                getWriter().println(tab() + pool + ": " 
+                    + Math.round(100 * metrics.getThreadUtilization(pool)) 
+                    + "% of " + metrics.getPoolThreads(pool) + " threads");
+            }
+        }
+    }
+
+    private String toMillis(long nanos) {
+        return formatter.format(nanos / 1e6);
+    }
+
     protected void printSectionBreak() {
         getWriter().println("");
     }
@@ -450,6 +720,16 @@ public class JDepend_T {
         return s.toString();
     }
 
+    /**
+     * Reports that the analysis failed and exits with status 1.
+     * 
+     * @param message Reason of the failure.
+     */
+    protected void fail(String message) {
+        System.err.println("\n" + message);
+        System.exit(1);
+    }
+
     protected void usage(String message) {
         if (message != null) {
             System.err.println("\n" + message);
@@ -459,7 +739,13 @@ public class JDepend_T {
         System.err.println("");
         System.err.println("usage: ");
         System.err.println(baseUsage + "[-components <components>]" +
-            " [-file <output file>] <directory> " + 
+            " [-file <output file>] [-cache <cache directory>]" +
+            " [-summaries <summary directory>]" +
+            " [-snapshot <snapshot file>] [-load <snapshot file>]" +
+            " [-pipeline [<load threads>,]<parse threads>]" +
+            " [-stream] [-iothreads]" +
+            " [-duplicates <first|report>] [-metrics]" +
+            " <directory> " + 
             "[directory2 [directory 3] ...]");
         System.exit(1);
     }
@@ -492,6 +778,61 @@ public class JDepend_T {
                         usage("Components not specified.");
                     }
                     setComponents(args[++i]);
+                } else if (args[i].equalsIgnoreCase("-cache")) {
+                    if (args.length <= i + 1) {
+                        usage("Cache directory not specified.");
+                    }
+                    setCacheDirectory(args[++i]);
+                } else if (args[i].equalsIgnoreCase("-snapshot")) {
+                    if (args.length <= i + 1) {
+                        usage("Snapshot file not specified.");
+                    }
+                    setSnapshotFile(args[++i]);
+                } else if (args[i].equalsIgnoreCase("-load")) {
+                    if (args.length <= i + 1) {
+                        usage("Snapshot file not specified.");
+                    }
+                    loadSnapshot(args[++i]);
+                    directoryCount++;
+                } else if (args[i].equalsIgnoreCase("-summaries")) {
+                    if (args.length <= i + 1) {
+                        usage("Summary directory not specified.");
+                    }
+                    setSummaryDirectory(args[++i]);
+                } else if (args[i].equalsIgnoreCase("-stream")) {
+                    setStreaming();
+                } else if (args[i].equalsIgnoreCase("-duplicates")) {
+                    if (args.length <= i + 1) {
+                        usage("Duplicate policy not specified.");
+                    }
+                    String policy = args[++i];
+                    if (policy.equalsIgnoreCase("first")) {
+                        setDeduplicate(false);
+                    } else if (policy.equalsIgnoreCase("report")) {
+                        setDeduplicate(true);
+                    } else {
+                        usage("Invalid duplicate policy: " + policy);
+                    }
+                } else if (args[i].equalsIgnoreCase("-iothreads")) {
+                    setIoThreads();
+                } else if (args[i].equalsIgnoreCase("-metrics")) {
+                    setPrintMetrics(true);
+                } else if (args[i].equalsIgnoreCase("-pipeline")) {
+                    if (args.length <= i + 1) {
+                        usage("Pipeline threads not specified.");
+                    }
+                    String threads = args[++i];
+                    int comma = threads.indexOf(',');
+                    try {
+                        if (comma < 0) {
+                            setPipeline(Integer.parseInt(threads));
+                        } else {
+                            setPipeline(Integer.parseInt(threads.substring(0, comma)),
+                                Integer.parseInt(threads.substring(comma + 1)));
+                        }
+                    } catch (NumberFormatException nfe) {
+                        usage("Invalid pipeline threads: " + args[i]);
+                    }
                 } else {
                     usage("Invalid argument: " + args[i]);
                 }
@@ -95,9 +95,15 @@ public class JDepend_main_T {
      */
     public void analyze() {
 
-        printHeader();
+        Collection packages;
+        try {
+            packages = analyzer.analyze();
+        } catch (IOException ioe) {
+            fail(ioe.getMessage());
+            return;
+        }
 
-        Collection packages = analyzer.analyze();
+        printHeader();
 
         ArrayList packageList = new ArrayList(packages);
 
@@ -130,7 +136,7 @@ public class JDepend_main_T {
 
         printPackageHeader(jPackage);
 
-        if (jPackage.getClasses().size() == 0) {
+        if (jPackage.getClassCount() == 0) {
             printNoStats();
             printPackageFooter(jPackage);
             return;
@@ -238,13 +244,13 @@ public class JDepend_main_T {
 
     protected void printCycle(JavaPackage_T jPackage) {
 
-        List list = new ArrayList();
-        jPackage.collectCycle(list);
-
         if (!jPackage.containsCycle()) {
             return;
         }
 
+        List list = new ArrayList();
+        jPackage.collectCycle(list);
+
         JavaPackage_T cyclePackage = (JavaPackage_T) list.get(list.size() - 1);
         String cyclePackageName = cyclePackage.getName();
 
@@ -451,6 +457,16 @@ public class JDepend_main_T {
         return s.toString();
     }
 
+    /**
+     * Reports that the analysis failed and exits with status 1.
+     * 
+     * @param message Reason of the failure.
+     */
+    protected void fail(String message) {
+        System.err.println("\n" + message);
+        System.exit(1);
+    }
+
     protected void usage(String message) {
         if (message != null) {
             System.err.println("\n" + message);
@@ -517,13 +533,15 @@ public class JDepend_main_T {
     	int n = 10;
     	long par = 0;
     	long seq = 0;long t0=0;
+    	JDepend_main_T main = null;
     	for (int i = 0; i<n; i++)
     	{
     		t0 = System.currentTimeMillis();
     		new JDepend().instanceMain(args);
     		seq = System.currentTimeMillis()-t0;
     		t0=System.currentTimeMillis();
-    		new JDepend_main_T().instanceMain(args);
+    		main = new JDepend_main_T();
+    		main.instanceMain(args);
     		par=System.currentTimeMillis()-t0;
     	}
     	try {
@@ -536,7 +554,7 @@ public class JDepend_main_T {
 			e.printStackTrace();
 		}
     	double imp = ((double)(seq-par))/seq;
-    	System.out.println("Time improvement num classes: "+jdependFast.framework.JDepend_T.size+" is: "+imp);
+    	System.out.println("Time improvement num classes: "+main.analyzer.getClassCount()+" is: "+imp);
     }
     
     static boolean compareFiles(String f1, String f2) throws IOException
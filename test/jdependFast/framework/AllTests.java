@@ -0,0 +1,39 @@
+package jdependFast.framework;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class AllTests {
+
+    public static Test suite() {
+
+        TestSuite suite = new TestSuite("JDepend Fast Tests");
+
+        suite.addTestSuite(AnalysisDaemonTest.class);
+        suite.addTestSuite(AnalysisEventsTest.class);
+        suite.addTestSuite(AnalysisMetricsTest.class);
+        suite.addTestSuite(AnalysisPipelineTest.class);
+        suite.addTestSuite(ConcurrentAnalysisTest.class);
+        suite.addTestSuite(CycleTest.class);
+        suite.addTestSuite(DeduplicationTest.class);
+        suite.addTestSuite(JarSummaryStoreTest.class);
+        suite.addTestSuite(ModuleImageTest.class);
+        suite.addTestSuite(AnalysisSnapshotTest.class);
+        suite.addTestSuite(ClassFileParserTest.class);
+        suite.addTestSuite(DiscoveryIndexTest.class);
+        suite.addTestSuite(FileManagerTest.class);
+        suite.addTestSuite(IncrementalUpdateTest.class);
+        suite.addTestSuite(IoThreadsTest.class);
+        suite.addTestSuite(NestedArchiveTest.class);
+        suite.addTestSuite(PackageGraphTest.class);
+        suite.addTestSuite(ParallelLinkTest.class);
+        suite.addTestSuite(ParseCacheTest.class);
+        suite.addTestSuite(StreamingAnalysisTest.class);
+
+        return suite;
+    }
+
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,181 @@
+package jdependFast.framework;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import jdepend.framework.JDependTestCase;
+import jdependFast.daemon.AnalysisClient;
+import jdependFast.daemon.AnalysisDaemon;
+
+public class AnalysisDaemonTest extends JDependTestCase {
+
+    private File tokenFile;
+    private AnalysisDaemon daemon;
+    private Thread thread;
+    private AnalysisClient client;
+
+    public AnalysisDaemonTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() {
+        super.setUp();
+        try {
+            tokenFile = new File(Files.createTempDirectory("jdepend-daemon").toFile(),
+                "daemon.token");
+            daemon = new AnalysisDaemon(0, tokenFile);
+        } catch (IOException ioe) {
+            fail(ioe.getMessage());
+        }
+        thread = new Thread(new Runnable() {
+            public void run() {
+                daemon.run();
+            }
+        });
+        thread.start();
+        client = new AnalysisClient(daemon.getPort(), tokenFile);
+    }
+
+    protected void tearDown() {
+        daemon.stop();
+        tokenFile.getParentFile().delete();
+        super.tearDown();
+    }
+
+    public void testReportsMatchDirectAnalysis() throws IOException {
+
+        StringWriter text = new StringWriter();
+        jdependFast.textui.JDepend_T direct =
+            new jdependFast.textui.JDepend_T(new PrintWriter(text));
+        direct.addDirectory(getTestDataDir() + "test.jar");
+        direct.analyze();
+
+        StringWriter xml = new StringWriter();
+        jdependFast.xmlui.JDepend_T directXml =
+            new jdependFast.xmlui.JDepend_T(new PrintWriter(xml));
+        directXml.addDirectory(getTestDataDir() + "test.jar");
+        directXml.analyze();
+
+        assertEquals(text.toString(), request(new String[] { "test.jar" }));
+        assertEquals(xml.toString(), request(new String[] { "-xml", "test.jar" }));
+    }
+
+    public void testCacheIsSharedBetweenRequests() throws IOException {
+
+        request(new String[] { "test.jar" });
+        assertEquals(0, daemon.getParseCache().getHits());
+        int cached = daemon.getParseCache().size();
+        assertTrue(cached > 0);
+
+        request(new String[] { "test.jar" });
+        assertEquals(cached, daemon.getParseCache().getHits());
+        assertEquals(cached, daemon.getParseCache().size());
+    }
+
+    public void testInvalidArguments() throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int status = client.analyze(new File(getTestDataDir()),
+            new String[] { "-bogus", "test.jar" }, out, err);
+
+        assertEquals(1, status);
+        assertTrue(err.toString("UTF-8").indexOf("-bogus") >= 0);
+    }
+
+    public void testSkippedFilesAreReportedToClient() throws IOException {
+
+        File directory = new File(tokenFile.getParentFile(), "classes");
+        File jar = new File(directory, "bad.jar");
+        directory.mkdir();
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jar));
+        zip.putNextEntry(new ZipEntry("p/Truncated.class"));
+        zip.write(new byte[] { (byte) 0xCA, (byte) 0xFE });
+        zip.closeEntry();
+        zip.close();
+        try {
+            String[][] modes = { {}, { "-iothreads" }, { "-pipeline", "2" } };
+            for (int i = 0; i < modes.length; i++) {
+                String[] args = new String[modes[i].length + 1];
+                System.arraycopy(modes[i], 0, args, 0, modes[i].length);
+                args[modes[i].length] = "classes";
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ByteArrayOutputStream err = new ByteArrayOutputStream();
+                int status = client.analyze(tokenFile.getParentFile(), args, out, err);
+
+                assertEquals(0, status);
+                assertTrue(err.toString("UTF-8"), err.toString("UTF-8").indexOf(
+                    jar.getPath() + "!p/Truncated.class: Truncated class file") >= 0);
+            }
+        } finally {
+            jar.delete();
+            directory.delete();
+        }
+    }
+
+    public void testTokenFileIsOwnerOnly() throws IOException {
+
+        assertEquals(tokenFile, daemon.getTokenFile());
+        try {
+            assertEquals(PosixFilePermissions.fromString("rw-------"),
+                Files.getPosixFilePermissions(tokenFile.toPath()));
+        } catch (UnsupportedOperationException notPosix) {
+        }
+    }
+
+    public void testInvalidToken() throws Exception {
+
+        File forged = new File(tokenFile.getParentFile(), "forged.token");
+        Files.write(forged.toPath(), new byte[Files.readAllBytes(tokenFile.toPath()).length]);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            int status = new AnalysisClient(daemon.getPort(), forged).analyze(
+                new File(getTestDataDir()), new String[] { "-stop" }, out, err);
+
+            assertEquals(1, status);
+            assertTrue(err.toString("UTF-8").indexOf("token") >= 0);
+            thread.join(500);
+            assertTrue(thread.isAlive());
+            request(new String[] { "test.jar" });
+        } finally {
+            forged.delete();
+        }
+    }
+
+    public void testFileIsWrittenByClient() throws IOException {
+
+        File report = new File(tokenFile.getParentFile(), "report.txt");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int status = client.analyze(new File(getTestDataDir()),
+            new String[] { "-file", report.getPath(), "test.jar" }, out, err);
+
+        assertEquals(1, status);
+        assertFalse(report.exists());
+        assertTrue(err.toString("UTF-8").indexOf("-file") >= 0);
+    }
+
+    public void testStop() throws Exception {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(0, client.analyze(new File(getTestDataDir()),
+            new String[] { "-stop" }, out, out));
+
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+        assertFalse(tokenFile.exists());
+    }
+
+    private String request(String[] args) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int status = client.analyze(new File(getTestDataDir()), args, out, err);
+        assertEquals(err.toString("UTF-8"), 0, status);
+        return out.toString("UTF-8");
+    }
+}
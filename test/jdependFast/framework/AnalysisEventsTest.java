@@ -0,0 +1,99 @@
+package jdependFast.framework;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class AnalysisEventsTest extends AnalysisTestCase {
+
+    private static final String[] EVENTS = {
+        "jdepend.DirectoryScan", "jdepend.JarScan",
+        "jdepend.ClassParse", "jdepend.AnalysisPhase" };
+
+    public AnalysisEventsTest(String name) {
+        super(name);
+    }
+
+    public void testEventsAreDisabledByDefault() throws IOException {
+        if (!FlightRecorder.isAvailable()) {
+            return;
+        }
+
+        Recording recording = new Recording();
+        Map counts = record(recording, new JDepend_T());
+
+        assertTrue(counts.toString(), counts.isEmpty());
+    }
+
+    public void testAnalysisEvents() throws IOException {
+        assertEvents(new JDepend_T(), 4);
+    }
+
+    public void testPipelineEvents() throws IOException {
+        JDepend_T jdepend = new JDepend_T();
+        jdepend.setPipeline(1, 2);
+        // the pipeline walks the directories during extraction
+        assertEvents(jdepend, 3);
+    }
+
+    private void assertEvents(JDepend_T jdepend, int phases) throws IOException {
+        if (!FlightRecorder.isAvailable()) {
+            return;
+        }
+
+        Recording recording = new Recording();
+        for (int i = 0; i < EVENTS.length; i++) {
+            recording.enable(EVENTS[i]);
+        }
+        Map counts = record(recording, jdepend);
+
+        int classes = jdepend.getClassCount();
+        assertEquals(Integer.valueOf(classes), counts.get("jdepend.ClassParse"));
+        assertEquals(Integer.valueOf(1), counts.get("jdepend.JarScan"));
+        assertTrue(((Integer) counts.get("jdepend.DirectoryScan")).intValue() > 0);
+        assertEquals(Integer.valueOf(phases), counts.get("jdepend.AnalysisPhase"));
+    }
+
+    private Map record(Recording recording, JDepend_T jdepend) throws IOException {
+        String[] directories = getClassDirectories();
+        for (int i = 0; i < directories.length; i++) {
+            jdepend.addDirectory(directories[i]);
+        }
+        jdepend.addDirectory(getTestJar());
+
+        recording.start();
+        jdepend.analyze();
+        recording.stop();
+
+        File file = File.createTempFile("jdepend", ".jfr");
+        try {
+            recording.dump(file.toPath());
+            recording.close();
+
+            Map counts = new HashMap();
+            List events = RecordingFile.readAllEvents(file.toPath());
+            for (Iterator i = events.iterator(); i.hasNext();) {
+                RecordedEvent event = (RecordedEvent) i.next();
+                String name = event.getEventType().getName();
+                if (!name.startsWith("jdepend.")) {
+                    continue;
+                }
+                Integer count = (Integer) counts.get(name);
+                counts.put(name, Integer.valueOf(count == null ? 1 : count.intValue() + 1));
+                if (name.equals("jdepend.ClassParse")) {
+                    assertNotNull(event.getString("className"));
+                    assertTrue(event.getInt("bytes") > 0);
+                    assertNotNull(event.getThread());
+                }
+            }
+            return counts;
+        } finally {
+            file.delete();
+        }
+    }
+}
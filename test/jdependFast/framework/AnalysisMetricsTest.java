@@ -0,0 +1,85 @@
+package jdependFast.framework;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+public class AnalysisMetricsTest extends AnalysisTestCase {
+
+    public AnalysisMetricsTest(String name) {
+        super(name);
+    }
+
+    public void testAnalysisMetrics() throws IOException {
+        assertMetrics(new JDepend_T());
+    }
+
+    public void testStreamingMetrics() throws IOException {
+        JDepend_T jdepend = new JDepend_T();
+        jdepend.setRetainClasses(false);
+        assertMetrics(jdepend);
+    }
+
+    public void testPipelineMetrics() throws IOException {
+        JDepend_T jdepend = new JDepend_T();
+        jdepend.setPipeline(1, 2);
+        AnalysisMetrics metrics = assertMetrics(jdepend);
+
+        assertTrue(metrics.getQueues().contains("parse"));
+        assertTrue(metrics.getMaxQueueDepth("parse")
+            <= ConsumerImpl.DEFAULT_CAPACITY);
+        assertEquals(2, metrics.getPoolThreads("parse"));
+    }
+
+    public void testMetricsAreReset() throws IOException {
+        JDepend_T jdepend = analyze(new JDepend_T(), getTestJar());
+        long parsed = jdepend.getMetrics().getClassesParsed();
+        jdepend.analyze();
+
+        assertEquals(parsed, jdepend.getMetrics().getClassesParsed());
+    }
+
+    public void testParseLatencyPercentiles() {
+        AnalysisMetrics metrics = new AnalysisMetrics();
+        assertEquals(0, metrics.getParseLatency(50));
+
+        for (int i = 1; i <= 1000; i++) {
+            metrics.addParse(i * 1000L);
+        }
+
+        assertEquals(1000, metrics.getClassesParsed());
+        assertWithinAnEighth(500000, metrics.getParseLatency(50));
+        assertWithinAnEighth(990000, metrics.getParseLatency(99));
+        assertWithinAnEighth(1000000, metrics.getParseLatency(100));
+        assertTrue(metrics.getParseLatency(90) <= metrics.getParseLatency(99));
+    }
+
+    private AnalysisMetrics assertMetrics(JDepend_T jdepend) throws IOException {
+        analyze(jdepend);
+
+        AnalysisMetrics metrics = jdepend.getMetrics();
+
+        assertTrue(metrics.getPhaseTime(AnalysisMetrics.EXTRACTION) > 0);
+        assertTrue(metrics.getPhaseTime(AnalysisMetrics.LINKING) > 0);
+        assertTrue(metrics.getPhaseTime(AnalysisMetrics.CYCLES) > 0);
+
+        assertTrue(metrics.getDirectoriesVisited() > 0);
+        assertEquals(1, metrics.getJarFilesVisited());
+        assertEquals(metrics.getClassFilesVisited()
+            + metrics.getJarEntriesVisited(), metrics.getClassesParsed());
+        assertTrue(metrics.getBytesRead() > 0);
+        assertTrue(metrics.getClassesPerSecond() > 0);
+        assertTrue(metrics.getParseLatency(50) <= metrics.getParseLatency(100));
+
+        for (Iterator i = metrics.getPools().iterator(); i.hasNext();) {
+            double utilization = metrics.getThreadUtilization((String) i.next());
+            assertTrue(utilization >= 0 && utilization <= 1);
+        }
+
+        return metrics;
+    }
+
+    private void assertWithinAnEighth(long expected, long actual) {
+        assertTrue(actual + " for " + expected,
+            Math.abs(actual - expected) <= expected / 8);
+    }
+}
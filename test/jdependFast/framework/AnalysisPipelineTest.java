@@ -0,0 +1,127 @@
+package jdependFast.framework;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AnalysisPipelineTest extends AnalysisTestCase {
+
+    public AnalysisPipelineTest(String name) {
+        super(name);
+    }
+
+    public void testPipelineAnalysis() throws IOException {
+
+        JDepend_T expected = analyze(new JDepend_T());
+
+        JDepend_T jdepend = new JDepend_T();
+        jdepend.setPipeline(1, 2);
+        analyze(jdepend);
+
+        assertEquals(describe(expected), describe(jdepend));
+        assertEquals(expected.containsCycles(), jdepend.containsCycles());
+    }
+
+    public void testFailedPipelineFailsAnalysis() throws IOException {
+
+        final RuntimeException failure = new IllegalStateException();
+        JDepend_T jdepend = new JDepend_T(new PackageFilter_T() {
+            public boolean accept(String packageName) {
+                throw failure;
+            }
+        });
+        jdepend.setPipeline(1, 2);
+        jdepend.addDirectory(getTestJar());
+
+        try {
+            jdepend.analyze();
+            fail("Pipeline failure");
+        } catch (IOException expected) {
+            assertSame(failure, expected.getCause());
+        } finally {
+            jdepend.shutdown();
+        }
+    }
+
+    public void testPipelineThreadsArgument() {
+
+        TextUi expected = new TextUi();
+        expected.run(new String[] { getTestJar() });
+
+        TextUi loadAndParse = new TextUi();
+        loadAndParse.run(new String[] { "-pipeline", "2,3", getTestJar() });
+        assertEquals(Arrays.asList(new String[] { "2,3" }), loadAndParse.pipelines);
+        assertEquals(expected.report.toString(), loadAndParse.report.toString());
+
+        TextUi parseOnly = new TextUi();
+        parseOnly.run(new String[] { "-pipeline", "4", getTestJar() });
+        assertEquals(Arrays.asList(new String[] { "1,4" }), parseOnly.pipelines);
+        assertEquals(expected.report.toString(), parseOnly.report.toString());
+    }
+
+    public void testFinishWaitsForQueuedItems() {
+
+        final AtomicInteger processed = new AtomicInteger();
+        ConsumerImpl consumer = new ConsumerImpl(2, 4);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(consumer.consume(new Item() {
+                public void process() {
+                    processed.incrementAndGet();
+                }
+            }));
+        }
+        consumer.finishConsumption();
+
+        assertEquals(100, processed.get());
+        assertFalse(consumer.consume(ItemProcessor.END));
+        assertNull(consumer.getFailure());
+    }
+
+    public void testFailedItemReleasesProducer() {
+
+        ConsumerImpl consumer = new ConsumerImpl(1, 1);
+        final RuntimeException failure = new IllegalStateException();
+
+        consumer.consume(new Item() {
+            public void process() {
+                throw failure;
+            }
+        });
+
+        for (int i = 0; i < 100; i++) {
+            consumer.consume(new Item() {
+                public void process() {
+                }
+            });
+        }
+        consumer.finishConsumption();
+
+        assertSame(failure, consumer.getFailure());
+        assertFalse(consumer.consume(ItemProcessor.END));
+    }
+
+    /**
+     * Text user interface recording the pipeline threads it is set to.
+     */
+    private static class TextUi extends jdependFast.textui.JDepend_T {
+
+        StringWriter report = new StringWriter();
+        List pipelines = new ArrayList();
+
+        TextUi() {
+            setWriter(new PrintWriter(report));
+        }
+
+        void run(String[] args) {
+            instanceMain(args);
+        }
+
+        public void setPipeline(int loadThreads, int parseThreads) {
+            pipelines.add(loadThreads + "," + parseThreads);
+            super.setPipeline(loadThreads, parseThreads);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package jdependFast.framework;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.*;
+
+public class AnalysisSnapshotTest extends AnalysisTestCase {
+
+    private File jar;
+    private File file;
+
+    public AnalysisSnapshotTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() {
+        super.setUp();
+        try {
+            jar = new File(getTestJar());
+            file = File.createTempFile("jdepend", ".snapshot");
+        } catch (IOException ioe) {
+            fail(ioe.getMessage());
+        }
+    }
+
+    protected void tearDown() {
+        file.delete();
+        super.tearDown();
+    }
+
+    public void testSnapshotMatchesAnalysis() throws IOException {
+
+        JDepend_T analyzed = analyze(new JDepend_T(), jar.getPath());
+        analyzed.writeSnapshot(file, true);
+
+        AnalysisSnapshot snapshot = AnalysisSnapshot.open(file);
+        assertTrue(snapshot.hasClasses());
+        assertEquals(analyzed.getClassCount(), snapshot.getClassCount());
+
+        for (Iterator i = analyzed.getPackages().iterator(); i.hasNext();) {
+            JavaPackage_T p = (JavaPackage_T) i.next();
+            int id = snapshot.getId(p.getName());
+            assertTrue(p.getName(), id >= 0);
+            assertEquals(p.getName(), snapshot.getName(id));
+            assertEquals(p.getClassCount(), snapshot.getClassCount(id));
+            assertEquals(p.getAbstractClassCount(), snapshot.getAbstractClassCount(id));
+            assertEquals(p.getVolatility(), snapshot.getVolatility(id));
+            assertEquals(p.efferentCoupling(), snapshot.efferentCoupling(id));
+            assertEquals(p.afferentCoupling(), snapshot.afferentCoupling(id));
+            assertEquals(p.instability(), snapshot.instability(id), 0);
+            assertEquals(p.distance(), snapshot.distance(id), 0);
+            assertEquals(p.containsCycle(), snapshot.containsCycle(id));
+
+            List efferents = new ArrayList();
+            int[] ids = snapshot.getEfferents(id);
+            for (int j = 0; j < ids.length; j++) {
+                efferents.add(snapshot.getName(ids[j]));
+            }
+            assertEquals(names(p.getEfferents()), efferents);
+
+            Set classes = new TreeSet();
+            for (Iterator j = p.getClasses().iterator(); j.hasNext();) {
+                classes.add(((JavaClass_T) j.next()).getName());
+            }
+            assertEquals(classes,
+                new TreeSet(Arrays.asList(snapshot.getClassNames(id))));
+        }
+
+        assertEquals(-1, snapshot.getId("no.such.package"));
+        analyzed.shutdown();
+    }
+
+    public void testLoadSnapshot() throws IOException {
+
+        JDepend_T analyzed = analyze(new JDepend_T(), jar.getPath());
+        analyzed.writeSnapshot(file, true);
+
+        JDepend_T loaded = new JDepend_T();
+        loaded.loadSnapshot(file);
+        assertEquals(analyzed.getClassCount(), loaded.getClassCount());
+        assertEquals(describe(analyzed), describe(loaded));
+
+        analyzed.shutdown();
+        loaded.shutdown();
+    }
+
+    public void testSnapshotWithoutClasses() throws IOException {
+
+        JDepend_T analyzed = analyze(new JDepend_T(), jar.getPath());
+        analyzed.writeSnapshot(file, false);
+
+        AnalysisSnapshot snapshot = AnalysisSnapshot.open(file);
+        assertFalse(snapshot.hasClasses());
+
+        JDepend_T loaded = new JDepend_T();
+        loaded.loadSnapshot(file);
+        assertEquals(analyzed.getClassCount(), loaded.getClassCount());
+        assertEquals(describe(analyzed), describe(loaded));
+
+        analyzed.shutdown();
+        loaded.shutdown();
+    }
+
+    public void testInvalidSnapshot() throws IOException {
+
+        OutputStream out = new FileOutputStream(file);
+        out.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        out.close();
+
+        try {
+            AnalysisSnapshot.open(file);
+            fail("Invalid snapshot");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testDamagedSnapshot() throws IOException {
+
+        JDepend_T analyzed = analyze(new JDepend_T(), jar.getPath());
+        analyzed.writeSnapshot(file, true);
+        analyzed.shutdown();
+        byte[] original = Files.readAllBytes(file.toPath());
+        int packages = ByteBuffer.wrap(original).getInt(12);
+        int efferents = AnalysisSnapshot.HEADER_SIZE 
+            + packages * AnalysisSnapshot.PACKAGE_SIZE;
+        int strings = original.length - ByteBuffer.wrap(original).getInt(24);
+
+        // name offset, efferent start, efferent id, string length
+        int[] positions = { AnalysisSnapshot.HEADER_SIZE, 
+            AnalysisSnapshot.HEADER_SIZE + 20, efferents, strings };
+        int[] values = { Integer.MAX_VALUE, -1, packages, -5 };
+        JDepend_T loaded = new JDepend_T();
+        for (int i = 0; i < positions.length; i++) {
+            ByteBuffer damaged = ByteBuffer.wrap((byte[]) original.clone());
+            damaged.putInt(positions[i], values[i]);
+            Files.write(file.toPath(), damaged.array());
+            try {
+                loaded.loadSnapshot(file);
+                fail("Damaged snapshot at " + positions[i]);
+            } catch (IOException expected) {
+                assertEquals("Damaged analysis snapshot", expected.getMessage());
+            }
+        }
+        loaded.shutdown();
+    }
+
+    public void testRewriteKeepsOpenSnapshot() throws IOException {
+
+        File directory = Files.createTempDirectory("jdepend-snapshots").toFile();
+        try {
+            File target = new File(directory, "analysis.snapshot");
+            JDepend_T analyzed = analyze(new JDepend_T(), jar.getPath());
+            analyzed.writeSnapshot(target, true);
+            AnalysisSnapshot snapshot = AnalysisSnapshot.open(target);
+
+            AnalysisSnapshot.write(Collections.EMPTY_LIST, false, target);
+            assertEquals(0, AnalysisSnapshot.open(target).getClassCount());
+            assertEquals(Arrays.asList(new String[] { "analysis.snapshot" }),
+                Arrays.asList(directory.list()));
+
+            assertEquals(analyzed.getClassCount(), snapshot.getClassCount());
+            int id = snapshot.getId("jdepend.framework");
+            assertEquals("jdepend.framework", snapshot.getName(id));
+            analyzed.shutdown();
+        } finally {
+            delete(directory);
+        }
+    }
+
+    public void testLoadedReport() throws IOException {
+
+        StringWriter direct = new StringWriter();
+        jdependFast.textui.JDepend_T analyzed =
+            new jdependFast.textui.JDepend_T(new PrintWriter(direct));
+        analyzed.addDirectory(jar.getPath());
+        analyzed.setSnapshotFile(file.getPath());
+        analyzed.analyze();
+
+        StringWriter restored = new StringWriter();
+        jdependFast.textui.JDepend_T loaded =
+            new jdependFast.textui.JDepend_T(new PrintWriter(restored));
+        loaded.loadSnapshot(file.getPath());
+        loaded.analyze();
+
+        assertEquals(direct.toString(), restored.toString());
+    }
+}
@@ -0,0 +1,98 @@
+package jdependFast.framework;
+
+import java.io.*;
+import java.util.*;
+
+import jdepend.framework.JDependTestCase;
+
+/**
+ * Base class of the tests that analyze the compiled classes and the test
+ * jar file with the fast engine, and compare the packages found by
+ * analyses run in different modes.
+ */
+
+public abstract class AnalysisTestCase extends JDependTestCase {
+
+    public AnalysisTestCase(String name) {
+        super(name);
+    }
+
+    /**
+     * @return The directories of the compiled classes of both engines,
+     *         without the archives and corpora the build directory may
+     *         also hold.
+     */
+    public String[] getClassDirectories() {
+        return new String[] {
+            getBuildDir() + "jdepend", getBuildDir() + "jdependFast" };
+    }
+
+    public String getTestJar() {
+        return getTestDataDir() + "test.jar";
+    }
+
+    /**
+     * Analyzes the compiled classes and the test jar file.
+     */
+    protected JDepend_T analyze(JDepend_T jdepend) throws IOException {
+        String[] directories = getClassDirectories();
+        for (int i = 0; i < directories.length; i++) {
+            jdepend.addDirectory(directories[i]);
+        }
+        return analyze(jdepend, getTestJar());
+    }
+
+    /**
+     * Analyzes the specified directory or archive.
+     */
+    protected JDepend_T analyze(JDepend_T jdepend, String name)
+        throws IOException {
+
+        jdepend.addDirectory(name);
+        jdepend.analyze();
+        return jdepend;
+    }
+
+    /**
+     * @return Map of the name of each analyzed package to its class and
+     *         abstract class counts, afferent coupling, efferent package
+     *         names in name order and cycle flag, and of the empty name
+     *         to the total class count.
+     */
+    protected Map describe(JDepend_T jdepend) {
+        Map description = new TreeMap();
+        for (Iterator i = jdepend.getPackages().iterator(); i.hasNext();) {
+            JavaPackage_T p = (JavaPackage_T) i.next();
+            description.put(p.getName(), p.getClassCount() + " "
+                + p.getAbstractClassCount() + " " + p.afferentCoupling()
+                + " " + new TreeSet(names(p.getEfferents())) + " "
+                + p.containsCycle());
+        }
+        description.put("", Integer.valueOf(jdepend.getClassCount()));
+        return description;
+    }
+
+    /**
+     * @return Names of the specified packages, in iteration order.
+     */
+    protected List names(Collection packages) {
+        List names = new ArrayList();
+        for (Iterator i = packages.iterator(); i.hasNext();) {
+            names.add(((JavaPackage_T) i.next()).getName());
+        }
+        return names;
+    }
+
+    /**
+     * Deletes the specified file or directory, with its contents.
+     */
+    protected void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                delete(files[i]);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,304 @@
+package jdependFast.framework;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.*;
+
+import jdepend.framework.JDependTestCase;
+
+public class ClassFileParserTest extends JDependTestCase {
+
+    private ClassFileParser_T parser;
+    private byte[] example;
+
+    public ClassFileParserTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() {
+        super.setUp();
+        parser = new ClassFileParser_T();
+        try {
+            example = Files.readAllBytes(
+                new File(getTestDataDir() + "example_class1.bin").toPath());
+        } catch (IOException ioe) {
+            fail(ioe.getMessage());
+        }
+    }
+
+    public void testExampleClassFiles() throws IOException {
+
+        for (int n = 1; n <= 2; n++) {
+            File file = new File(getTestDataDir() + "example_class" + n + ".bin");
+
+            JavaClass_T expected = parser.parse(file);
+            assertEquals(describe(expected),
+                describe(parser.parse(new FileInputStream(file))));
+            assertEquals(describe(expected), describe(parser.parse(
+                ByteBuffer.wrap(Files.readAllBytes(file.toPath())))));
+
+            jdepend.framework.JavaClass original =
+                new jdepend.framework.ClassFileParser().parse(file);
+            assertEquals(original.getName(), expected.getName());
+            assertEquals(original.isAbstract(), expected.isAbstract());
+            assertEquals(original.getSourceFile(), expected.getSourceFile());
+            assertEquals(originalImports(original), imports(expected));
+        }
+    }
+
+    public void testBufferPosition() throws IOException {
+
+        byte[] bytes = new byte[example.length + 32];
+        System.arraycopy(example, 0, bytes, 16, example.length);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 16, example.length);
+
+        assertEquals(describe(parser.parse(ByteBuffer.wrap(example))),
+            describe(parser.parse(buffer)));
+    }
+
+    public void testBufferIsReused() throws IOException {
+
+        File small = new File(getTestDataDir() + "example_class1.bin");
+        File large = new File(getTestDataDir() + "example_class2.bin");
+        assertTrue(large.length() > small.length());
+
+        String expectedSmall = describe(new ClassFileParser_T().parse(small));
+        String expectedLarge = describe(new ClassFileParser_T().parse(large));
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(expectedSmall, describe(parser.parse(small)));
+            assertEquals(expectedLarge, describe(parser.parse(large)));
+            assertEquals(expectedSmall, describe(
+                parser.parse(new FileInputStream(small))));
+            assertEquals(expectedLarge, describe(
+                parser.parse(new FileInputStream(large))));
+        }
+    }
+
+    public void testMappedClassFile() throws IOException {
+
+        File file = File.createTempFile("jdepend", ".class");
+        try {
+            OutputStream out = new FileOutputStream(file);
+            out.write(example);
+            out.write(new byte[ClassFileParser_T.MAP_THRESHOLD]);
+            out.close();
+
+            assertEquals(describe(parser.parse(ByteBuffer.wrap(example))),
+                describe(parser.parse(file)));
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testParserMatchesOriginalParser() throws IOException {
+
+        jdepend.framework.ClassFileParser original =
+            new jdepend.framework.ClassFileParser();
+        List files = new ArrayList();
+        collectClassFiles(new File(getBuildDir() + "jdepend"), files);
+        collectClassFiles(new File(getBuildDir() + "jdependFast"), files);
+
+        int compared = 0;
+        for (Iterator i = files.iterator(); i.hasNext();) {
+            File file = (File) i.next();
+            JavaClass_T actual = parser.parse(file);
+
+            // The original parser predates invokedynamic constants
+            jdepend.framework.JavaClass expected;
+            try {
+                expected = original.parse(file);
+            } catch (IOException unsupported) {
+                continue;
+            }
+            assertEquals(file.getPath(), expected.getName() + " "
+                + expected.isAbstract() + " " + expected.getSourceFile()
+                + " " + originalImports(expected), describe(actual));
+            compared++;
+        }
+        assertTrue(compared > 0);
+    }
+
+    public void testSkippedAttribute() throws IOException {
+
+        JavaClass_T jClass = parser.parse(ByteBuffer.wrap(classFile(1000, 1000)));
+
+        assertEquals("p.A", jClass.getName());
+        assertEquals("A.java", jClass.getSourceFile());
+    }
+
+    public void testInvalidAttributeLength() {
+
+        int[] lengths = { 1001, Integer.MAX_VALUE, -1 };
+        for (int i = 0; i < lengths.length; i++) {
+            try {
+                parser.parse(ByteBuffer.wrap(classFile(1000, lengths[i])));
+                fail("Invalid attribute length: " + lengths[i]);
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    public void testTruncatedClassFile() {
+
+        for (int length = 0; length < example.length; length++) {
+            try {
+                parser.parse(ByteBuffer.wrap(example, 0, length));
+                fail("Truncated class file of " + length + " bytes");
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    public void testTruncatedClassFileInput() throws IOException {
+
+        File file = File.createTempFile("jdepend", ".class");
+        try {
+            OutputStream out = new FileOutputStream(file);
+            out.write(example, 0, example.length / 2);
+            out.close();
+
+            try {
+                parser.parse(file);
+                fail("Truncated class file");
+            } catch (IOException expected) {
+            }
+            try {
+                parser.parse(new FileInputStream(file));
+                fail("Truncated class file");
+            } catch (IOException expected) {
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testBufferErrorDoesNotNameLastFile() throws IOException {
+
+        File file = new File(getTestDataDir() + "example_class1.bin");
+        parser.parse(file);
+        try {
+            parser.parse(ByteBuffer.wrap(example, 0, example.length / 2));
+            fail("Truncated class file");
+        } catch (IOException expected) {
+            assertEquals("Truncated class file", expected.getMessage());
+        }
+        try {
+            parser.parse(new ByteArrayInputStream(new byte[8]));
+            fail("Invalid class file");
+        } catch (IOException expected) {
+            assertEquals("Invalid class file", expected.getMessage());
+        }
+    }
+
+    public void testParserRecoversAfterMalformedClassFile() throws IOException {
+
+        JavaClass_T expected = parser.parse(ByteBuffer.wrap(example));
+
+        try {
+            parser.parse(ByteBuffer.wrap(example, 0, example.length - 1));
+            fail("Truncated class file");
+        } catch (IOException truncated) {
+        }
+
+        JavaClass_T actual = parser.parse(ByteBuffer.wrap(example));
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(imports(expected), imports(actual));
+    }
+
+    public void testInvalidMagic() {
+
+        byte[] bytes = (byte[]) example.clone();
+        bytes[0] = 0;
+        try {
+            parser.parse(ByteBuffer.wrap(bytes));
+            fail("Invalid class file");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testUnknownConstant() {
+
+        byte[] bytes = (byte[]) example.clone();
+        bytes[10] = (byte) 99;
+        try {
+            parser.parse(ByteBuffer.wrap(bytes));
+            fail("Unknown constant");
+        } catch (IOException expected) {
+        }
+    }
+
+    private Set imports(JavaClass_T jClass) {
+        Set names = new TreeSet();
+        for (Iterator i = jClass.getImportedPackages().iterator(); i.hasNext();) {
+            names.add(((JavaPackage_T) i.next()).getName());
+        }
+        return names;
+    }
+
+    private String describe(JavaClass_T jClass) {
+        return jClass.getName() + " " + jClass.isAbstract() + " "
+            + jClass.getSourceFile() + " " + imports(jClass);
+    }
+
+    private Set originalImports(jdepend.framework.JavaClass jClass) {
+        Set names = new TreeSet();
+        for (Iterator i = jClass.getImportedPackages().iterator(); i.hasNext();) {
+            names.add(((jdepend.framework.JavaPackage) i.next()).getName());
+        }
+        return names;
+    }
+
+    /**
+     * @return Class file of class <code>p.A</code> with an unknown 
+     *         attribute of the specified body and declared lengths, 
+     *         followed by its <code>SourceFile</code> attribute.
+     */
+    private byte[] classFile(int bodyLength, int declaredLength)
+        throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(ClassFileParser_T.JAVA_MAGIC);
+        out.writeShort(0);
+        out.writeShort(52);
+        out.writeShort(6);
+        out.writeByte(ClassFileParser_T.CONSTANT_UTF8);
+        out.writeUTF("p/A");
+        out.writeByte(ClassFileParser_T.CONSTANT_CLASS);
+        out.writeShort(1);
+        out.writeByte(ClassFileParser_T.CONSTANT_UTF8);
+        out.writeUTF("SourceFile");
+        out.writeByte(ClassFileParser_T.CONSTANT_UTF8);
+        out.writeUTF("A.java");
+        out.writeByte(ClassFileParser_T.CONSTANT_UTF8);
+        out.writeUTF("Unknown");
+        out.writeShort(0x21);
+        out.writeShort(2);
+        out.writeShort(2);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(2);
+        out.writeShort(5);
+        out.writeInt(declaredLength);
+        out.write(new byte[bodyLength]);
+        out.writeShort(3);
+        out.writeInt(2);
+        out.writeShort(4);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private void collectClassFiles(File directory, List files) {
+        File[] children = directory.listFiles();
+        for (int i = 0; children != null && i < children.length; i++) {
+            if (children[i].isDirectory()) {
+                collectClassFiles(children[i], files);
+            } else if (children[i].getName().endsWith(".class")) {
+                files.add(children[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package jdependFast.framework;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class ConcurrentAnalysisTest extends AnalysisTestCase {
+
+    private static final int ANALYSES = 8;
+
+    public ConcurrentAnalysisTest(String name) {
+        super(name);
+    }
+
+    public void testAnalysesShareInjectedPool() throws Exception {
+
+        Map expected = describe(analyze(new JDepend_T()));
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            List analyzers = new ArrayList();
+            for (int i = 0; i < ANALYSES; i++) {
+                analyzers.add(new JDepend_T(new PackageFilter_T(), pool));
+            }
+
+            List results = analyzeConcurrently(analyzers);
+            for (Iterator i = results.iterator(); i.hasNext();) {
+                assertEquals(expected, i.next());
+            }
+
+            ((JDepend_T) analyzers.get(0)).shutdown();
+            assertFalse(pool.isShutdown());
+            assertSame(pool, ((JDepend_T) analyzers.get(1)).getExecutor());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testAnalysesWithOwnLimitedPools() throws Exception {
+
+        Map expected = describe(analyze(new JDepend_T()));
+
+        List analyzers = new ArrayList();
+        for (int i = 0; i < ANALYSES; i++) {
+            JDepend_T jdepend = new JDepend_T();
+            jdepend.setParallelism(1);
+            if (i % 2 == 1) {
+                jdepend.setRetainClasses(false);
+            }
+            analyzers.add(jdepend);
+        }
+
+        List results = analyzeConcurrently(analyzers);
+        for (Iterator i = results.iterator(); i.hasNext();) {
+            assertEquals(expected, i.next());
+        }
+
+        JDepend_T first = (JDepend_T) analyzers.get(0);
+        JDepend_T second = (JDepend_T) analyzers.get(1);
+        assertNotSame(first.getExecutor(), second.getExecutor());
+        assertEquals(1, first.getParallelism());
+
+        first.shutdown();
+        assertTrue(first.getExecutor().isShutdown());
+        assertFalse(second.getExecutor().isShutdown());
+
+        for (Iterator i = analyzers.iterator(); i.hasNext();) {
+            ((JDepend_T) i.next()).shutdown();
+        }
+    }
+
+    public void testFiltersAreNotShared() throws IOException {
+
+        JDepend_T unfiltered = new JDepend_T(new PackageFilter_T(
+            Collections.EMPTY_LIST));
+        JDepend_T filtered = new JDepend_T(new PackageFilter_T(
+            Collections.singletonList("java.")));
+
+        analyze(unfiltered);
+        analyze(filtered);
+
+        assertNotNull(unfiltered.getPackage("java.lang"));
+        assertNull(filtered.getPackage("java.lang"));
+        assertEquals(unfiltered.getClassCount(), filtered.getClassCount());
+
+        unfiltered.shutdown();
+        filtered.shutdown();
+    }
+
+    private List analyzeConcurrently(List analyzers) throws Exception {
+
+        ExecutorService threads = Executors.newFixedThreadPool(analyzers.size());
+        try {
+            List futures = new ArrayList();
+            for (Iterator i = analyzers.iterator(); i.hasNext();) {
+                final JDepend_T jdepend = (JDepend_T) i.next();
+                futures.add(threads.submit(new Callable() {
+                    public Object call() throws IOException {
+                        return describe(analyze(jdepend));
+                    }
+                }));
+            }
+
+            List results = new ArrayList();
+            for (Iterator i = futures.iterator(); i.hasNext();) {
+                results.add(((Future) i.next()).get());
+            }
+            return results;
+        } finally {
+            threads.shutdown();
+        }
+    }
+}
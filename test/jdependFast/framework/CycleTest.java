@@ -0,0 +1,305 @@
+package jdependFast.framework;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import jdepend.framework.JDependTestCase;
+
+public class CycleTest extends JDependTestCase {
+
+    public CycleTest(String name) {
+        super(name);
+    }
+
+    public void testNoCycles() {
+
+        JavaPackage_T a = new JavaPackage_T("A");
+        JavaPackage_T b = new JavaPackage_T("B");
+
+        a.dependsUpon(b);
+
+        List aCycles = new ArrayList();
+        assertEquals(false, a.containsCycle());
+        assertEquals(false, a.collectCycle(aCycles));
+        assertListEquals(aCycles, new String[] {});
+
+        List bCycles = new ArrayList();
+        assertEquals(false, b.containsCycle());
+        assertEquals(false, b.collectCycle(bCycles));
+        assertListEquals(bCycles, new String[] {});
+    }
+
+    public void test2Node1BranchCycle() {
+
+        JavaPackage_T a = new JavaPackage_T("A");
+        JavaPackage_T b = new JavaPackage_T("B");
+
+        a.dependsUpon(b);
+        b.dependsUpon(a);
+
+        List aCycles = new ArrayList();
+        assertEquals(true, a.containsCycle());
+        assertEquals(true, a.collectCycle(aCycles));
+        assertListEquals(aCycles, new String[] { "A", "B", "A"});
+
+        List bCycles = new ArrayList();
+        assertEquals(true, b.containsCycle());
+        assertEquals(true, b.collectCycle(bCycles));
+        assertListEquals(bCycles, new String[] { "B", "A", "B"});
+    }
+
+    public void test3Node1BranchCycle() {
+
+        JavaPackage_T a = new JavaPackage_T("A");
+        JavaPackage_T b = new JavaPackage_T("B");
+        JavaPackage_T c = new JavaPackage_T("C");
+
+        a.dependsUpon(b);
+        b.dependsUpon(c);
+        c.dependsUpon(a);
+
+        List aCycles = new ArrayList();
+        assertEquals(true, a.containsCycle());
+        assertEquals(true, a.collectCycle(aCycles));
+        assertListEquals(aCycles, new String[] { "A", "B", "C", "A"});
+
+        List bCycles = new ArrayList();
+        assertEquals(true, b.containsCycle());
+        assertEquals(true, b.collectCycle(bCycles));
+        assertListEquals(bCycles, new String[] { "B", "C", "A", "B"});
+
+        List cCycles = new ArrayList();
+        assertEquals(true, c.containsCycle());
+        assertEquals(true, c.collectCycle(cCycles));
+        assertListEquals(cCycles, new String[] { "C", "A", "B", "C"});
+    }
+
+    public void test3Node1BranchSubCycle() {
+
+        JavaPackage_T a = new JavaPackage_T("A");
+        JavaPackage_T b = new JavaPackage_T("B");
+        JavaPackage_T c = new JavaPackage_T("C");
+
+        a.dependsUpon(b);
+        b.dependsUpon(c);
+        c.dependsUpon(b);
+
+        List aCycles = new ArrayList();
+        assertEquals(true, a.containsCycle());
+        assertEquals(true, a.collectCycle(aCycles));
+        assertListEquals(aCycles, new String[] { "A", "B", "C", "B"});
+
+        List bCycles = new ArrayList();
+        assertEquals(true, b.containsCycle());
+        assertEquals(true, b.collectCycle(bCycles));
+        assertListEquals(bCycles, new String[] { "B", "C", "B"});
+
+        List cCycles = new ArrayList();
+        assertEquals(true, c.containsCycle());
+        assertEquals(true, c.collectCycle(cCycles));
+        assertListEquals(cCycles, new String[] { "C", "B", "C"});
+    }
+
+    public void test3Node2BranchCycle() {
+
+        JavaPackage_T a = new JavaPackage_T("A");
+        JavaPackage_T b = new JavaPackage_T("B");
+        JavaPackage_T c = new JavaPackage_T("C");
+
+        a.dependsUpon(b);
+        b.dependsUpon(a);
+
+        a.dependsUpon(c);
+        c.dependsUpon(a);
+
+        List aCycles = new ArrayList();
+        assertEquals(true, a.containsCycle());
+        assertEquals(true, a.collectCycle(aCycles));
+        assertListEquals(aCycles, new String[] { "A", "B", "A"});
+
+        List bCycles = new ArrayList();
+        assertEquals(true, b.containsCycle());
+        assertEquals(true, b.collectCycle(bCycles));
+        assertListEquals(bCycles, new String[] { "B", "A", "B"});
+
+        List cCycles = new ArrayList();
+        assertEquals(true, c.containsCycle());
+        assertEquals(true, c.collectCycle(cCycles));
+        assertListEquals(cCycles, new String[] { "C", "A", "B", "A"});
+    }
+
+    public void test5Node2BranchCycle() {
+
+        JavaPackage_T a = new JavaPackage_T("A");
+        JavaPackage_T b = new JavaPackage_T("B");
+        JavaPackage_T c = new JavaPackage_T("C");
+        JavaPackage_T d = new JavaPackage_T("D");
+        JavaPackage_T e = new JavaPackage_T("E");
+
+        a.dependsUpon(b);
+        b.dependsUpon(c);
+        c.dependsUpon(a);
+
+        a.dependsUpon(d);
+        d.dependsUpon(e);
+        e.dependsUpon(a);
+
+        List aCycles = new ArrayList();
+        assertEquals(true, a.containsCycle());
+        assertEquals(true, a.collectCycle(aCycles));
+        assertListEquals(aCycles, new String[] { "A", "B", "C", "A"});
+
+        List bCycles = new ArrayList();
+        assertEquals(true, b.containsCycle());
+        assertEquals(true, b.collectCycle(bCycles));
+        assertListEquals(bCycles, new String[] { "B", "C", "A", "B"});
+
+        List cCycles = new ArrayList();
+        assertEquals(true, c.containsCycle());
+        assertEquals(true, c.collectCycle(cCycles));
+        assertListEquals(cCycles, new String[] { "C", "A", "B", "C"});
+
+        List dCycles = new ArrayList();
+        assertEquals(true, d.containsCycle());
+        assertEquals(true, d.collectCycle(dCycles));
+        assertListEquals(dCycles, new String[] { "D", "E", "A", "B", "C", "A"});
+
+        List eCycles = new ArrayList();
+        assertEquals(true, e.containsCycle());
+        assertEquals(true, e.collectCycle(eCycles));
+        assertListEquals(eCycles, new String[] { "E", "A", "B", "C", "A"});
+    }
+
+    public void testCycleLabelsFollowDependencyChanges() {
+
+        JavaPackage_T a = new JavaPackage_T("A");
+        JavaPackage_T b = new JavaPackage_T("B");
+        JavaPackage_T c = new JavaPackage_T("C");
+
+        a.dependsUpon(b);
+        b.dependsUpon(c);
+
+        assertEquals(false, a.containsCycle());
+        assertEquals(false, c.containsCycle());
+
+        c.dependsUpon(b);
+
+        assertEquals(true, a.containsCycle());
+        assertEquals(false, a.isInCycle());
+        assertEquals(true, b.isInCycle());
+        assertEquals(true, c.isInCycle());
+        assertEquals(b.getComponent(), c.getComponent());
+
+        c.removeEfferent(b);
+        b.removeAfferent(c);
+
+        assertEquals(false, a.containsCycle());
+        assertEquals(false, b.containsCycle());
+        assertEquals(false, c.isInCycle());
+    }
+
+    public void testCycleLabelsOfRelabeledPackages() {
+
+        JavaPackage_T a = new JavaPackage_T("A");
+        JavaPackage_T b = new JavaPackage_T("B");
+        JavaPackage_T c = new JavaPackage_T("C");
+
+        a.dependsUpon(b);
+        b.dependsUpon(c);
+
+        assertEquals(false, a.containsCycle());
+        CycleDetector.label(Collections.singleton(b));
+
+        c.dependsUpon(a);
+
+        assertEquals(true, a.containsCycle());
+        assertEquals(true, a.isInCycle());
+    }
+
+    public void testConcurrentDependenciesInvalidateLabels() throws Exception {
+
+        for (int round = 0; round < 20; round++) {
+            final JavaPackage_T[] chain = new JavaPackage_T[256];
+            for (int i = 0; i < chain.length; i++) {
+                chain[i] = new JavaPackage_T("P" + i);
+                if (i > 0) {
+                    chain[i - 1].dependsUpon(chain[i]);
+                }
+            }
+            for (int i = 0; i < chain.length; i += 16) {
+                CycleDetector.label(Collections.singleton(chain[i]));
+            }
+
+            final List failures = Collections.synchronizedList(new ArrayList());
+            Thread[] threads = new Thread[8];
+            for (int t = 0; t < threads.length; t++) {
+                final int first = t;
+                threads[t] = new Thread() {
+                    public void run() {
+                        try {
+                            for (int i = first + 1; i < chain.length; i += 8) {
+                                chain[i].dependsUpon(chain[i - 1]);
+                            }
+                        } catch (RuntimeException e) {
+                            failures.add(e);
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            for (int t = 0; t < threads.length; t++) {
+                threads[t].join();
+            }
+
+            assertEquals(Collections.EMPTY_LIST, failures);
+            assertEquals(true, chain[0].isInCycle());
+            assertEquals(chain[0].getComponent(), chain[chain.length - 1].getComponent());
+        }
+    }
+
+    public void testLongChainCycle() {
+
+        int count = 100000;
+        JavaPackage_T[] chain = new JavaPackage_T[count];
+        for (int i = 0; i < count; i++) {
+            chain[i] = new JavaPackage_T("P" + i);
+            if (i > 0) {
+                chain[i - 1].dependsUpon(chain[i]);
+            }
+        }
+        chain[count - 1].dependsUpon(chain[count / 2]);
+
+        List cycle = new ArrayList();
+        assertEquals(true, chain[0].containsCycle());
+        assertEquals(true, chain[0].collectCycle(cycle));
+        assertEquals(count + 1, cycle.size());
+        assertEquals("P" + (count / 2),
+            ((JavaPackage_T) cycle.get(cycle.size() - 1)).getName());
+
+        assertEquals(false, chain[0].isInCycle());
+        assertEquals(true, chain[count - 1].isInCycle());
+    }
+
+    protected void assertListEquals(List list, String names[]) {
+
+        assertEquals(names.length, list.size());
+
+        for (int i = 0; i < names.length; i++) {
+            assertEquals(names[i], ((JavaPackage_T) list.get(i)).getName());
+        }
+    }
+
+    protected void printCycles(List list) {
+        Iterator i = list.iterator();
+        while (i.hasNext()) {
+            JavaPackage_T p = (JavaPackage_T) i.next();
+            if (i.hasNext()) {
+                System.out.print(p.getName() + "->");
+            } else {
+                System.out.println(p.getName());
+            }
+        }
+    }
+}
\ No newline at end of file
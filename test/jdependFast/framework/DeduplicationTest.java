@@ -0,0 +1,137 @@
+package jdependFast.framework;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public class DeduplicationTest extends AnalysisTestCase {
+
+    private File jar;
+    private File copy;
+    private File classes;
+    private int jarClasses;
+
+    public DeduplicationTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() {
+        super.setUp();
+        try {
+            jar = new File(getTestJar());
+            jarClasses = new FileManager_T().buildClasses(jar).size();
+
+            copy = File.createTempFile("jdepend-copy", ".jar");
+            Files.copy(jar.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+            classes = Files.createTempDirectory("jdepend-classes").toFile();
+            ZipFile zip = new ZipFile(jar);
+            try {
+                for (Enumeration e = zip.entries(); e.hasMoreElements();) {
+                    ZipEntry entry = (ZipEntry) e.nextElement();
+                    if (!entry.getName().endsWith(".class")) {
+                        continue;
+                    }
+                    File file = new File(classes, entry.getName());
+                    file.getParentFile().mkdirs();
+                    InputStream in = zip.getInputStream(entry);
+                    try {
+                        Files.copy(in, file.toPath());
+                    } finally {
+                        in.close();
+                    }
+                }
+            } finally {
+                zip.close();
+            }
+        } catch (IOException ioe) {
+            fail(ioe.getMessage());
+        }
+    }
+
+    protected void tearDown() {
+        copy.delete();
+        delete(classes);
+        super.tearDown();
+    }
+
+    public void testCopiesAreAnalyzedByDefault() throws IOException {
+
+        JDepend_T jdepend = analyze(new JDepend_T());
+
+        assertEquals(3 * jarClasses, jdepend.getClassCount());
+        assertTrue(jdepend.getDuplicates().isEmpty());
+        jdepend.shutdown();
+    }
+
+    public void testFirstCopyWins() throws IOException {
+
+        JDepend_T single = analyze(new JDepend_T(), jar.getPath());
+
+        JDepend_T jdepend = new JDepend_T();
+        jdepend.deduplicateClasses(true);
+        analyze(jdepend);
+
+        assertEquals(jarClasses, jdepend.getClassCount());
+        assertEquals(describe(single), describe(jdepend));
+
+        Map duplicates = jdepend.getDuplicates();
+        assertEquals(jarClasses + 1, duplicates.size());
+        assertEquals(jar.getPath(), duplicates.get(copy.getPath()));
+        for (Iterator i = duplicates.entrySet().iterator(); i.hasNext();) {
+            Map.Entry e = (Map.Entry) i.next();
+            if (e.getKey().equals(copy.getPath())) {
+                continue;
+            }
+            String duplicate = (String) e.getKey();
+            String original = (String) e.getValue();
+            assertTrue(duplicate.startsWith(jar.getPath() + "!"));
+            assertTrue(original.startsWith(classes.getPath()));
+            assertTrue(original.replace(File.separatorChar, '/').endsWith(
+                duplicate.substring(duplicate.indexOf('!') + 1)));
+        }
+
+        single.shutdown();
+        jdepend.shutdown();
+    }
+
+    public void testIndexCountsDistinctClasses() throws Exception {
+
+        FileManager_T fileManager = new FileManager_T();
+        fileManager.addDirectory(copy.getPath());
+        fileManager.addDirectory(jar.getPath());
+        fileManager.deduplicateClasses(true);
+
+        DiscoveryIndex index = fileManager.getIndex();
+        assertEquals(jarClasses, index.getClassCount());
+        assertEquals(Collections.singletonList(copy), index.getFiles());
+        assertEquals(jarClasses, fileManager.extractFiles().size());
+
+        fileManager.deduplicateClasses(false);
+        assertEquals(2 * jarClasses, fileManager.getIndex().getClassCount());
+    }
+
+    public void testDuplicatesReport() throws IOException {
+
+        StringWriter out = new StringWriter();
+        jdependFast.textui.JDepend_T jdepend =
+            new jdependFast.textui.JDepend_T(new PrintWriter(out));
+        jdepend.setDeduplicate(true);
+        jdepend.addDirectory(jar.getPath());
+        jdepend.addDirectory(copy.getPath());
+        jdepend.analyze();
+
+        String report = out.toString();
+        assertTrue(report.indexOf("- Duplicates:") > 0);
+        assertTrue(report.indexOf(copy.getPath()) > 0);
+    }
+
+    protected JDepend_T analyze(JDepend_T jdepend) throws IOException {
+        jdepend.addDirectory(classes.getPath());
+        jdepend.addDirectory(jar.getPath());
+        return analyze(jdepend, copy.getPath());
+    }
+}
@@ -0,0 +1,137 @@
+package jdependFast.framework;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import jdepend.framework.JDependTestCase;
+
+public class DiscoveryIndexTest extends JDependTestCase {
+
+    public DiscoveryIndexTest(String name) {
+        super(name);
+    }
+
+    public void testCountClassesMatchesAnalysis() throws Exception {
+
+        JDepend_T jdepend = new JDepend_T();
+        jdepend.addDirectory(getBuildDir());
+        jdepend.addDirectory(getTestDataDir() + "test.jar");
+
+        int count = jdepend.countClasses();
+        jdepend.analyze();
+
+        assertEquals(jdepend.getClassCount(), count);
+        assertEquals(count, jdepend.countClasses());
+    }
+
+    public void testIndexIsWalkedOncePerAnalysis() throws IOException {
+
+        FileManager_T fileManager = new FileManager_T();
+        fileManager.addDirectory(getBuildDir());
+
+        DiscoveryIndex counted = fileManager.getIndex();
+        assertSame(counted, fileManager.getIndex());
+
+        DiscoveryIndex analyzed = fileManager.takeIndex();
+        assertSame(counted, analyzed);
+        assertSame(analyzed, fileManager.getIndex());
+
+        assertNotSame(analyzed, fileManager.takeIndex());
+    }
+
+    public void testListenerIsToldOfEveryFile() throws IOException {
+
+        FileManager_T fileManager = new FileManager_T();
+        fileManager.addDirectory(getBuildDir());
+        fileManager.addDirectory(getTestDataDir() + "test.jar");
+
+        final Map told = Collections.synchronizedMap(new HashMap());
+        DiscoveryIndex index = fileManager.takeIndex(new DiscoveryIndex.Listener() {
+            public void indexed(File file, String[] names, String[] nested) {
+                assertNull(told.put(file, names));
+            }
+        });
+
+        assertEquals(new HashSet(index.getFiles()), told.keySet());
+        for (Iterator i = index.getFiles().iterator(); i.hasNext();) {
+            File file = (File) i.next();
+            assertSame(index.getEntryNames(file), told.get(file));
+        }
+    }
+
+    public void testListenerIsToldOfIndexedFilesInWalkOrder() throws IOException {
+
+        FileManager_T fileManager = new FileManager_T();
+        fileManager.addDirectory(getBuildDir());
+        fileManager.addDirectory(getBuildDir());
+        fileManager.deduplicateClasses(true);
+
+        final List told = new ArrayList();
+        DiscoveryIndex.Listener listener = new DiscoveryIndex.Listener() {
+            public void indexed(File file, String[] names, String[] nested) {
+                told.add(file);
+            }
+        };
+
+        DiscoveryIndex index = fileManager.takeIndex(listener);
+        assertFalse(index.getDuplicates().isEmpty());
+        assertEquals(index.getFiles(), told);
+
+        told.clear();
+        fileManager.addDirectory(getTestDataDir() + "test.jar");
+        DiscoveryIndex counted = fileManager.getIndex();
+        assertTrue(told.isEmpty());
+        assertSame(counted, fileManager.takeIndex(listener));
+        assertEquals(counted.getFiles(), told);
+    }
+
+    public void testAddingDirectoryInvalidatesIndex() throws IOException {
+
+        FileManager_T fileManager = new FileManager_T();
+        fileManager.addDirectory(getBuildDir());
+        DiscoveryIndex index = fileManager.getIndex();
+
+        fileManager.addDirectory(getTestDataDir() + "test.jar");
+
+        assertNotSame(index, fileManager.getIndex());
+        assertTrue(fileManager.getIndex().getClassCount() > index.getClassCount());
+    }
+
+    public void testJarEntriesFromCentralDirectory() throws IOException {
+
+        File jar = new File(getTestDataDir() + "test.jar");
+        FileManager_T fileManager = new FileManager_T();
+        fileManager.addDirectory(jar.getPath());
+        DiscoveryIndex index = fileManager.getIndex();
+
+        assertEquals(Collections.singletonList(jar), index.getFiles());
+        assertTrue(index.isJarFile(jar));
+
+        String[] names = index.getEntryNames(jar);
+        long[] sizes = index.getEntrySizes(jar);
+        assertEquals(names.length, index.getClassCount());
+        assertEquals(names.length, sizes.length);
+
+        long total = 0;
+        for (int i = 0; i < names.length; i++) {
+            assertTrue(names[i].endsWith(".class"));
+            assertTrue(sizes[i] > 0);
+            total += sizes[i];
+        }
+        assertEquals(total, index.getTotalBytes());
+    }
+
+    public void testIndexFollowsInnerClassFilter() throws Exception {
+
+        FileManager_T fileManager = new FileManager_T();
+        fileManager.addDirectory(getBuildDir());
+        int all = fileManager.getIndex().getClassCount();
+
+        fileManager.acceptInnerClasses(false);
+        int outer = fileManager.getIndex().getClassCount();
+
+        assertTrue(outer < all);
+        assertEquals(outer, fileManager.extractFiles().size());
+    }
+}
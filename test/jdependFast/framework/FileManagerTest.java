@@ -0,0 +1,131 @@
+package jdependFast.framework;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class FileManagerTest extends AnalysisTestCase {
+
+    private File jar;
+    private int entries;
+
+    public FileManagerTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() {
+        super.setUp();
+        try {
+            jar = File.createTempFile("jdepend-large", ".jar");
+        } catch (IOException ioe) {
+            fail(ioe.getMessage());
+        }
+    }
+
+    protected void tearDown() {
+        jar.delete();
+        super.tearDown();
+    }
+
+    public void testLargeJarRangesMatchSequentialParse() throws Exception {
+
+        writeLargeJar(null);
+        assertTrue(entries > 2 * FileManager_T.JAR_CHUNK_SIZE);
+
+        List expected = describe(new FileManager_T().buildClasses(jar));
+        assertEquals(entries, expected.size());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(expected, describe((Collection) buildClassesIn(pool)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testLargeJarRangeFailure() throws Exception {
+
+        writeLargeJar("p/Truncated.class");
+
+        try {
+            new FileManager_T().buildClasses(jar);
+            fail("Truncated class file");
+        } catch (IOException expected) {
+            assertEquals(jar.getPath() + "!p/Truncated.class: Truncated class file",
+                expected.getMessage());
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Object failure = buildClassesIn(pool);
+            assertTrue(failure instanceof IOException);
+            assertEquals(jar.getPath() + "!p/Truncated.class: Truncated class file",
+                ((IOException) failure).getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return The classes built from the jar file on a thread of the
+     *         specified pool, or the <code>IOException</code> thrown.
+     */
+    private Object buildClassesIn(ForkJoinPool pool) throws Exception {
+        return pool.submit(new Callable() {
+            public Object call() {
+                try {
+                    return new FileManager_T().buildClasses(jar);
+                } catch (IOException ioe) {
+                    return ioe;
+                }
+            }
+        }).get();
+    }
+
+    /**
+     * Writes copies of each compiled class of the fast engine to the
+     * jar file until it holds more than twice <code>JAR_CHUNK_SIZE</code>
+     * classes, followed by a truncated class if one is named.
+     */
+    private void writeLargeJar(String truncated) throws IOException {
+
+        File[] classes = new File(getBuildDir() + "jdependFast"
+            + File.separator + "framework").listFiles();
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            for (int copy = 0; entries <= 2 * FileManager_T.JAR_CHUNK_SIZE; copy++) {
+                for (int i = 0; i < classes.length; i++) {
+                    if (!classes[i].getName().endsWith(".class")) {
+                        continue;
+                    }
+                    out.putNextEntry(new ZipEntry("copy" + copy + "/"
+                        + classes[i].getName()));
+                    out.write(Files.readAllBytes(classes[i].toPath()));
+                    out.closeEntry();
+                    entries++;
+                }
+            }
+            if (truncated != null) {
+                out.putNextEntry(new ZipEntry(truncated));
+                out.write(new byte[] { (byte) 0xCA, (byte) 0xFE });
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private List describe(Collection classes) {
+        List description = new ArrayList();
+        for (Iterator i = classes.iterator(); i.hasNext();) {
+            JavaClass_T jClass = (JavaClass_T) i.next();
+            description.add(jClass.getName() + " " + jClass.isAbstract()
+                + " " + new TreeSet(names(jClass.getImportedPackages())));
+        }
+        return description;
+    }
+}
@@ -0,0 +1,129 @@
+package jdependFast.framework;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+public class IncrementalUpdateTest extends AnalysisTestCase {
+
+    private File dir;
+    private File javaPackage;
+    private File javaClass;
+    private File textui;
+
+    public IncrementalUpdateTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() {
+        super.setUp();
+
+        try {
+            dir = File.createTempFile("jdepend", "");
+            dir.delete();
+            dir.mkdir();
+        } catch (IOException ioe) {
+            fail(ioe.getMessage());
+        }
+
+        String framework = getBuildDir() + getPackageSubDir();
+        javaPackage = new File(framework + "JavaPackage.class");
+        javaClass = new File(framework + "JavaClass.class");
+        textui = new File(getBuildDir() + "jdepend" + File.separator 
+            + "textui" + File.separator + "JDepend.class");
+    }
+
+    protected void tearDown() {
+        delete(dir);
+        super.tearDown();
+    }
+
+    public void testRemovedFile() throws IOException {
+
+        copy(javaPackage);
+        copy(javaClass);
+        File removed = copy(textui);
+
+        JDepend_T jdepend = analyze();
+        assertNotNull(jdepend.getPackage("jdepend.textui"));
+
+        removed.delete();
+        jdepend.update(Collections.EMPTY_LIST, Collections.singleton(removed));
+
+        assertNull(jdepend.getPackage("jdepend.textui"));
+        assertEquals(describe(analyze()), describe(jdepend));
+    }
+
+    public void testChangedFile() throws IOException {
+
+        copy(javaPackage);
+        copy(javaClass);
+
+        JDepend_T jdepend = analyze();
+        assertNull(jdepend.getPackage("jdepend.textui"));
+
+        File added = copy(textui);
+        jdepend.update(Collections.singleton(added), Collections.EMPTY_LIST);
+
+        assertEquals(1, jdepend.getPackage("jdepend.textui").getClassCount());
+        assertEquals(describe(analyze()), describe(jdepend));
+    }
+
+    public void testRemovedCopy() throws IOException {
+        assertRemovedCopy(false);
+    }
+
+    public void testRemovedOriginal() throws IOException {
+        assertRemovedCopy(true);
+    }
+
+    public void testChangedCopy() throws IOException {
+
+        copy(javaPackage);
+        File duplicate = copy(javaPackage, "JavaPackageCopy.class");
+
+        JDepend_T jdepend = analyze();
+        jdepend.update(Collections.singleton(duplicate), Collections.EMPTY_LIST);
+
+        assertEquals(1, jdepend.getPackage("jdepend.framework").getClassCount());
+        assertEquals(describe(analyze()), describe(jdepend));
+    }
+
+    /**
+     * Removes one of two files providing the same class, which must 
+     * stay in its package.
+     */
+    private void assertRemovedCopy(boolean original) throws IOException {
+
+        File first = copy(javaPackage);
+        File second = copy(javaPackage, "JavaPackageCopy.class");
+        copy(javaClass);
+
+        JDepend_T jdepend = analyze();
+        JavaPackage_T framework = jdepend.getPackage("jdepend.framework");
+        assertEquals(2, framework.getClassCount());
+
+        File removed = original ? first : second;
+        removed.delete();
+        jdepend.update(Collections.EMPTY_LIST, Collections.singleton(removed));
+
+        assertEquals(2, framework.getClassCount());
+        assertEquals(describe(analyze()), describe(jdepend));
+    }
+
+    private JDepend_T analyze() throws IOException {
+        return analyze(new JDepend_T(), dir.getPath());
+    }
+
+    private File copy(File file) throws IOException {
+        return copy(file, file.getName().equals("JDepend.class") 
+            ? "TextUI.class" : file.getName());
+    }
+
+    private File copy(File file, String name) throws IOException {
+        File target = new File(dir, name);
+        Files.copy(file.toPath(), target.toPath());
+        return target;
+    }
+}
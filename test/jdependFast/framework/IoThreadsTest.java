@@ -0,0 +1,170 @@
+package jdependFast.framework;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class IoThreadsTest extends AnalysisTestCase {
+
+    public IoThreadsTest(String name) {
+        super(name);
+    }
+
+    public void testIoThreadsAnalysis() throws IOException {
+        assertIoThreadsMatch(true);
+    }
+
+    public void testIoThreadsStreamingAnalysis() throws IOException {
+        assertIoThreadsMatch(false);
+    }
+
+    public void testIoThreadsWithCache() throws IOException {
+
+        File cacheDir = new File(System.getProperty("java.io.tmpdir"),
+            "jdepend-io-cache-" + System.nanoTime());
+        try {
+            Map expected = describe(analyze(new JDepend_T()));
+
+            for (int run = 0; run < 2; run++) {
+                JDepend_T jdepend = new JDepend_T();
+                jdepend.setIoThreads(true);
+                jdepend.setCacheDirectory(cacheDir);
+                analyze(jdepend);
+                assertEquals(expected, describe(jdepend));
+                if (run == 1) {
+                    assertEquals(jdepend.getClassCount(),
+                        jdepend.getMetrics().getCacheHits());
+                }
+                jdepend.shutdown();
+            }
+        } finally {
+            new File(cacheDir, ParseCache.CACHE_FILE).delete();
+            cacheDir.delete();
+        }
+    }
+
+    public void testIndexOrderMatches() throws IOException {
+
+        FileManager_T forkJoin = new FileManager_T();
+        FileManager_T io = new FileManager_T();
+        forkJoin.addDirectory(getBuildDir());
+        io.addDirectory(getBuildDir());
+        ExecutorService executor = VirtualThreads.newExecutor();
+        try {
+            io.setIoExecutor(executor);
+            DiscoveryIndex expected = forkJoin.getIndex();
+            DiscoveryIndex actual = io.getIndex();
+
+            assertEquals(expected.getFiles(), actual.getFiles());
+            assertEquals(expected.getClassCount(), actual.getClassCount());
+            assertEquals(expected.getTotalBytes(), actual.getTotalBytes());
+            assertEquals(expected.getDirectoryCount(), actual.getDirectoryCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testReadBudgetSmallerThanFiles() throws Exception {
+
+        FileManager_T expected = new FileManager_T();
+        FileManager_T budgeted = new FileManager_T();
+        String[] directories = getClassDirectories();
+        for (int i = 0; i < directories.length; i++) {
+            expected.addDirectory(directories[i]);
+            budgeted.addDirectory(directories[i]);
+        }
+        expected.addDirectory(getTestJar());
+        budgeted.addDirectory(getTestJar());
+
+        ExecutorService executor = VirtualThreads.newExecutor();
+        try {
+            expected.setIoExecutor(executor);
+            budgeted.setIoExecutor(executor);
+            budgeted.setMaxBytesInFlight(1);
+
+            assertEquals(classNames(expected.extractFiles()),
+                classNames(budgeted.extractFiles()));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testWideDirectory() throws IOException {
+
+        // one thread, so that no sub-directory is listed before the 
+        // task listing the root has submitted them all
+        File root = Files.createTempDirectory("jdepend-wide").toFile();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            int directories = 70000;
+            for (int i = 0; i < directories; i++) {
+                assertTrue(new File(root, "d" + i).mkdir());
+            }
+            Files.copy(new File(getTestDataDir() + "example_class1.bin").toPath(),
+                new File(root, "d" + (directories - 1) + File.separator 
+                    + "A.class").toPath());
+
+            FileManager_T io = new FileManager_T();
+            io.addDirectory(root.getPath());
+            io.setIoExecutor(executor);
+            DiscoveryIndex index = io.getIndex();
+
+            assertEquals(directories + 1, index.getDirectoryCount());
+            assertEquals(1, index.getClassCount());
+        } finally {
+            executor.shutdown();
+            delete(root);
+        }
+    }
+
+    public void testIoPoolMetrics() throws IOException {
+
+        JDepend_T jdepend = new JDepend_T();
+        jdepend.setIoThreads(true);
+        analyze(jdepend);
+
+        AnalysisMetrics metrics = jdepend.getMetrics();
+        assertEquals(FileManager_T.MAX_READS_IN_FLIGHT, metrics.getPoolThreads("io"));
+        assertEquals(jdepend.getClassCount(), metrics.getClassesParsed());
+        assertTrue(metrics.getBytesRead() > 0);
+        jdepend.shutdown();
+    }
+
+    private void assertIoThreadsMatch(boolean retainClasses) throws IOException {
+
+        JDepend_T expected = analyze(new JDepend_T());
+
+        JDepend_T jdepend = new JDepend_T();
+        jdepend.setIoThreads(true);
+        jdepend.setRetainClasses(retainClasses);
+        assertTrue(jdepend.isIoThreads());
+        analyze(jdepend);
+
+        assertEquals(describe(expected), describe(jdepend));
+        if (retainClasses) {
+            assertEquals(classNames(expected), classNames(jdepend));
+        }
+        expected.shutdown();
+        jdepend.shutdown();
+    }
+
+    private Set classNames(JDepend_T jdepend) {
+        Set names = new TreeSet();
+        JavaPackage_T p = jdepend.getPackage("jdependFast.framework");
+        for (Iterator i = p.getClasses().iterator(); i.hasNext();) {
+            names.add(((JavaClass_T) i.next()).getName());
+        }
+        return names;
+    }
+
+    private List classNames(Collection classes) {
+        List names = new ArrayList();
+        for (Iterator i = classes.iterator(); i.hasNext();) {
+            names.add(((JavaClass_T) i.next()).getName());
+        }
+        return names;
+    }
+}
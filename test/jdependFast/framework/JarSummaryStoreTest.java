@@ -0,0 +1,146 @@
+package jdependFast.framework;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+public class JarSummaryStoreTest extends AnalysisTestCase {
+
+    private File jar;
+    private File copy;
+    private File directory;
+
+    public JarSummaryStoreTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() {
+        super.setUp();
+        try {
+            jar = new File(getTestJar());
+            copy = File.createTempFile("jdepend-copy", ".jar");
+            Files.copy(jar.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            directory = Files.createTempDirectory("jdepend-summaries").toFile();
+        } catch (IOException ioe) {
+            fail(ioe.getMessage());
+        }
+    }
+
+    protected void tearDown() {
+        copy.delete();
+        delete(directory);
+        super.tearDown();
+    }
+
+    public void testSummaryIsKeyedByContents() throws IOException {
+
+        JDepend_T parsed = analyze(new JDepend_T(), jar);
+        assertEquals(0, parsed.getMetrics().getSummaryHits());
+        assertEquals(1, directory.list().length);
+
+        JDepend_T merged = analyze(new JDepend_T(), copy);
+        assertEquals(1, merged.getMetrics().getSummaryHits());
+        assertEquals(0, merged.getMetrics().getClassesParsed());
+        assertEquals(parsed.getClassCount(), merged.getClassCount());
+        assertEquals(describe(parsed), describe(merged));
+
+        parsed.shutdown();
+        merged.shutdown();
+    }
+
+    public void testExecutionModes() throws IOException {
+
+        JDepend_T parsed = analyze(new JDepend_T(), jar);
+
+        JDepend_T io = new JDepend_T();
+        io.setIoThreads(true);
+        analyze(io, copy);
+        assertEquals(1, io.getMetrics().getSummaryHits());
+        assertEquals(describe(parsed), describe(io));
+
+        JDepend_T pipeline = new JDepend_T();
+        pipeline.setPipeline(1, 2);
+        analyze(pipeline, copy);
+        assertEquals(1, pipeline.getMetrics().getSummaryHits());
+        assertEquals(describe(parsed), describe(pipeline));
+
+        parsed.shutdown();
+        io.shutdown();
+        pipeline.shutdown();
+    }
+
+    public void testSummariesAreWrittenInEveryMode() throws IOException {
+
+        JDepend_T io = new JDepend_T();
+        io.setIoThreads(true);
+        analyze(io, jar);
+        assertEquals(1, directory.list().length);
+        directory.listFiles()[0].delete();
+
+        JDepend_T pipeline = new JDepend_T();
+        pipeline.setPipeline(1, 2);
+        analyze(pipeline, jar);
+        assertEquals(1, directory.list().length);
+
+        JDepend_T merged = analyze(new JDepend_T(), copy);
+        assertEquals(1, merged.getMetrics().getSummaryHits());
+        assertEquals(describe(io), describe(merged));
+
+        io.shutdown();
+        pipeline.shutdown();
+        merged.shutdown();
+    }
+
+    public void testSummaryIsBoundToFilter() throws IOException {
+
+        analyze(new JDepend_T(), jar).shutdown();
+
+        PackageFilter_T filter = new PackageFilter_T();
+        filter.addPackage("java.*");
+        JDepend_T filtered = analyze(new JDepend_T(filter), copy);
+        assertEquals(0, filtered.getMetrics().getSummaryHits());
+        assertNull(filtered.getPackage("java.lang"));
+        filtered.shutdown();
+    }
+
+    public void testMissingEntry() throws IOException {
+
+        analyze(new JDepend_T(), jar).shutdown();
+
+        JarSummaryStore store = new JarSummaryStore(directory, new PackageFilter_T());
+        assertEquals(store.hash(jar), store.hash(copy));
+        assertNull(store.get(copy, new String[] { "missing/Missing.class" }));
+        assertNotNull(store.get(copy, new String[0]));
+        assertEquals(1, store.getMisses());
+        assertEquals(1, store.getHits());
+    }
+
+    public void testInvalidCountIsMiss() throws IOException {
+
+        PackageFilter_T filter = new PackageFilter_T();
+        JarSummaryStore store = new JarSummaryStore(directory, filter);
+        int[] counts = { -1, Integer.MAX_VALUE };
+        for (int i = 0; i < counts.length; i++) {
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(
+                new File(directory, store.hash(jar) + JarSummaryStore.SUMMARY_SUFFIX)));
+            out.writeInt(0x4A44534D);
+            out.writeInt(1);
+            out.writeUTF(ParseCache.toKey(filter));
+            out.writeInt(counts[i]);
+            out.close();
+
+            assertNull(store.get(jar, new String[0]));
+        }
+        assertEquals(2, store.getMisses());
+
+        JDepend_T parsed = analyze(new JDepend_T(), jar);
+        assertEquals(0, parsed.getMetrics().getSummaryHits());
+        assertEquals(1, analyze(new JDepend_T(), copy).getMetrics().getSummaryHits());
+        parsed.shutdown();
+    }
+
+    private JDepend_T analyze(JDepend_T jdepend, File file) throws IOException {
+        jdepend.setSummaryDirectory(directory);
+        return analyze(jdepend, file.getPath());
+    }
+}
@@ -0,0 +1,98 @@
+package jdependFast.framework;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+public class ModuleImageTest extends AnalysisTestCase {
+
+    private static final String MODULE = "jrt:/java.sql";
+
+    public ModuleImageTest(String name) {
+        super(name);
+    }
+
+    public void testIndexListsModules() throws IOException {
+
+        FileManager_T fileManager = new FileManager_T();
+        fileManager.addDirectory("jrt:/");
+        DiscoveryIndex index = fileManager.getIndex();
+
+        File base = new File("jrt:/java.base");
+        assertTrue(index.getFiles().contains(base));
+        assertTrue(index.getFiles().contains(new File(MODULE)));
+        assertTrue(index.isJarFile(base));
+        assertTrue(Arrays.asList(index.getEntryNames(base)).contains(
+            "java/lang/Object.class"));
+        assertEquals(0, index.getNestedArchives(base).length);
+    }
+
+    public void testInvalidModule() {
+        try {
+            new FileManager_T().addDirectory("jrt:/no.such.module");
+            fail("Invalid module");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testExecutionModes() throws IOException {
+
+        JDepend_T parsed = analyze(new JDepend_T(), MODULE);
+        JavaPackage_T sql = parsed.getPackage("java.sql");
+        assertNotNull(sql);
+        assertTrue(sql.getClassCount() > 0);
+        assertTrue(sql.getEfferents().contains(parsed.getPackage("java.lang")));
+
+        JDepend_T io = new JDepend_T();
+        io.setIoThreads(true);
+        analyze(io, MODULE);
+        assertEquals(describe(parsed), describe(io));
+
+        JDepend_T pipeline = new JDepend_T();
+        pipeline.setPipeline(1, 2);
+        analyze(pipeline, MODULE);
+        assertEquals(parsed.getClassCount(), pipeline.getClassCount());
+
+        parsed.shutdown();
+        io.shutdown();
+        pipeline.shutdown();
+    }
+
+    public void testSummaryIsKeyedByRuntime() throws IOException {
+
+        File directory = Files.createTempDirectory("jdepend-summaries").toFile();
+        try {
+            JDepend_T parsed = new JDepend_T();
+            parsed.setSummaryDirectory(directory);
+            analyze(parsed, MODULE);
+            assertEquals(0, parsed.getMetrics().getSummaryHits());
+
+            JDepend_T merged = new JDepend_T();
+            merged.setSummaryDirectory(directory);
+            analyze(merged, MODULE);
+            assertEquals(1, merged.getMetrics().getSummaryHits());
+            assertEquals(0, merged.getMetrics().getClassesParsed());
+            assertEquals(describe(parsed), describe(merged));
+
+            parsed.shutdown();
+            merged.shutdown();
+        } finally {
+            delete(directory);
+        }
+    }
+
+    public void testJmodFile() throws IOException {
+
+        File jmod = new File(System.getProperty("java.home"), "jmods/java.sql.jmod");
+        if (!jmod.isFile()) {
+            return;
+        }
+
+        JDepend_T image = analyze(new JDepend_T(), MODULE);
+        JDepend_T archive = analyze(new JDepend_T(), jmod.getPath());
+        assertEquals(describe(image), describe(archive));
+
+        image.shutdown();
+        archive.shutdown();
+    }
+}
@@ -0,0 +1,111 @@
+package jdependFast.framework;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import jdepend.framework.JDependTestCase;
+
+public class NestedArchiveTest extends JDependTestCase {
+
+    private File war;
+    private int jarClasses;
+
+    public NestedArchiveTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() {
+        super.setUp();
+        try {
+            File jar = new File(getTestDataDir() + "test.jar");
+            byte[] jarBytes = Files.readAllBytes(jar.toPath());
+            jarClasses = new FileManager_T().buildClasses(jar).size();
+
+            ByteArrayOutputStream lib = new ByteArrayOutputStream();
+            ZipOutputStream libOut = new ZipOutputStream(lib);
+            addEntry(libOut, "lib/inner.jar", jarBytes);
+            libOut.close();
+
+            war = File.createTempFile("jdepend", ".war");
+            ZipOutputStream out = new ZipOutputStream(new FileOutputStream(war));
+            addEntry(out, "WEB-INF/classes/", null);
+            addEntry(out, "WEB-INF/classes/jdependFast/framework/PackageGraph.class",
+                Files.readAllBytes(new File(getBuildDir(),
+                    "jdependFast/framework/PackageGraph.class").toPath()));
+            addEntry(out, "WEB-INF/lib/test.jar", jarBytes);
+            addEntry(out, "WEB-INF/lib/libs.zip", lib.toByteArray());
+            addEntry(out, "WEB-INF/web.xml", "<web-app/>".getBytes("UTF-8"));
+            out.close();
+        } catch (IOException ioe) {
+            fail(ioe.getMessage());
+        }
+    }
+
+    protected void tearDown() {
+        war.delete();
+        super.tearDown();
+    }
+
+    public void testIndexListsNestedArchives() throws IOException {
+
+        FileManager_T fileManager = new FileManager_T();
+        fileManager.addDirectory(war.getPath());
+        DiscoveryIndex index = fileManager.getIndex();
+
+        assertEquals(1, index.getClassCount());
+        assertEquals(Arrays.asList(new String[] {
+            "WEB-INF/lib/test.jar", "WEB-INF/lib/libs.zip" }),
+            Arrays.asList(index.getNestedArchives(war)));
+    }
+
+    public void testBuildClassesStreamsNestedArchives() throws IOException {
+        Collection classes = new FileManager_T().buildClasses(war);
+        assertEquals(1 + 2 * jarClasses, classes.size());
+    }
+
+    public void testAnalysis() throws IOException {
+        assertAnalysis(new JDepend_T());
+    }
+
+    public void testIoThreadsAnalysis() throws IOException {
+        JDepend_T jdepend = new JDepend_T();
+        jdepend.setIoThreads(true);
+        assertAnalysis(jdepend);
+    }
+
+    public void testPipelineAnalysis() throws IOException {
+        JDepend_T jdepend = new JDepend_T();
+        jdepend.setPipeline(1, 2);
+        assertAnalysis(jdepend);
+    }
+
+    public void testStreamingAnalysis() throws IOException {
+        JDepend_T jdepend = new JDepend_T();
+        jdepend.setRetainClasses(false);
+        assertAnalysis(jdepend);
+    }
+
+    private void assertAnalysis(JDepend_T jdepend) throws IOException {
+
+        jdepend.addDirectory(war.getPath());
+        jdepend.analyze();
+
+        assertEquals(1 + 2 * jarClasses, jdepend.getClassCount());
+        assertEquals(1 + 2 * jarClasses,
+            jdepend.getMetrics().getJarEntriesVisited());
+        assertNotNull(jdepend.getPackage("jdependFast.framework"));
+        jdepend.shutdown();
+    }
+
+    private void addEntry(ZipOutputStream out, String name, byte[] bytes)
+        throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        if (bytes != null) {
+            out.write(bytes);
+        }
+        out.closeEntry();
+    }
+}
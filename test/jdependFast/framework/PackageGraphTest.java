@@ -0,0 +1,98 @@
+package jdependFast.framework;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import jdepend.framework.JDependTestCase;
+
+public class PackageGraphTest extends JDependTestCase {
+
+    public PackageGraphTest(String name) {
+        super(name);
+    }
+
+    public void testCouplings() {
+
+        JavaPackage_T a = new JavaPackage_T("A");
+        JavaPackage_T b = new JavaPackage_T("B");
+        JavaPackage_T c = new JavaPackage_T("C");
+
+        a.dependsUpon(b);
+        a.dependsUpon(c);
+        b.dependsUpon(c);
+        a.dependsUpon(b);
+
+        PackageGraph graph = new PackageGraph(Arrays.asList(
+            new JavaPackage_T[] { a }));
+
+        assertEquals(3, graph.size());
+        assertEquals(0, graph.getId("A"));
+        assertEquals(-1, graph.getId("D"));
+
+        int idA = graph.getId(a);
+        int idB = graph.getId(b);
+        int idC = graph.getId(c);
+
+        assertEquals(2, graph.efferentCoupling(idA));
+        assertEquals(0, graph.afferentCoupling(idA));
+        assertEquals(1, graph.efferentCoupling(idB));
+        assertEquals(1, graph.afferentCoupling(idB));
+        assertEquals(0, graph.efferentCoupling(idC));
+        assertEquals(2, graph.afferentCoupling(idC));
+
+        assertEquals(idB, graph.getEfferents(idA)[0]);
+        assertEquals(idC, graph.getEfferents(idA)[1]);
+        assertEquals(idA, graph.getAfferents(idC)[0]);
+        assertEquals(idB, graph.getAfferents(idC)[1]);
+
+        assertEquals(b.instability(), graph.instability(idB), 0);
+        assertEquals(false, graph.containsCycles());
+    }
+
+    public void testCycles() {
+
+        JavaPackage_T a = new JavaPackage_T("A");
+        JavaPackage_T b = new JavaPackage_T("B");
+        JavaPackage_T c = new JavaPackage_T("C");
+        JavaPackage_T d = new JavaPackage_T("D");
+
+        a.dependsUpon(b);
+        b.dependsUpon(c);
+        c.dependsUpon(b);
+        c.dependsUpon(d);
+
+        PackageGraph graph = new PackageGraph(Arrays.asList(
+            new JavaPackage_T[] { a, b, c, d }));
+
+        assertEquals(true, graph.containsCycles());
+        assertEquals(true, graph.containsCycle(graph.getId(a)));
+        assertEquals(false, graph.isInCycle(graph.getId(a)));
+        assertEquals(true, graph.isInCycle(graph.getId(b)));
+        assertEquals(false, graph.containsCycle(graph.getId(d)));
+        assertEquals(graph.getComponent(graph.getId(b)),
+            graph.getComponent(graph.getId(c)));
+    }
+
+    public void testAnalyzedGraph() throws java.io.IOException {
+
+        JDepend_T jdepend = new JDepend_T();
+        jdepend.addDirectory(getBuildDir());
+        jdepend.analyze();
+
+        PackageGraph graph = jdepend.getPackageGraph();
+        assertEquals(jdepend.countPackages(), graph.size());
+
+        for (Iterator i = jdepend.getPackages().iterator(); i.hasNext();) {
+            JavaPackage_T jPackage = (JavaPackage_T) i.next();
+            int id = graph.getId(jPackage.getName());
+            assertEquals(id, graph.getId(jPackage));
+            assertEquals(id, graph.getId(new JavaPackage_T(jPackage.getName())));
+            assertEquals(jPackage.afferentCoupling(), graph.afferentCoupling(id));
+            assertEquals(jPackage.efferentCoupling(), graph.efferentCoupling(id));
+            assertEquals(jPackage.abstractness(), graph.abstractness(id), 0);
+            assertEquals(jPackage.instability(), graph.instability(id), 0);
+            assertEquals(jPackage.distance(), graph.distance(id), 0);
+            assertEquals(jPackage.containsCycle(), graph.containsCycle(id));
+        }
+    }
+}
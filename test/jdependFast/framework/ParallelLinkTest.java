@@ -0,0 +1,132 @@
+package jdependFast.framework;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class ParallelLinkTest extends AnalysisTestCase {
+
+    private File jar;
+
+    public ParallelLinkTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() {
+        super.setUp();
+        try {
+            jar = File.createTempFile("jdepend-link", ".jar");
+            writeCopies(jar, 8);
+        } catch (IOException ioe) {
+            fail(ioe.getMessage());
+        }
+    }
+
+    protected void tearDown() {
+        jar.delete();
+        super.tearDown();
+    }
+
+    public void testParallelLinkMatchesSingleThread() throws IOException {
+
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool parallel = new ForkJoinPool(8);
+        try {
+            JDepend_T expected = analyze(
+                new JDepend_T(new PackageFilter_T(), single), jar.getPath());
+            assertTrue(expected.getClassCount() > 512);
+
+            for (int run = 0; run < 3; run++) {
+                JDepend_T actual = analyze(
+                    new JDepend_T(new PackageFilter_T(), parallel), jar.getPath());
+                assertEquals(describeInOrder(expected), describeInOrder(actual));
+            }
+        } finally {
+            single.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    public void testLinkMatchesOriginalEngine() throws IOException {
+
+        jdepend.framework.JDepend original = new jdepend.framework.JDepend();
+        original.addDirectory(getTestJar());
+        Map expected = new TreeMap();
+        for (Iterator i = original.analyze().iterator(); i.hasNext();) {
+            jdepend.framework.JavaPackage p = (jdepend.framework.JavaPackage) i.next();
+            List efferents = new ArrayList();
+            for (Iterator j = p.getEfferents().iterator(); j.hasNext();) {
+                efferents.add(((jdepend.framework.JavaPackage) j.next()).getName());
+            }
+            expected.put(p.getName(), p.getClassCount() + " "
+                + p.getAbstractClassCount() + " " + p.afferentCoupling()
+                + " " + efferents + " " + p.containsCycle());
+        }
+
+        JDepend_T jdepend = analyze(new JDepend_T(), getTestJar());
+        Map actual = describeInOrder(jdepend);
+        actual.remove("");
+        assertEquals(expected, actual);
+        jdepend.shutdown();
+    }
+
+    /**
+     * Writes the specified number of copies of the compiled classes of 
+     * both engines to the specified jar file, so that linking splits 
+     * the classes over several tasks.
+     */
+    private void writeCopies(File file, int copies) throws IOException {
+
+        List classes = new ArrayList();
+        String[] directories = getClassDirectories();
+        for (int i = 0; i < directories.length; i++) {
+            collectClassFiles(new File(directories[i]), classes);
+        }
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            for (int copy = 0; copy < copies; copy++) {
+                for (int i = 0; i < classes.size(); i++) {
+                    File classFile = (File) classes.get(i);
+                    out.putNextEntry(new ZipEntry("copy" + copy + "/" + i
+                        + "/" + classFile.getName()));
+                    out.write(Files.readAllBytes(classFile.toPath()));
+                    out.closeEntry();
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private void collectClassFiles(File directory, List files) {
+        File[] children = directory.listFiles();
+        for (int i = 0; children != null && i < children.length; i++) {
+            if (children[i].isDirectory()) {
+                collectClassFiles(children[i], files);
+            } else if (children[i].getName().endsWith(".class")) {
+                files.add(children[i]);
+            }
+        }
+    }
+
+    /**
+     * @return Map of the name of each analyzed package to its class and
+     *         abstract class counts, afferent coupling, efferent package
+     *         names in insertion order and cycle flag, and of the empty
+     *         name to the total class count.
+     */
+    private Map describeInOrder(JDepend_T jdepend) {
+        Map description = new TreeMap();
+        for (Iterator i = jdepend.getPackages().iterator(); i.hasNext();) {
+            JavaPackage_T p = (JavaPackage_T) i.next();
+            description.put(p.getName(), p.getClassCount() + " "
+                + p.getAbstractClassCount() + " " + p.afferentCoupling()
+                + " " + names(p.getEfferents()) + " " + p.containsCycle());
+        }
+        description.put("", Integer.valueOf(jdepend.getClassCount()));
+        return description;
+    }
+}
@@ -0,0 +1,160 @@
+package jdependFast.framework;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+public class ParseCacheTest extends AnalysisTestCase {
+
+    private File directory;
+    private File classFile;
+    private PackageFilter_T filter;
+
+    public ParseCacheTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() {
+        super.setUp();
+        try {
+            directory = Files.createTempDirectory("jdepend-cache").toFile();
+            classFile = new File(directory, "A.class");
+            Files.copy(new File(getTestDataDir() + "example_class1.bin").toPath(),
+                classFile.toPath());
+        } catch (IOException ioe) {
+            fail(ioe.getMessage());
+        }
+        filter = new PackageFilter_T(Collections.EMPTY_LIST);
+    }
+
+    protected void tearDown() {
+        delete(directory);
+        super.tearDown();
+    }
+
+    public void testHit() throws IOException {
+
+        JavaClass_T parsed = new ClassFileParser_T(filter).parse(classFile);
+
+        ParseCache cache = new ParseCache(directory, filter);
+        assertNull(cache.get(classFile));
+        cache.put(classFile, parsed);
+        cache.save();
+
+        ParseCache loaded = new ParseCache(directory, filter);
+        JavaClass_T cached = loaded.get(classFile);
+        assertNotNull(cached);
+        assertEquals(parsed.getName(), cached.getName());
+        assertEquals(parsed.getPackageName(), cached.getPackageName());
+        assertEquals(parsed.isAbstract(), cached.isAbstract());
+        assertEquals(parsed.getSourceFile(), cached.getSourceFile());
+        assertEquals(names(parsed.getImportedPackages()),
+            names(cached.getImportedPackages()));
+        assertEquals(1, loaded.getHits());
+        assertEquals(0, loaded.getMisses());
+    }
+
+    public void testJarEntryHit() throws IOException {
+
+        JarFile jar = new JarFile(getTestJar());
+        try {
+            ZipEntry entry = null;
+            for (Enumeration e = jar.entries(); entry == null && e.hasMoreElements();) {
+                ZipEntry next = (ZipEntry) e.nextElement();
+                if (next.getName().endsWith(".class")) {
+                    entry = next;
+                }
+            }
+            InputStream in = jar.getInputStream(entry);
+            JavaClass_T parsed = new ClassFileParser_T(filter).parse(in);
+            in.close();
+
+            ParseCache cache = new ParseCache(directory, filter);
+            cache.put(jar, entry, parsed);
+            cache.save();
+
+            JavaClass_T cached = new ParseCache(directory, filter).get(jar, entry);
+            assertNotNull(cached);
+            assertEquals(parsed.getName(), cached.getName());
+        } finally {
+            jar.close();
+        }
+    }
+
+    public void testChangedFileIsInvalidated() throws IOException {
+
+        save(new ParseCache(directory, filter));
+
+        classFile.setLastModified(classFile.lastModified() - 60000);
+        ParseCache touched = new ParseCache(directory, filter);
+        assertNull(touched.get(classFile));
+        assertEquals(1, touched.getMisses());
+
+        save(new ParseCache(directory, filter));
+        OutputStream out = new FileOutputStream(classFile, true);
+        out.write(0);
+        out.close();
+        assertNull(new ParseCache(directory, filter).get(classFile));
+    }
+
+    public void testFilterChangeDiscardsCache() throws IOException {
+
+        save(new ParseCache(directory, filter));
+        assertNotNull(new ParseCache(directory, filter).get(classFile));
+
+        PackageFilter_T changed = new PackageFilter_T(
+            Collections.singletonList("java."));
+        ParseCache cache = new ParseCache(directory, changed);
+        assertEquals(0, cache.size());
+        assertNull(cache.get(classFile));
+    }
+
+    public void testUnseenFilesAreDropped() throws IOException {
+
+        save(new ParseCache(directory, filter));
+
+        ParseCache unused = new ParseCache(directory, filter);
+        unused.save();
+
+        assertNull(new ParseCache(directory, filter).get(classFile));
+    }
+
+    public void testConcurrentSaves() throws Exception {
+
+        final JavaClass_T parsed = new ClassFileParser_T(filter).parse(classFile);
+        final List failures = Collections.synchronizedList(new ArrayList());
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < 50; i++) {
+                            ParseCache cache = new ParseCache(directory, filter);
+                            cache.put(classFile, parsed);
+                            cache.save();
+                        }
+                    } catch (IOException ioe) {
+                        failures.add(ioe);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+        }
+
+        assertEquals(Collections.EMPTY_LIST, failures);
+        assertEquals(Arrays.asList(new String[] { "A.class", ParseCache.CACHE_FILE }),
+            new ArrayList(new TreeSet(Arrays.asList(directory.list()))));
+        assertNotNull(new ParseCache(directory, filter).get(classFile));
+    }
+
+    private void save(ParseCache cache) throws IOException {
+        cache.put(classFile, new ClassFileParser_T(filter).parse(classFile));
+        cache.save();
+    }
+}
@@ -0,0 +1,60 @@
+package jdependFast.framework;
+
+import java.io.IOException;
+import java.util.*;
+
+public class StreamingAnalysisTest extends AnalysisTestCase {
+
+    public StreamingAnalysisTest(String name) {
+        super(name);
+    }
+
+    public void testStreamingAnalysis() throws IOException {
+        assertStreamingMatches(false);
+    }
+
+    public void testStreamingPipelineAnalysis() throws IOException {
+        assertStreamingMatches(true);
+    }
+
+    public void testCountedClasses() {
+
+        JavaPackage_T p = new JavaPackage_T("p");
+
+        assertTrue(p.countClass("p.A", true));
+        assertTrue(p.countClass("p.B", false));
+        assertFalse(p.countClass("p.A", true));
+        for (int i = 0; i < 100; i++) {
+            assertTrue(p.countClass("p.C" + i, false));
+        }
+
+        assertEquals(102, p.getClassCount());
+        assertEquals(1, p.getAbstractClassCount());
+        assertEquals(101, p.getConcreteClassCount());
+        assertEquals(0, p.getClasses().size());
+    }
+
+    private void assertStreamingMatches(boolean pipeline) throws IOException {
+
+        JDepend_T expected = analyze(new JDepend_T());
+
+        JDepend_T jdepend = new JDepend_T();
+        jdepend.setRetainClasses(false);
+        if (pipeline) {
+            jdepend.setPipeline(1, 2);
+        }
+        analyze(jdepend);
+
+        assertEquals(describe(expected), describe(jdepend));
+
+        for (Iterator i = jdepend.getPackages().iterator(); i.hasNext();) {
+            assertEquals(0, ((JavaPackage_T) i.next()).getClasses().size());
+        }
+
+        try {
+            jdepend.update(Collections.EMPTY_LIST, Collections.EMPTY_LIST);
+            fail("Should raise IllegalStateException");
+        } catch (IllegalStateException expectedException) {
+        }
+    }
+}